@@ -4,12 +4,34 @@ public class AppConstants {
 
     public static final String PAGE_NUMBER = "0";
     public static final String PAGE_SIZE = "2";
+    public static final String ORDER_HISTORY_PAGE_SIZE = "20";
     public static final String SORT_CATEGORIES_BY = "categoryId";
     public static final String SORT_PRODUCTS_BY = "productId";
+    public static final String SORT_PRODUCTS_BY_RELEVANCE = "relevance";
     public static final String SORT_USERS_BY = "userId";
     public static final String SORT_ORDERS_BY = "totalAmount";
 
     public static final String SORT_DIR = "asc";
+    public static final int SEARCH_INDEX_BATCH_SIZE = 1000;
+    public static final int SEARCH_DATABASE_SORT_MAX_HITS = 1000;
+    public static final int IMPORT_CHUNK_SIZE = 1000;
+    public static final int IMPORT_MAX_ERRORS = 1000;
+    public static final int RESERVATION_SWEEP_BATCH_SIZE = 500;
+    public static final int CART_REPRICE_CHUNK_SIZE = 500;
+    public static final int PRODUCT_REMOVAL_CHUNK_SIZE = 200;
+    public static final int PRODUCT_DEDUP_BACKFILL_BATCH_SIZE = 500;
+    public static final int CART_FLUSH_BATCH_SIZE = 200;
+    public static final int CART_SWEEP_CHUNK_SIZE = 200;
+    public static final int ORDER_ID_ALLOCATION_SIZE = 50;
+    public static final int ORDER_OUTBOX_BATCH_SIZE = 20;
+    public static final int ORDER_OUTBOX_MAX_ATTEMPTS = 5;
+    public static final String ORDER_STATUS_PENDING = "PENDING";
+    public static final String ORDER_STATUS_ACCEPTED = "Order Accepted!";
+    public static final String ORDER_STATUS_FAILED = "Order Failed: ";
+    public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 100;
+    public static final int IDEMPOTENCY_PURGE_BATCH_SIZE = 500;
+    public static final int ORDER_SUMMARY_BACKFILL_BATCH_SIZE = 500;
+    public static final int ORDER_EXPORT_FETCH_SIZE = 500;
     public static final Long ADMIN_ID = 101L;
     public static final Long USER_ID = 102L;
     public static final Long JWT_TOKEN_VALIDITY = 5 * 60 * 60L; // Represents 5 hours
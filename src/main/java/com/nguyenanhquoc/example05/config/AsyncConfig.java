@@ -0,0 +1,38 @@
+package com.nguyenanhquoc.example05.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    // Bounded pool for CPU-heavy image resizing, kept off the request threads
+    @Bean(name = "imageExecutor")
+    public ThreadPoolTaskExecutor imageExecutor(@Value("${project.image-workers:2}") int workers,
+            @Value("${project.image-queue:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Background catalog maintenance that fans out over many carts, run after the triggering commit
+    @Bean(name = "catalogExecutor")
+    public ThreadPoolTaskExecutor catalogExecutor(@Value("${project.catalog-workers:2}") int workers,
+            @Value("${project.catalog-queue:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("catalog-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
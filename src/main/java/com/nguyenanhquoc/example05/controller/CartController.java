@@ -2,6 +2,7 @@ package com.nguyenanhquoc.example05.controller;
 
 
 import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
 import com.nguyenanhquoc.example05.security.JwtUtil;
 import com.nguyenanhquoc.example05.service.CartService;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -37,6 +39,19 @@ public class CartController {
         return new ResponseEntity<>(cartDTO, HttpStatus.CREATED);
     }
 
+    @PostMapping("/public/carts/products")
+    public ResponseEntity<CartDTO> addProductsToCart(
+            @RequestBody List<CartItemChange> changes,
+            @RequestHeader("Authorization") String token) {
+
+        String jwt = token.substring(7);
+        String email = jwtUtil.validateTokenAndRetrieveSubject(jwt);
+
+        CartDTO cartDTO = cartService.addProductsToCart(email, changes);
+
+        return new ResponseEntity<>(cartDTO, HttpStatus.CREATED);
+    }
+
     @GetMapping("/admin/carts")
     public ResponseEntity<List<CartDTO>> getCarts() {
         List<CartDTO> cartDTOs = cartService.getAllCarts();
@@ -45,7 +60,14 @@ public class CartController {
     }
 
     @GetMapping("/public/users/{emailId}/carts/{cartId}")
-    public ResponseEntity<CartDTO> getCartById(@PathVariable String emailId, @PathVariable Long cartId) {
+    public ResponseEntity<CartDTO> getCartById(@PathVariable String emailId, @PathVariable Long cartId, WebRequest request) {
+        Long version = cartService.getCartVersion(emailId, cartId);
+
+        // Sets a weak ETag and answers If-None-Match with 304 before the items are loaded
+        if (version != null && request.checkNotModified("W/\"" + version + "\"")) {
+            return null;
+        }
+
         CartDTO cartDTO = cartService.getCart(emailId, cartId);
 
         return new ResponseEntity<CartDTO>(cartDTO, HttpStatus.FOUND);
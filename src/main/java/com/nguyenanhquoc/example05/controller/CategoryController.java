@@ -3,6 +3,7 @@ package com.nguyenanhquoc.example05.controller;
 import com.nguyenanhquoc.example05.config.AppConstants;
 import com.nguyenanhquoc.example05.entity.Category;
 import com.nguyenanhquoc.example05.payloads.dto.CategoryDTO;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
 import com.nguyenanhquoc.example05.payloads.response.CategoryResponse;
 import com.nguyenanhquoc.example05.service.CategoryService;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -29,13 +30,17 @@ public class CategoryController {
 
     @GetMapping("/public/categories")
     public ResponseEntity<CategoryResponse> getCategories(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withTotal", defaultValue = "false", required = false) boolean withTotal,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
 
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_CATEGORIES_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
 
-        CategoryResponse categoryResponse = categoryService.getCategories(pageNumber, pageSize, sortBy, sortOrder);
+        CategoryResponse categoryResponse = cursor != null
+                ? categoryService.getCategories(cursor, pageSize, sortBy, sortOrder, withTotal)
+                : categoryService.getCategories(pageNumber, pageSize, sortBy, sortOrder);
 
         return new ResponseEntity<CategoryResponse>(categoryResponse, HttpStatus.FOUND);
     }
@@ -56,4 +61,20 @@ public class CategoryController {
 
         return new ResponseEntity<String>(status, HttpStatus.OK);
     }
+
+    @PostMapping("/admin/categories/{categoryId}/removal")
+    public ResponseEntity<CategoryRemovalResponse> startCategoryRemoval(@PathVariable Long categoryId) {
+
+        CategoryRemovalResponse categoryRemovalResponse = categoryService.startCategoryRemoval(categoryId);
+
+        return new ResponseEntity<CategoryRemovalResponse>(categoryRemovalResponse, HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/admin/categories/removals/{jobId}")
+    public ResponseEntity<CategoryRemovalResponse> getCategoryRemoval(@PathVariable String jobId) {
+
+        CategoryRemovalResponse categoryRemovalResponse = categoryService.getCategoryRemoval(jobId);
+
+        return new ResponseEntity<CategoryRemovalResponse>(categoryRemovalResponse, HttpStatus.OK);
+    }
 }
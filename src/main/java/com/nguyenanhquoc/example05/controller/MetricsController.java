@@ -0,0 +1,77 @@
+package com.nguyenanhquoc.example05.controller;
+
+import com.nguyenanhquoc.example05.service.cart.AbandonedCartSweeper;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+import com.nguyenanhquoc.example05.service.order.OrderIdempotency;
+import com.nguyenanhquoc.example05.service.order.OrderOutboxProcessor;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters and gauges kept in memory by the background components, per instance.
+ * The order outbox is only listed when project.order-processing=async.
+ */
+@RestController
+@RequestMapping("/api")
+@SecurityRequirement(name = "E-Commerce Application")
+public class MetricsController {
+
+    @Autowired
+    private ObjectProvider<OrderOutboxProcessor> orderOutboxProcessor;
+
+    @Autowired
+    private CartLocks cartLocks;
+
+    @Autowired
+    private AbandonedCartSweeper abandonedCartSweeper;
+
+    @Autowired
+    private OrderIdempotency orderIdempotency;
+
+    @GetMapping("/admin/metrics")
+    public ResponseEntity<Map<String, Map<String, Long>>> getMetrics() {
+        Map<String, Map<String, Long>> metrics = new LinkedHashMap<>();
+
+        OrderOutboxProcessor outbox = orderOutboxProcessor.getIfAvailable();
+
+        if (outbox != null) {
+            Map<String, Long> outboxMetrics = new LinkedHashMap<>();
+            outboxMetrics.put("queueDepth", outbox.getQueueDepth());
+            outboxMetrics.put("oldestWaitingMillis", outbox.getOldestWaitingMillis());
+            outboxMetrics.put("processed", outbox.getProcessed());
+            outboxMetrics.put("failed", outbox.getFailed());
+            outboxMetrics.put("retried", outbox.getRetried());
+            outboxMetrics.put("lastLagMillis", outbox.getLastLagMillis());
+            outboxMetrics.put("maxLagMillis", outbox.getMaxLagMillis());
+            metrics.put("orderOutbox", outboxMetrics);
+        }
+
+        Map<String, Long> cartLockMetrics = new LinkedHashMap<>();
+        cartLockMetrics.put("contended", cartLocks.getContended());
+        cartLockMetrics.put("timedOut", cartLocks.getTimedOut());
+        metrics.put("cartLocks", cartLockMetrics);
+
+        Map<String, Long> sweeperMetrics = new LinkedHashMap<>();
+        sweeperMetrics.put("cartsSwept", abandonedCartSweeper.getCartsSwept());
+        sweeperMetrics.put("unitsReleased", abandonedCartSweeper.getUnitsReleased());
+        metrics.put("abandonedCarts", sweeperMetrics);
+
+        Map<String, Long> idempotencyMetrics = new LinkedHashMap<>();
+        idempotencyMetrics.put("replayedFromCache", orderIdempotency.getReplayedFromCache());
+        idempotencyMetrics.put("replayedFromDatabase", orderIdempotency.getReplayedFromDatabase());
+        idempotencyMetrics.put("rejectedInProgress", orderIdempotency.getRejectedInProgress());
+        idempotencyMetrics.put("takenOver", orderIdempotency.getTakenOver());
+        metrics.put("orderIdempotency", idempotencyMetrics);
+
+        return new ResponseEntity<Map<String, Map<String, Long>>>(metrics, HttpStatus.OK);
+    }
+}
@@ -2,16 +2,27 @@ package com.nguyenanhquoc.example05.controller;
 
 
 import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
 import com.nguyenanhquoc.example05.payloads.response.OrderResponse;
+import com.nguyenanhquoc.example05.payloads.response.OrderSummaryResponse;
+import com.nguyenanhquoc.example05.service.OrderExportService;
 import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.order.OrderIdempotency;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.time.LocalDate;
 
-import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -21,34 +32,90 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderIdempotency orderIdempotency;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
     @PostMapping("/public/users/{emailId}/carts/{cartId}/payments/{paymentMethod}/order")
-    public ResponseEntity<OrderDTO> orderProducts(@PathVariable String emailId, @PathVariable Long cartId, @PathVariable String paymentMethod) {
-        OrderDTO orderDTO = orderService.placeOrder(emailId, cartId, paymentMethod);
+    public ResponseEntity<OrderDTO> orderProducts(@PathVariable String emailId, @PathVariable Long cartId, @PathVariable String paymentMethod,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        // A retry with the same key gets the first response back instead of a second order
+        OrderDTO orderDTO = idempotencyKey != null
+                ? orderIdempotency.placeOrder(idempotencyKey, emailId, cartId, paymentMethod)
+                : orderService.placeOrder(emailId, cartId, paymentMethod);
+
+        // A PENDING order is fulfilled in the background, its status shows the outcome
+        HttpStatus status = AppConstants.ORDER_STATUS_PENDING.equals(orderDTO.getOrderStatus())
+                ? HttpStatus.ACCEPTED
+                : HttpStatus.CREATED;
 
-        return new ResponseEntity<OrderDTO>(orderDTO, HttpStatus.CREATED);
+        return new ResponseEntity<OrderDTO>(orderDTO, status);
     }
 
     @GetMapping("/admin/orders")
     public ResponseEntity<OrderResponse> getAllOrders(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withTotal", defaultValue = "false", required = false) boolean withTotal,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_ORDERS_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
 
-        OrderResponse orderResponse = orderService.getAllOrders(pageNumber, pageSize, sortBy, sortOrder);
+        OrderResponse orderResponse = cursor != null
+                ? orderService.getAllOrders(cursor, pageSize, sortBy, sortOrder, withTotal)
+                : orderService.getAllOrders(pageNumber, pageSize, sortBy, sortOrder);
 
         return new ResponseEntity<OrderResponse>(orderResponse, HttpStatus.FOUND);
     }
 
+    // Streams every matching order line as it is read, orderDate range inclusive
+    @GetMapping("/admin/orders/export")
+    public void exportOrders(
+            @RequestParam(name = "format", defaultValue = "ndjson", required = false) String format,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "status", required = false) String orderStatus,
+            HttpServletResponse response) throws IOException {
+        boolean csv = format.equalsIgnoreCase("csv");
+
+        if (!csv && !format.equalsIgnoreCase("ndjson")) {
+            throw new APIException("Export format must be ndjson or csv");
+        }
+
+        response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(csv ? "orders.csv" : "orders.ndjson").build().toString());
+
+        orderExportService.exportOrders(from, to, orderStatus, csv, response.getOutputStream());
+    }
+
     @GetMapping("/public/users/{emailId}/orders")
-    public ResponseEntity<List<OrderDTO>> getOrdersByUser(@PathVariable String emailId) {
-        List<OrderDTO> orders = orderService.getOrdersByUser(emailId);
+    public ResponseEntity<OrderSummaryResponse> getOrdersByUser(@PathVariable String emailId,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "pageSize", defaultValue = AppConstants.ORDER_HISTORY_PAGE_SIZE, required = false) Integer pageSize,
+            WebRequest request) {
+        if (request.checkNotModified("W/\"" + orderService.getOrdersVersion(emailId) + "\"")) {
+            return null;
+        }
 
-        return new ResponseEntity<List<OrderDTO>>(orders, HttpStatus.FOUND);
+        // Summaries only, the full order with its items is read from /orders/{orderId}
+        OrderSummaryResponse orders = orderService.getOrdersByUser(emailId, cursor, pageSize);
+
+        return new ResponseEntity<OrderSummaryResponse>(orders, HttpStatus.FOUND);
     }
 
     @GetMapping("/public/users/{emailId}/orders/{orderId}")
-    public ResponseEntity<OrderDTO> getOrderByUser(@PathVariable String emailId, @PathVariable Long orderId) {
+    public ResponseEntity<OrderDTO> getOrderByUser(@PathVariable String emailId, @PathVariable Long orderId, WebRequest request) {
+        Long version = orderService.getOrderVersion(emailId, orderId);
+
+        // Sets a weak ETag and answers If-None-Match with 304 before the order is loaded
+        if (version != null && request.checkNotModified("W/\"" + version + "\"")) {
+            return null;
+        }
+
         OrderDTO order = orderService.getOrder(emailId, orderId);
 
         return new ResponseEntity<OrderDTO>(order, HttpStatus.FOUND);
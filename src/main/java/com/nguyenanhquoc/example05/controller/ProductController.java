@@ -3,32 +3,52 @@ package com.nguyenanhquoc.example05.controller;
 
 import com.nguyenanhquoc.example05.config.AppConstants;
 import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.payloads.ImageFile;
 import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse;
 import com.nguyenanhquoc.example05.payloads.response.ProductResponse;
+import com.nguyenanhquoc.example05.service.ProductImportService;
 import com.nguyenanhquoc.example05.service.ProductService;
+import com.nguyenanhquoc.example05.utils.FileTransferUtils;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
 @SecurityRequirement(name = "E-Commerce Application")
 public class ProductController {
 
+    // Stored file names are random and never reused, so clients may keep images for a long time
+    private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365)).cachePublic();
+
+    // The sized variant may exist a moment later, so the original stands in for it only briefly
+    private static final CacheControl FALLBACK_IMAGE_CACHE_CONTROL = CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic();
+
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductImportService productImportService;
+
     @PostMapping("/admin/categories/{categoryId}/product")
     public ResponseEntity<ProductDTO> addProduct(@Valid @RequestBody Product product, @PathVariable Long categoryId) {
         ProductDTO savedProduct = productService.addProduct(categoryId, product);
@@ -38,12 +58,17 @@ public class ProductController {
 
     @GetMapping("/public/products")
     public ResponseEntity<ProductResponse> getAllProducts(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withTotal", defaultValue = "false", required = false) boolean withTotal,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
 
-        ProductResponse productResponse = productService.getAllProducts(pageNumber, pageSize, sortBy, sortOrder);
+        // Passing a cursor (empty for the first page) switches to keyset paging
+        ProductResponse productResponse = cursor != null
+                ? productService.getAllProducts(cursor, pageSize, sortBy, sortOrder, withTotal)
+                : productService.getAllProducts(pageNumber, pageSize, sortBy, sortOrder);
 
         return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.FOUND);
     }
@@ -51,12 +76,17 @@ public class ProductController {
     @GetMapping("/public/categories/{categoryId}/products")
     public ResponseEntity<ProductResponse> getProductsByCategory(
             @PathVariable Long categoryId,
+            @RequestParam(name = "inStock", defaultValue = "false", required = false) boolean inStock,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withTotal", defaultValue = "false", required = false) boolean withTotal,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
 
-        ProductResponse productResponse = productService.searchByCategory(categoryId, pageNumber, pageSize, sortBy, sortOrder);
+        ProductResponse productResponse = cursor != null
+                ? productService.searchByCategory(categoryId, cursor, pageSize, sortBy, sortOrder, inStock, withTotal)
+                : productService.searchByCategory(categoryId, pageNumber, pageSize, sortBy, sortOrder, inStock);
 
         return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.FOUND);
     }
@@ -64,7 +94,7 @@ public class ProductController {
     public ResponseEntity<ProductResponse> getProductsByKeyword(@PathVariable String keyword,
                                                                 @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
                                                                 @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
-                                                                @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY, required = false) String sortBy,
+                                                                @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY_RELEVANCE, required = false) String sortBy,
                                                                 @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
 
         ProductResponse productResponse = productService.searchProductByKeyword(keyword, pageNumber, pageSize, sortBy, sortOrder);
@@ -72,21 +102,92 @@ public class ProductController {
         return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.FOUND);
     }
 
-    @GetMapping("/public/products/image/{fileName}")
-    public ResponseEntity<InputStreamResource> getImage(@PathVariable String fileName) throws FileNotFoundException {
-        InputStream inputStream = productService.getProductImage(fileName);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
-        headers.setContentDispositionFormData("inline", fileName);
+    @GetMapping("/public/products/{productId}/availability")
+    public ResponseEntity<Integer> getAvailableQuantity(@PathVariable Long productId) {
+        Integer availableQuantity = productService.getAvailableQuantity(productId);
+
+        return new ResponseEntity<Integer>(availableQuantity, HttpStatus.OK);
+    }
 
-        return new ResponseEntity<>(new InputStreamResource(inputStream), headers, HttpStatus.OK);
+    @GetMapping("/public/products/image/{fileName}")
+    public void getImage(@PathVariable String fileName, @RequestParam(name = "size", required = false) Integer size,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImageFile image = productService.getProductImage(fileName, size);
+
+        // Sets ETag and Last-Modified, and answers If-None-Match / If-Modified-Since with 304
+        if (new ServletWebRequest(request, response).checkNotModified(image.getETag(), image.getLastModified())) {
+            return;
+        }
+
+        long length = image.getLength();
+        long start = 0;
+        long count = length;
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+        if (range != null && (ifRange == null || ifRange.equals(image.getETag()))) {
+            List<HttpRange> ranges;
+
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                // RFC 9110 says a Range header that cannot be parsed is ignored
+                ranges = List.of();
+            }
+
+            // Multiple ranges are answered with the whole image, which RFC 9110 allows
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                long end = ranges.get(0).getRangeEnd(length);
+
+                if (start >= length || end < start) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+
+                count = end - start + 1;
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        response.setContentType(image.getContentType().toString());
+        response.setContentLengthLong(count);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                (image.isFallback() ? FALLBACK_IMAGE_CACHE_CONTROL : IMAGE_CACHE_CONTROL).getHeaderValue());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline().filename(fileName).build().toString());
+
+        if (!HttpMethod.HEAD.matches(request.getMethod())) {
+            FileTransferUtils.write(request, response, image.getPath(), start, count);
+        }
     }
+
     @PutMapping("/admin/products/{productId}/image")
     public ResponseEntity<ProductDTO> updateProductImage(@PathVariable Long productId, @RequestParam("image") MultipartFile image) throws IOException {
         ProductDTO updatedProduct = productService.updateProductImage(productId, image);
 
         return new ResponseEntity<ProductDTO>(updatedProduct, HttpStatus.OK);
     }
+    // Streams the request body, so a supplier catalog is never buffered in memory or limited by the multipart size
+    @PostMapping(value = "/admin/products/import", consumes = { "text/csv", "application/x-ndjson" })
+    public ResponseEntity<ProductImportResponse> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType("text/csv"));
+        ProductImportResponse productImportResponse = productImportService.importProducts(body, csv);
+
+        return new ResponseEntity<ProductImportResponse>(productImportResponse, HttpStatus.OK);
+    }
+
+    @PostMapping("/admin/products/search-index")
+    public ResponseEntity<String> rebuildSearchIndex() {
+        int indexedProducts = productService.rebuildSearchIndex();
+
+        return new ResponseEntity<String>("Search index rebuilt with " + indexedProducts + " products", HttpStatus.OK);
+    }
+
     @PutMapping("/admin/products/{productId}")
     public ResponseEntity<ProductDTO> updateProduct(@RequestBody Product product,
                                                     @PathVariable Long productId) {
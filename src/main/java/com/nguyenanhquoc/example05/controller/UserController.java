@@ -29,12 +29,16 @@ public class UserController {
 
     @GetMapping("/admin/users")
     public ResponseEntity<UserResponse> getUsers(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withTotal", defaultValue = "false", required = false) boolean withTotal,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_USERS_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
         
-        UserResponse userResponse = userService.getAllUsers(pageNumber, pageSize, sortBy, sortOrder);
+        UserResponse userResponse = cursor != null
+                ? userService.getAllUsers(cursor, pageSize, sortBy, sortOrder, withTotal)
+                : userService.getAllUsers(pageNumber, pageSize, sortBy, sortOrder);
         return new ResponseEntity<UserResponse>(userResponse, HttpStatus.OK);
     }
 
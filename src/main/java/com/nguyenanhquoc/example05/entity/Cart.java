@@ -5,12 +5,13 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
 @Data
-@Table(name = "carts")
+@Table(name = "carts", indexes = @Index(name = "idx_cart_last_modified", columnList = "last_modified"))
 @NoArgsConstructor
 @AllArgsConstructor
 public class Cart {
@@ -19,7 +20,7 @@ public class Cart {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long cartId;
 
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
@@ -27,4 +28,13 @@ public class Cart {
     private List<CartItem> cartItems = new ArrayList<>();
 
     private Double totalPrice = 0.0;
+
+    // Guards concurrent cart updates from different nodes, within one node CartLocks serializes them
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
+    // Last change made by the owner; existing rows start from the time the column is added
+    @Column(name = "last_modified", nullable = false, columnDefinition = "datetime(6) default current_timestamp(6)")
+    private Instant lastModified = Instant.now();
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.nguyenanhquoc.example05.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// A client's Idempotency-Key for one order request; response stays null while the request is in progress
+@Entity
+@Data
+@Table(name = "idempotency_keys",
+        indexes = @Index(name = "idx_idempotency_expires", columnList = "expires_at"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_email_key", columnNames = { "email", "idempotency_key" }))
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Keys are scoped to the user, two users may pick the same one
+    @Column(nullable = false)
+    private String email;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    // cartId/paymentMethod the key was first used for
+    @Column(nullable = false)
+    private String request;
+
+    private Long orderId;
+
+    // The OrderDTO returned to the first request, as JSON
+    @Column(columnDefinition = "text")
+    private String response;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // When the request in progress took the key, a retry may take it over once project.idempotency-claim-timeout has passed
+    private Instant claimedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
@@ -1,5 +1,6 @@
 package com.nguyenanhquoc.example05.entity;
 
+import com.nguyenanhquoc.example05.config.AppConstants;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import lombok.AllArgsConstructor;
@@ -11,14 +12,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = { @Index(name = "idx_orders_email", columnList = "email"),
+        @Index(name = "idx_orders_date", columnList = "order_date") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Allocated 50 at a time from id_generator (see OrderIdGeneratorSeeder); identity ids would disable insert batching
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "orders_id")
+    @TableGenerator(name = "orders_id", table = "id_generator", pkColumnName = "id_name", valueColumnName = "next_val",
+            pkColumnValue = "orders", allocationSize = AppConstants.ORDER_ID_ALLOCATION_SIZE)
     private Long orderId;
 
     @Email
@@ -37,4 +42,9 @@ public class Order {
 
     private Double totalAmount;
     private String orderStatus;
+
+    // Bumped on every status change, exposed as the order's ETag
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.nguyenanhquoc.example05.entity;
 
+import com.nguyenanhquoc.example05.config.AppConstants;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,7 +14,10 @@ import lombok.NoArgsConstructor;
 public class OrderItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Taken from id_generator like the order's id, so all lines of an order go out in one insert batch
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_items_id")
+    @TableGenerator(name = "order_items_id", table = "id_generator", pkColumnName = "id_name", valueColumnName = "next_val",
+            pkColumnValue = "order_items", allocationSize = AppConstants.ORDER_ID_ALLOCATION_SIZE)
     private Long orderItemId;
 
     @ManyToOne
@@ -0,0 +1,44 @@
+package com.nguyenanhquoc.example05.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// An accepted order still to be fulfilled; deleted in the transaction that fulfils or fails the order
+@Entity
+@Data
+@Table(name = "order_outbox",
+        indexes = @Index(name = "idx_outbox_claimed_until", columnList = "claimed_until"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_outbox_cart", columnNames = "cart_id"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long outboxId;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    // At most one order per cart waits at a time
+    @Column(name = "cart_id", nullable = false)
+    private Long cartId;
+
+    @Column(nullable = false)
+    private String email;
+
+    private String paymentMethod;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // Set while a worker holds the record; a record whose claim ran out is picked up again
+    @Column(name = "claimed_until")
+    private Instant claimedUntil;
+
+    private int attempts;
+}
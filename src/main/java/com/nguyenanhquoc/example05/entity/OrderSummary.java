@@ -0,0 +1,34 @@
+package com.nguyenanhquoc.example05.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// One narrow row per order for order history listings, written by OrderServiceImpl whenever the order changes
+@Entity
+@Data
+@Table(name = "order_summaries", indexes = @Index(name = "idx_order_summary_email", columnList = "email, order_id desc"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+
+    // Same id as the order
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(nullable = false)
+    private String email;
+
+    private LocalDate orderDate;
+    private Double totalAmount;
+    private String orderStatus;
+
+    // Order lines, not units
+    private int itemCount;
+
+    private String paymentMethod;
+}
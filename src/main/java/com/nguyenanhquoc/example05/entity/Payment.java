@@ -1,5 +1,6 @@
 package com.nguyenanhquoc.example05.entity;
 
+import com.nguyenanhquoc.example05.config.AppConstants;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -16,7 +17,10 @@ import lombok.NoArgsConstructor;
 public class Payment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // id_generator block, like Order
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "payments_id")
+    @TableGenerator(name = "payments_id", table = "id_generator", pkColumnName = "id_name", valueColumnName = "next_val",
+            pkColumnValue = "payments", allocationSize = AppConstants.ORDER_ID_ALLOCATION_SIZE)
     private Long paymentId;
 
     @OneToOne(mappedBy = "payment", cascade = { CascadeType.PERSIST, CascadeType.MERGE })
@@ -7,17 +7,28 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 
 @Entity
+@Table(indexes = @Index(name = "idx_product_category_quantity", columnList = "category_id, quantity"),
+        uniqueConstraints = @UniqueConstraint(name = Product.DEDUP_CONSTRAINT, columnNames = { "category_id", "dedup_hash" }))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
 
+    public static final String DEDUP_CONSTRAINT = "uk_product_category_dedup";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Same product_seq that AUTO picked implicitly; a pooled sequence lets Hibernate batch inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long productId;
 
     @NotBlank
@@ -30,18 +41,51 @@ public class Product {
     @Size(min = 6, message = "Product description must contain atleast 6 characters")
     private String description;
 
+    // Written only through InventoryService's conditional updates, never by dirty checking
+    @Column(updatable = false)
     private Integer quantity;
     private double price;
     private double discount;
     private double specialPrice;
 
-    @ManyToOne
+    // sha256 of the normalized name and description, unique per category so the database rejects duplicates
+    @Column(name = "dedup_hash", length = 64)
+    private String dedupHash;
+
+    // Taken off the catalog but kept for the order lines that reference it, only set by ProductRepo.retireByProductIds
+    @Column(updatable = false)
+    private boolean retired;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id")
     private Category category;
 
-    @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.EAGER)
+    // Back-reference only, never loaded on the cart or catalog read paths
+    @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE })
     private List<CartItem> products = new ArrayList<>();
 
     @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE })
     private List<OrderItem> orderItems = new ArrayList<>();
+
+    @PrePersist
+    @PreUpdate
+    void computeDedupHash() {
+        dedupHash = dedupHash(productName, description);
+    }
+
+    // Case and whitespace differences do not make a different product
+    public static String dedupHash(String productName, String description) {
+        String normalized = normalize(productName) + "\u0000" + normalize(description);
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
 }
\ No newline at end of file
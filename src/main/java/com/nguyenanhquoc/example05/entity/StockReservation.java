@@ -0,0 +1,37 @@
+package com.nguyenanhquoc.example05.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Stock held for one cart line until expiresAt; product.quantity is only lowered when the order is placed
+@Entity
+@Data
+@Table(name = "stock_reservations",
+        indexes = { @Index(name = "idx_reservation_expires", columnList = "expires_at"),
+                @Index(name = "idx_reservation_product", columnList = "product_id") },
+        uniqueConstraints = @UniqueConstraint(name = "uk_reservation_cart_product", columnNames = { "cart_id", "product_id" }))
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+
+    @Id
+    // Pooled sequence so a batch of holds is inserted with one JDBC batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservation_seq")
+    @SequenceGenerator(name = "stock_reservation_seq", sequenceName = "stock_reservation_seq", allocationSize = 50)
+    private Long reservationId;
+
+    @Column(name = "cart_id", nullable = false)
+    private Long cartId;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    private int quantity;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
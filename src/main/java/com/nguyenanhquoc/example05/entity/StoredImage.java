@@ -0,0 +1,22 @@
+package com.nguyenanhquoc.example05.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Reference count of a content-addressed image file, keyed by its sha256 file name
+@Entity
+@Data
+@Table(name = "stored_images")
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+
+    @Id
+    private String fileName;
+
+    private int refCount;
+}
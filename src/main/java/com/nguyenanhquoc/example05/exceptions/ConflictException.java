@@ -0,0 +1,13 @@
+package com.nguyenanhquoc.example05.exceptions;
+
+public class ConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConflictException() {
+    }
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
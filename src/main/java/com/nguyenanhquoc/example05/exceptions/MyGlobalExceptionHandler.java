@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.validation.FieldError;
@@ -35,6 +36,19 @@ public class MyGlobalExceptionHandler {
         return new ResponseEntity<APIResponse>(res, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<APIResponse> myConflictException(ConflictException e) {
+        APIResponse res = new APIResponse(e.getMessage(), false);
+        return new ResponseEntity<APIResponse>(res, HttpStatus.CONFLICT);
+    }
+
+    // Another request (possibly on another node) changed the same row first; the client can retry
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<APIResponse> myObjectOptimisticLockingFailureException(ObjectOptimisticLockingFailureException e) {
+        APIResponse res = new APIResponse("The resource was changed by another request, please retry", false);
+        return new ResponseEntity<APIResponse>(res, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, String>> myMethodArgumentNotValidException(MethodArgumentNotValidException e) {
         Map<String, String> res = new HashMap<>();
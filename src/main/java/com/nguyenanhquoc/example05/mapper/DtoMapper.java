@@ -0,0 +1,100 @@
+package com.nguyenanhquoc.example05.mapper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.entity.Address;
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.entity.OrderItem;
+import com.nguyenanhquoc.example05.entity.OrderSummary;
+import com.nguyenanhquoc.example05.entity.Payment;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.entity.User;
+import com.nguyenanhquoc.example05.payloads.dto.AddressDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CategoryDTO;
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.payloads.dto.OrderItemDTO;
+import com.nguyenanhquoc.example05.payloads.dto.OrderSummaryDTO;
+import com.nguyenanhquoc.example05.payloads.dto.PaymentDTO;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.dto.UserDTO;
+
+/**
+ * Field-by-field entity to DTO mapping for the read and write paths that run per element.
+ * Produces the same DTOs as the ModelMapper conventions did, without reflection or
+ * intermediate objects. ModelMapper is still used for the DTO to entity direction.
+ */
+@Component
+public class DtoMapper {
+
+    public ProductDTO toProductDTO(Product product) {
+        return new ProductDTO(product.getProductId(), product.getProductName(), product.getImage(),
+                product.getDescription(), product.getQuantity(), product.getPrice(), product.getDiscount(),
+                product.getSpecialPrice());
+    }
+
+    public CartDTO toCartDTO(Cart cart) {
+        List<CartItem> cartItems = cart.getCartItems();
+        List<ProductDTO> products = new ArrayList<>(cartItems.size());
+
+        for (CartItem cartItem : cartItems) {
+            products.add(toProductDTO(cartItem.getProduct()));
+        }
+
+        return new CartDTO(cart.getCartId(), cart.getTotalPrice(), products);
+    }
+
+    public OrderDTO toOrderDTO(Order order) {
+        List<OrderItem> orderItems = order.getOrderItems();
+        List<OrderItemDTO> orderItemDTOs = new ArrayList<>(orderItems.size());
+
+        for (OrderItem orderItem : orderItems) {
+            orderItemDTOs.add(toOrderItemDTO(orderItem));
+        }
+
+        Payment payment = order.getPayment();
+
+        return new OrderDTO(order.getOrderId(), order.getEmail(), orderItemDTOs, order.getOrderDate(),
+                payment == null ? null : toPaymentDTO(payment), order.getTotalAmount(), order.getOrderStatus());
+    }
+
+    public OrderSummaryDTO toOrderSummaryDTO(OrderSummary summary) {
+        return new OrderSummaryDTO(summary.getOrderId(), summary.getOrderDate(), summary.getTotalAmount(),
+                summary.getOrderStatus(), summary.getItemCount(), summary.getPaymentMethod());
+    }
+
+    public OrderItemDTO toOrderItemDTO(OrderItem orderItem) {
+        Product product = orderItem.getProduct();
+
+        return new OrderItemDTO(orderItem.getOrderItemId(), product == null ? null : toProductDTO(product),
+                orderItem.getQuantity(), orderItem.getDiscount(), orderItem.getOrderedProductPrice());
+    }
+
+    public PaymentDTO toPaymentDTO(Payment payment) {
+        return new PaymentDTO(payment.getPaymentId(), payment.getPaymentMethod());
+    }
+
+    public UserDTO toUserDTO(User user) {
+        List<Address> addresses = user.getAddresses();
+        AddressDTO address = addresses == null || addresses.isEmpty() ? null : toAddressDTO(addresses.get(0));
+
+        return new UserDTO(user.getUserId(), user.getFirstName(), user.getLastName(), user.getMobileNumber(),
+                user.getEmail(), user.getPassword(), new HashSet<>(user.getRoles()), address);
+    }
+
+    public AddressDTO toAddressDTO(Address address) {
+        return new AddressDTO(address.getAddressId(), address.getStreet(), address.getBuildingName(),
+                address.getCity(), address.getState(), address.getCountry(), address.getPincode());
+    }
+
+    public CategoryDTO toCategoryDTO(Category category) {
+        return new CategoryDTO(category.getCategoryId(), category.getCategoryName());
+    }
+}
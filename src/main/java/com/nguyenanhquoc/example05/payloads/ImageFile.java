@@ -0,0 +1,23 @@
+package com.nguyenanhquoc.example05.payloads;
+
+import java.nio.file.Path;
+
+import org.springframework.http.MediaType;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// A stored image resolved on disk, with everything needed to answer conditional and range requests
+@Getter
+@AllArgsConstructor
+public class ImageFile {
+
+    private final Path path;
+    private final long length;
+    private final long lastModified;
+    private final String eTag;
+    private final MediaType contentType;
+
+    // A size was asked for and the original is served while its variants are still being generated
+    private final boolean fallback;
+}
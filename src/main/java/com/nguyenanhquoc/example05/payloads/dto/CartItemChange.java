@@ -0,0 +1,15 @@
+package com.nguyenanhquoc.example05.payloads.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One line of a batch add to cart: quantity is added to what the cart already holds
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemChange {
+
+    private Long productId;
+    private Integer quantity;
+}
@@ -0,0 +1,29 @@
+package com.nguyenanhquoc.example05.payloads.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// One order line in an order export, with its order's fields repeated; an order without items has one row with empty item fields
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonPropertyOrder({ "orderId", "email", "orderDate", "orderStatus", "paymentMethod", "totalAmount", "orderItemId",
+        "productId", "productName", "quantity", "discount", "orderedProductPrice" })
+public class OrderExportRow {
+    private Long orderId;
+    private String email;
+    private LocalDate orderDate;
+    private String orderStatus;
+    private String paymentMethod;
+    private Double totalAmount;
+    private Long orderItemId;
+    private Long productId;
+    private String productName;
+    private Integer quantity;
+    private Double discount;
+    private Double orderedProductPrice;
+}
@@ -0,0 +1,19 @@
+package com.nguyenanhquoc.example05.payloads.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderSummaryDTO {
+    private Long orderId;
+    private LocalDate orderDate;
+    private Double totalAmount;
+    private String orderStatus;
+    private Integer itemCount;
+    private String paymentMethod;
+}
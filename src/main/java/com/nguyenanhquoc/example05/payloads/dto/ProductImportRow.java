@@ -0,0 +1,22 @@
+package com.nguyenanhquoc.example05.payloads.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One CSV line or NDJSON object of a bulk import, kept as text so a bad value fails only its own row
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProductImportRow {
+
+    private String categoryId;
+    private String productName;
+    private String description;
+    private String image;
+    private String quantity;
+    private String price;
+    private String discount;
+}
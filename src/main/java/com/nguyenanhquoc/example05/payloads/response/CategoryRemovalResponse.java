@@ -0,0 +1,29 @@
+package com.nguyenanhquoc.example05.payloads.response;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Progress of a background category removal; written by the worker only, hence the volatile fields
+@Data
+@NoArgsConstructor
+public class CategoryRemovalResponse {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    private volatile String jobId;
+    private volatile Long categoryId;
+    private volatile Status status;
+    private volatile long totalProducts;
+    private volatile long removedProducts;
+
+    // Products with orders are kept for the order history and only taken off the category
+    private volatile long retiredProducts;
+    private final List<Long> retiredProductIds = new CopyOnWriteArrayList<>();
+    private volatile String error;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+}
@@ -18,4 +18,5 @@ public class CategoryResponse {
     private Long totalElements;
     private Integer totalPages;
     private boolean lastPage;
+    private String nextCursor;
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.nguyenanhquoc.example05.payloads.response;
+
+import com.nguyenanhquoc.example05.payloads.dto.OrderSummaryDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryResponse {
+
+    private List<OrderSummaryDTO> content;
+    private Integer pageSize;
+    private boolean lastPage;
+    private String nextCursor;
+}
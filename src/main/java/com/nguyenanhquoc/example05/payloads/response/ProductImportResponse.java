@@ -0,0 +1,32 @@
+package com.nguyenanhquoc.example05.payloads.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportResponse {
+
+    private long totalRows;
+    private long imported;
+    private long duplicates;
+    private long failed;
+    private long elapsedMillis;
+
+    // Only the first AppConstants.IMPORT_MAX_ERRORS rows are listed
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private long row;
+        private String message;
+    }
+}
@@ -19,4 +19,5 @@ public class ProductResponse {
     private Long totalElements;
     private Integer totalPages;
     private boolean lastPage;
+    private String nextCursor;
 }
\ No newline at end of file
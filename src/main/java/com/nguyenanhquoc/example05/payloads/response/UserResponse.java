@@ -18,4 +18,5 @@ public class UserResponse {
     private Long totalElements;
     private Integer totalPages;
     private boolean lastPage;
+    private String nextCursor;
 }
@@ -3,11 +3,15 @@ package com.nguyenanhquoc.example05.repository;
 import com.nguyenanhquoc.example05.entity.CartItem;
 import com.nguyenanhquoc.example05.entity.Product;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 @Repository
 public interface CartItemRepo extends JpaRepository<CartItem, Long> {
@@ -32,4 +36,40 @@ public interface CartItemRepo extends JpaRepository<CartItem, Long> {
     @Query("DELETE FROM CartItem ci WHERE ci.cart.id = ?1 AND ci.product.id = ?2")
     void deleteCartItemByProductIdAndCartId(Long cartId, Long productId);
 
-}
\ No newline at end of file
+    @Query("SELECT ci FROM CartItem ci WHERE ci.cart.cartId = ?1 AND ci.product.productId IN ?2")
+    List<CartItem> findCartItemsByProductIdsAndCartId(Long cartId, Collection<Long> productIds);
+
+    @Query("SELECT ci.cartItemId, ci.cart.cartId, ci.product.productId, ci.quantity FROM CartItem ci "
+            + "WHERE ci.cart.cartId IN ?1 ORDER BY ci.cartItemId")
+    List<Object[]> findLinesByCartIds(Collection<Long> cartIds);
+
+    @Modifying
+    @Query("UPDATE CartItem ci SET ci.quantity = ?2 WHERE ci.cartItemId = ?1")
+    int setQuantity(Long cartItemId, Integer quantity);
+
+    long countByProductProductId(Long productId);
+
+    // Carts holding the product in cart id order, walked chunk by chunk without OFFSET
+    @Query("SELECT ci.cart.cartId FROM CartItem ci WHERE ci.product.productId = ?1 AND ci.cart.cartId > ?2 "
+            + "ORDER BY ci.cart.cartId")
+    List<Long> findCartIdsByProductId(Long productId, Long lastCartId, Pageable limit);
+
+    // Reads the current special price in the statement itself, so an older repricing run can never win
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE CartItem ci SET ci.productPrice = (SELECT p.specialPrice FROM Product p WHERE p.productId = ?1) "
+            + "WHERE ci.product.productId = ?1")
+    int repriceProduct(Long productId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE CartItem ci SET ci.productPrice = (SELECT p.specialPrice FROM Product p WHERE p.productId = ?1) "
+            + "WHERE ci.product.productId = ?1 AND ci.cart.cartId IN ?2")
+    int repriceProductInCarts(Long productId, Collection<Long> cartIds);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.product.productId IN ?1")
+    int deleteByProductIds(Collection<Long> productIds);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.cartId IN ?1")
+    int deleteByCartIds(Collection<Long> cartIds);
+}
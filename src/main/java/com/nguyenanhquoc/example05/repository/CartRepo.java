@@ -2,21 +2,81 @@ package com.nguyenanhquoc.example05.repository;
 
 import com.nguyenanhquoc.example05.entity.Cart;
 import com.nguyenanhquoc.example05.entity.User;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CartRepo extends JpaRepository<Cart, Long> {
 
+    // Cart, items and their products in one query, the fetch plan used to build a CartDTO
+    @EntityGraph(attributePaths = { "cartItems", "cartItems.product" })
     @Query("SELECT c FROM Cart c WHERE c.user.email = ?1 AND c.id = ?2")
     Cart findCartByEmailAndCartId(String email, Long cartId);
 
-    @Query("SELECT c FROM Cart c JOIN FETCH c.cartItems ci JOIN FETCH ci.product p WHERE p.id = ?1")
-    List<Cart> findCartsByProductId(Long productId);
+    @EntityGraph(attributePaths = { "cartItems", "cartItems.product" })
+    @Query("SELECT c FROM Cart c")
+    List<Cart> findAllWithItems();
+
+    // Primary key lookup joined to the owner, enough to answer a conditional GET
+    @Query("SELECT c.version FROM Cart c WHERE c.cartId = ?2 AND c.user.email = ?1")
+    Long findVersion(String email, Long cartId);
 
     Optional<Cart> findByUser(User user);
+
+    @Query("SELECT c.cartId, u.email FROM Cart c LEFT JOIN c.user u WHERE c.cartId = ?1")
+    List<Object[]> findCartOwner(Long cartId);
+
+    // Recomputes total_price from the cart items in one statement for every cart holding the product.
+    // This and the other total updates below are VERSIONED, so they change the cart's ETag like any other change
+    @Modifying
+    @Query("UPDATE VERSIONED Cart c SET c.totalPrice = COALESCE((SELECT SUM(ci.productPrice * ci.quantity) FROM CartItem ci "
+            + "WHERE ci.cart = c), 0) WHERE c.cartId IN (SELECT ci.cart.cartId FROM CartItem ci WHERE ci.product.productId = ?1)")
+    int recomputeTotalsForProduct(Long productId);
+
+    @Modifying
+    @Query("UPDATE VERSIONED Cart c SET c.totalPrice = COALESCE((SELECT SUM(ci.productPrice * ci.quantity) FROM CartItem ci "
+            + "WHERE ci.cart = c), 0) WHERE c.cartId IN ?1")
+    int recomputeTotals(Collection<Long> cartIds);
+
+    // Only bumps the version of every cart holding the product, for product changes that carts show but do not price
+    @Modifying
+    @Query("UPDATE VERSIONED Cart c SET c.totalPrice = c.totalPrice "
+            + "WHERE c.cartId IN (SELECT ci.cart.cartId FROM CartItem ci WHERE ci.product.productId = ?1)")
+    int touchVersionsForProduct(Long productId);
+
+    @Modifying
+    @Query("UPDATE Cart c SET c.lastModified = ?2 WHERE c.cartId IN ?1")
+    int touch(Collection<Long> cartIds, Instant lastModified);
+
+    // Carts with items and no change since the cutoff, in cart id order, walked chunk by chunk without OFFSET
+    @Query("SELECT c.cartId FROM Cart c WHERE c.lastModified < ?1 AND c.cartId > ?2 "
+            + "AND EXISTS (SELECT ci FROM CartItem ci WHERE ci.cart = c) ORDER BY c.cartId")
+    List<Long> findAbandonedCartIds(Instant cutoff, Long lastCartId, Pageable limit);
+
+    // Locks the chunk and drops carts touched since they were listed
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c.cartId FROM Cart c WHERE c.cartId IN ?1 AND c.lastModified < ?2")
+    List<Long> lockAbandonedCarts(Collection<Long> cartIds, Instant cutoff);
+
+    @Modifying
+    @Query("UPDATE VERSIONED Cart c SET c.totalPrice = 0 WHERE c.cartId IN ?1")
+    int clearTotals(Collection<Long> cartIds);
+
+    // Takes the lines of products about to be removed off every cart total, before the lines themselves are deleted
+    @Modifying
+    @Query("UPDATE VERSIONED Cart c SET c.totalPrice = c.totalPrice - COALESCE((SELECT SUM(ci.productPrice * ci.quantity) "
+            + "FROM CartItem ci WHERE ci.cart = c AND ci.product.productId IN ?1), 0) "
+            + "WHERE c.cartId IN (SELECT ci.cart.cartId FROM CartItem ci WHERE ci.product.productId IN ?1)")
+    int subtractProducts(Collection<Long> productIds);
 }
\ No newline at end of file
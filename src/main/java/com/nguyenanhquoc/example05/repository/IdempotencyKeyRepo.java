@@ -0,0 +1,38 @@
+package com.nguyenanhquoc.example05.repository;
+
+import com.nguyenanhquoc.example05.entity.IdempotencyKey;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyKeyRepo extends JpaRepository<IdempotencyKey, Long> {
+
+    Optional<IdempotencyKey> findByEmailAndIdempotencyKey(String email, String idempotencyKey);
+
+    // Compare-and-set on the claim time, 0 when another retry took the key over first or the first request finished
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.claimedAt = ?3 "
+            + "WHERE k.id = ?1 AND k.response IS NULL AND COALESCE(k.claimedAt, k.createdAt) = ?2")
+    int takeOver(Long id, Instant claimedAt, Instant now);
+
+    // Stores the response only while the key is still claimed by the caller
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.orderId = ?3, k.response = ?4 WHERE k.id = ?1 AND k.claimedAt = ?2")
+    int complete(Long id, Instant claimedAt, Long orderId, String response);
+
+    // Frees the key after a failed order, unless a retry has taken it over in the meantime
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.id = ?1 AND k.claimedAt = ?2")
+    int release(Long id, Instant claimedAt);
+
+    // One batch of expired keys, served by idx_idempotency_expires
+    @Query("SELECT k.id FROM IdempotencyKey k WHERE k.expiresAt < ?1")
+    List<Long> findExpiredIds(Instant now, Pageable limit);
+}
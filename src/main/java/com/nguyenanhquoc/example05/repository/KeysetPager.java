@@ -0,0 +1,210 @@
+package com.nguyenanhquoc.example05.repository;
+
+import java.beans.PropertyDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.exceptions.APIException;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Seek pagination: instead of LIMIT/OFFSET plus COUNT(*), the next page is read with
+ * WHERE (sortKey, id) > (lastSortKey, lastId) ORDER BY sortKey, id LIMIT pageSize + 1.
+ * The last sort key and id travel to the client as an opaque cursor. A NULL sort key ranks
+ * below every value, as in MySQL: first when ascending, last when descending.
+ */
+@Component
+public class KeysetPager {
+
+    private static final String SEPARATOR = "\u0000";
+
+    // Marks the sort key in a cursor as NULL or as a value
+    private static final char NULL_KEY = 'N';
+    private static final char VALUE_KEY = 'V';
+    private static final ConversionService CONVERSION = DefaultConversionService.getSharedInstance();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Getter
+    @AllArgsConstructor
+    public static class KeysetPage<R> {
+        private final List<R> content;
+        private final String nextCursor;
+    }
+
+    public <T> KeysetPage<T> seek(Class<T> entityClass, String idAttribute, Specification<T> filter, String cursor,
+            int pageSize, String sortBy, String sortOrder) {
+        return seek(entityClass, entityClass, (root, cb) -> root, idAttribute, filter, cursor, pageSize, sortBy,
+                sortOrder);
+    }
+
+    /**
+     * Reads one page after the given cursor. A null or blank cursor starts from the beginning.
+     * The sort property must be readable from the selected result so the next cursor can be built.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T, R> KeysetPage<R> seek(Class<T> entityClass, Class<R> resultClass,
+            BiFunction<Root<T>, CriteriaBuilder, Selection<? extends R>> selection, String idAttribute,
+            Specification<T> filter, String cursor, int pageSize, String sortBy, String sortOrder) {
+        boolean ascending = sortOrder.equalsIgnoreCase("asc");
+
+        // Checked before querying, an entity attribute the result does not carry could not go into the next cursor
+        if (!readable(resultClass, sortBy)) {
+            throw new APIException("Invalid sort property: " + sortBy);
+        }
+
+        // Hibernate's builder, for explicit NULLS FIRST/LAST
+        HibernateCriteriaBuilder cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = cb.createQuery(resultClass);
+        Root<T> root = query.from(entityClass);
+
+        Path<Comparable> sortKey = (Path<Comparable>) attribute(root, sortBy);
+        Path<Comparable> id = (Path<Comparable>) attribute(root, idAttribute);
+
+        Predicate where = filter == null ? cb.conjunction() : filter.toPredicate(root, query, cb);
+
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decode(cursor, sortBy, ascending);
+            Comparable lastSortKey;
+            Comparable lastId;
+
+            try {
+                lastSortKey = parts[2].charAt(0) == NULL_KEY ? null : fromString(parts[2].substring(1), sortKey.getJavaType());
+                lastId = fromString(parts[3], id.getJavaType());
+            } catch (RuntimeException e) {
+                throw new APIException("Invalid cursor");
+            }
+
+            Predicate after;
+
+            if (lastSortKey == null) {
+                // Ascending the NULL keys come first and every value follows, descending they come last
+                Predicate nullsAfter = cb.and(cb.isNull(sortKey), ascending ? cb.greaterThan(id, lastId) : cb.lessThan(id, lastId));
+                after = ascending ? cb.or(nullsAfter, cb.isNotNull(sortKey)) : nullsAfter;
+            } else {
+                after = ascending
+                        ? cb.or(cb.greaterThan(sortKey, lastSortKey),
+                                cb.and(cb.equal(sortKey, lastSortKey), cb.greaterThan(id, lastId)))
+                        : cb.or(cb.lessThan(sortKey, lastSortKey),
+                                cb.and(cb.equal(sortKey, lastSortKey), cb.lessThan(id, lastId)),
+                                cb.isNull(sortKey));
+            }
+
+            where = cb.and(where, after);
+        }
+
+        query.select((Selection<R>) selection.apply(root, cb))
+                .where(where)
+                .orderBy(ascending ? cb.asc(sortKey, true) : cb.desc(sortKey, false), ascending ? cb.asc(id) : cb.desc(id));
+
+        List<R> rows = entityManager.createQuery(query).setMaxResults(pageSize + 1).getResultList();
+
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null);
+        }
+
+        List<R> content = rows.subList(0, pageSize);
+        R last = content.get(pageSize - 1);
+        BeanWrapperImpl lastRow = new BeanWrapperImpl(last);
+
+        return new KeysetPage<>(content, encode(sortBy, ascending, lastRow.getPropertyValue(sortBy),
+                lastRow.getPropertyValue(idAttribute)));
+    }
+
+    public <T> long count(Class<T> entityClass, Specification<T> filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(entityClass);
+
+        query.select(cb.count(root));
+
+        if (filter != null) {
+            query.where(filter.toPredicate(root, query, cb));
+        }
+
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static Path<?> attribute(Root<?> root, String name) {
+        try {
+            return root.get(name);
+        } catch (IllegalArgumentException e) {
+            throw new APIException("Invalid sort property: " + name);
+        }
+    }
+
+    private static boolean readable(Class<?> type, String property) {
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, property);
+
+        return descriptor != null && descriptor.getReadMethod() != null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Comparable fromString(String value, Class<?> type) {
+        if (type == LocalDate.class) {
+            return LocalDate.parse(value);
+        }
+
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(value);
+        }
+
+        if (type == Instant.class) {
+            return Instant.parse(value);
+        }
+
+        return (Comparable) CONVERSION.convert(value, type);
+    }
+
+    private static String encode(String sortBy, boolean ascending, Object sortKey, Object id) {
+        String key = sortKey == null ? String.valueOf(NULL_KEY) : VALUE_KEY + sortKey.toString();
+        String raw = sortBy + SEPARATOR + order(ascending) + SEPARATOR + key + SEPARATOR + id;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decode(String cursor, String sortBy, boolean ascending) {
+        String[] parts;
+
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new APIException("Invalid cursor");
+        }
+
+        // The same position means a different page in the other direction
+        if (parts.length != 4 || !parts[0].equals(sortBy) || !parts[1].equals(order(ascending)) || parts[2].isEmpty()) {
+            throw new APIException("Cursor does not belong to a listing sorted by " + sortBy + " " + order(ascending));
+        }
+
+        return parts;
+    }
+
+    private static String order(boolean ascending) {
+        return ascending ? "asc" : "desc";
+    }
+}
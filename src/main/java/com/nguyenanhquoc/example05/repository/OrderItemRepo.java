@@ -1,10 +1,18 @@
 package com.nguyenanhquoc.example05.repository;
 
 
+import java.util.Collection;
+import java.util.List;
+
 import com.nguyenanhquoc.example05.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface OrderItemRepo extends JpaRepository<OrderItem,Long> {
+
+    // Products that order lines still point to, these cannot be deleted
+    @Query("SELECT DISTINCT oi.product.productId FROM OrderItem oi WHERE oi.product.productId IN ?1")
+    List<Long> findOrderedProductIds(Collection<Long> productIds);
 }
@@ -0,0 +1,29 @@
+package com.nguyenanhquoc.example05.repository;
+
+import com.nguyenanhquoc.example05.entity.OrderOutbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OrderOutboxRepo extends JpaRepository<OrderOutbox, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2) so workers claim disjoint batches; H2 has no SKIP LOCKED and waits instead
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OrderOutbox o WHERE o.claimedUntil IS NULL OR o.claimedUntil < ?1 ORDER BY o.outboxId")
+    List<OrderOutbox> findClaimable(Instant now, Pageable limit);
+
+    boolean existsByCartId(Long cartId);
+
+    @Query("SELECT MIN(o.createdAt) FROM OrderOutbox o")
+    Instant findOldestCreatedAt();
+}
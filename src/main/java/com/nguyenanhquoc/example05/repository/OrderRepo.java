@@ -14,4 +14,11 @@ public interface OrderRepo extends JpaRepository<Order, Long> {
     Order findOrderByEmailAndOrderId(String email, Long cartId);
 
     List<Order> findAllByEmail(String emailId);
+
+    @Query("SELECT o.version FROM Order o WHERE o.orderId = ?2 AND o.email = ?1")
+    Long findVersion(String email, Long orderId);
+
+    // Changes whenever one of the user's orders is placed or updated, read from idx_orders_email
+    @Query("SELECT COUNT(o), COALESCE(SUM(o.version), 0), COALESCE(MAX(o.orderId), 0) FROM Order o WHERE o.email = ?1")
+    List<Object[]> findVersionsByEmail(String email);
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.nguyenanhquoc.example05.repository;
+
+import com.nguyenanhquoc.example05.entity.OrderSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderSummaryRepo extends JpaRepository<OrderSummary, Long> {
+
+    @Modifying
+    @Query("UPDATE OrderSummary s SET s.orderStatus = ?2 WHERE s.orderId = ?1")
+    int updateStatus(Long orderId, String orderStatus);
+
+    // Orders placed before order_summaries existed, in id order
+    @Query("SELECT o.orderId FROM Order o WHERE o.orderId > ?1 AND NOT EXISTS (SELECT 1 FROM OrderSummary s WHERE s.orderId = o.orderId) ORDER BY o.orderId")
+    List<Long> findOrderIdsWithoutSummary(Long afterOrderId, Pageable limit);
+
+    // Skips orders that got their summary since they were found, e.g. placed by another instance or a concurrent backfill
+    @Modifying
+    @Query("INSERT INTO OrderSummary (orderId, email, orderDate, totalAmount, orderStatus, itemCount, paymentMethod) "
+            + "SELECT o.orderId, o.email, o.orderDate, o.totalAmount, o.orderStatus, SIZE(o.orderItems), p.paymentMethod "
+            + "FROM Order o LEFT JOIN o.payment p WHERE o.orderId IN ?1 "
+            + "AND NOT EXISTS (SELECT 1 FROM OrderSummary s WHERE s.orderId = o.orderId)")
+    int insertSummaries(Collection<Long> orderIds);
+}
@@ -1,14 +1,108 @@
 package com.nguyenanhquoc.example05.repository;
 
 import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 @Repository
 public interface ProductRepo extends JpaRepository<Product,Long> {
-    Page<Product> findByProductNameContainingIgnoreCase(String keyword, Pageable pageable);
+    // Read model: ProductDTO columns straight from the product table, no entity graph is hydrated
+    @Query(value = "SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p WHERE p.retired = false",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.retired = false")
+    Page<ProductDTO> findAllProductDTOs(Pageable pageable);
+
+    // Served by idx_product_category_quantity, the total comes from CategoryProductCounts instead of COUNT(*)
+    @Query("SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p "
+            + "WHERE p.category.categoryId = ?1")
+    List<ProductDTO> findProductDTOsByCategory(Long categoryId, Pageable pageable);
+
+    @Query(value = "SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p "
+            + "WHERE p.category.categoryId = ?1 AND p.quantity > 0",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.category.categoryId = ?1 AND p.quantity > 0")
+    Page<ProductDTO> findInStockProductDTOsByCategory(Long categoryId, Pageable pageable);
+
+    long countByCategoryCategoryId(Long categoryId);
+
+    // Set-based duplicate check for a whole import chunk, served by uk_product_category_dedup
+    @Query("SELECT p.category.categoryId, p.dedupHash FROM Product p "
+            + "WHERE p.category.categoryId IN ?1 AND p.dedupHash IN ?2")
+    List<Object[]> findDedupHashes(Collection<Long> categoryIds, Collection<String> dedupHashes);
+
+    // A retired product has no category, so the unique key has nothing to cover
+    @Query("SELECT p FROM Product p WHERE p.dedupHash IS NULL AND p.category IS NOT NULL AND p.productId > ?1 "
+            + "ORDER BY p.productId")
+    List<Product> findWithoutDedupHash(Long lastProductId, Pageable limit);
+
+    // Conditional decrement: 0 rows updated means there was not enough stock
+    @Modifying
+    @Query("UPDATE Product p SET p.quantity = p.quantity - ?2 WHERE p.productId = ?1 AND p.quantity >= ?2")
+    int takeStock(Long productId, int quantity);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.quantity = p.quantity + ?2 WHERE p.productId = ?1")
+    int returnStock(Long productId, int quantity);
+
+    @Query("SELECT COALESCE(p.quantity, 0) FROM Product p WHERE p.productId = ?1")
+    Integer findQuantity(Long productId);
+
+    @Query("SELECT p.productId, COALESCE(p.quantity, 0) FROM Product p WHERE p.productId IN ?1")
+    List<Object[]> findQuantities(Collection<Long> productIds);
+
+    // Row lock held until commit so a stock correction and a checkout on the same product serialize
+    @Query(value = "SELECT COALESCE(quantity, 0) FROM product WHERE product_id = ?1 FOR UPDATE", nativeQuery = true)
+    Integer findQuantityForUpdate(Long productId);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.quantity = ?2 WHERE p.productId = ?1")
+    int setStock(Long productId, int quantity);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.dedupHash = ?2 WHERE p.productId = ?1")
+    int setDedupHash(Long productId, String dedupHash);
+
+    // Retired products are left out, so neither search hits nor cart lines show them
+    @Query("SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p "
+            + "WHERE p.productId IN ?1 AND p.retired = false")
+    List<ProductDTO> findProductDTOsByIds(Collection<Long> productIds);
+
+    @Query("SELECT p.productId FROM Product p WHERE p.category.categoryId = ?1 ORDER BY p.productId")
+    List<Long> findProductIdsByCategory(Long categoryId, Pageable limit);
+
+    // What a removal has to clean up outside the product table: category counts and image references
+    @Query("SELECT p.productId, c.categoryId, p.image FROM Product p LEFT JOIN p.category c WHERE p.productId IN ?1")
+    List<Object[]> findCategoriesAndImages(Collection<Long> productIds);
+
+    @Modifying
+    @Query("DELETE FROM Product p WHERE p.productId IN ?1")
+    int deleteByProductIds(Collection<Long> productIds);
+
+    // Taken off its category and out of stock, the row stays for the order lines that reference it
+    @Modifying
+    @Query("UPDATE Product p SET p.category = null, p.quantity = 0, p.retired = true WHERE p.productId IN ?1")
+    int retireByProductIds(Collection<Long> productIds);
+
+    @Query("SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p "
+            + "WHERE p.productId IN ?1 AND p.retired = false")
+    List<ProductDTO> findProductDTOsByIds(Collection<Long> productIds, Pageable pageable);
+
+    // Walks the table in primary key order without an OFFSET scan or a count query
+    @Query("SELECT new com.nguyenanhquoc.example05.payloads.dto.ProductDTO(p.productId, p.productName, p.image, "
+            + "p.description, p.quantity, p.price, p.discount, p.specialPrice) FROM Product p "
+            + "WHERE p.productId > ?1 AND p.retired = false ORDER BY p.productId")
+    List<ProductDTO> findProductDTOsAfter(Long lastProductId, Pageable limit);
 
 }
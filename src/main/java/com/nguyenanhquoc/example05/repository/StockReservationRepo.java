@@ -0,0 +1,44 @@
+package com.nguyenanhquoc.example05.repository;
+
+import com.nguyenanhquoc.example05.entity.StockReservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StockReservationRepo extends JpaRepository<StockReservation, Long> {
+
+    // Locked so the sweeper cannot expire a reservation while a cart is extending it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<StockReservation> findByCartIdAndProductId(Long cartId, Long productId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<StockReservation> findByCartIdAndProductIdIn(Long cartId, Collection<Long> productIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<StockReservation> findByCartIdIn(Collection<Long> cartIds);
+
+    // One batch of expired reservations in id order, served by idx_reservation_expires
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM StockReservation r WHERE r.expiresAt < ?1 ORDER BY r.reservationId")
+    List<StockReservation> findExpired(Instant now, Pageable limit);
+
+    @Query("SELECT COALESCE(SUM(r.quantity), 0) FROM StockReservation r WHERE r.productId = ?1")
+    long sumQuantityByProductId(Long productId);
+
+    @Query("SELECT r.productId, SUM(r.quantity) FROM StockReservation r WHERE r.productId IN ?1 GROUP BY r.productId")
+    List<Object[]> sumQuantitiesByProductIds(Collection<Long> productIds);
+
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.productId IN ?1")
+    int deleteByProductIds(Collection<Long> productIds);
+}
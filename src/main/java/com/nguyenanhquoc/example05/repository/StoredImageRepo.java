@@ -0,0 +1,26 @@
+package com.nguyenanhquoc.example05.repository;
+
+import com.nguyenanhquoc.example05.entity.StoredImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+
+@Repository
+public interface StoredImageRepo extends JpaRepository<StoredImage, String> {
+
+    // Creates the row or adds a reference in one statement, so two first uploads of the same content cannot both insert
+    @Modifying
+    @Query(value = "INSERT INTO stored_images (file_name, ref_count) VALUES (?1, 1) "
+            + "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1", nativeQuery = true)
+    int addReference(String fileName);
+
+    @Modifying
+    @Query("UPDATE StoredImage s SET s.refCount = s.refCount - 1 WHERE s.fileName = ?1 AND s.refCount > 0")
+    int decrementRefCount(String fileName);
+
+    @Modifying
+    @Query("DELETE FROM StoredImage s WHERE s.fileName = ?1 AND s.refCount = 0")
+    int deleteIfUnreferenced(String fileName);
+}
@@ -0,0 +1,11 @@
+package com.nguyenanhquoc.example05.service;
+
+public interface CartRepricingService {
+
+    void repriceCarts(Long productId);
+
+    int repriceCartsInChunks(Long productId);
+
+    // For product changes that carts show without a new price, e.g. the image
+    void touchCarts(Long productId);
+}
@@ -1,20 +1,37 @@
 package com.nguyenanhquoc.example05.service;
 
+import com.nguyenanhquoc.example05.entity.CartItem;
 import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
 
 import java.util.List;
+import java.util.Map;
 
 public interface CartService {
 
     CartDTO addProductToCart(String email, Long productId, Integer quantity);
 
+    CartDTO addProductsToCart(String email, List<CartItemChange> changes);
+
     List<CartDTO> getAllCarts();
 
     CartDTO getCart(String emailId, Long cartId);
 
+    // Changes with every change to the cart, null when it cannot be read without loading the cart
+    Long getCartVersion(String emailId, Long cartId);
+
     CartDTO updateProductQuantityInCart(Long cartId, Long productId, Integer quantity);
 
     void updateProductInCarts(Long cartId, Long productId);
 
     String deleteProductFromCart(Long cartId, Long productId);
+
+    // Takes the lines an order was placed from off the cart, their stock holds are already committed
+    void removeOrderedItems(Long cartId, List<CartItem> orderedItems);
+
+    // Lowers the cart's lines by what an order took from them by product id, a line left with nothing goes
+    void removeOrderedQuantities(Long cartId, Map<Long, Integer> orderedQuantities);
+
+    // Makes sure the cart's rows in the database are current, for code that reads the cart tables directly
+    void persistCart(Long cartId);
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.nguyenanhquoc.example05.service;
 
 import com.nguyenanhquoc.example05.entity.Category;
 import com.nguyenanhquoc.example05.payloads.dto.CategoryDTO;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
 import com.nguyenanhquoc.example05.payloads.response.CategoryResponse;
 
 public interface CategoryService {
@@ -10,7 +11,13 @@ public interface CategoryService {
 
     CategoryResponse getCategories(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+    CategoryResponse getCategories(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal);
+
     CategoryDTO updateCategory(Category category, Long categoryId);
 
     String deleteCategory(Long categoryId);
+
+    CategoryRemovalResponse startCategoryRemoval(Long categoryId);
+
+    CategoryRemovalResponse getCategoryRemoval(String jobId);
 }
\ No newline at end of file
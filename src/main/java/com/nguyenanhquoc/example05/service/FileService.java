@@ -1,15 +1,16 @@
 package com.nguyenanhquoc.example05.service;
 
+import com.nguyenanhquoc.example05.payloads.ImageFile;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 
 public interface FileService {
 
 
     String uploadImage(String path, MultipartFile file) throws IOException;
 
-    InputStream getResource(String path, String fileName) throws FileNotFoundException;
-}
\ No newline at end of file
+    void releaseImage(String path, String fileName);
+
+    ImageFile getImage(String path, String fileName, Integer size) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.nguyenanhquoc.example05.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface ImageVariantService {
+
+    void scheduleVariants(Path original);
+
+    void createVariants(Path original) throws IOException;
+
+    boolean hasVariants(Path original);
+
+    Path nearestVariant(Path original, Integer size);
+
+    void deleteVariants(Path original) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.nguyenanhquoc.example05.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface InventoryService {
+
+    boolean reserve(Long cartId, Long productId, int quantity);
+
+    List<Long> reserveAll(Long cartId, Map<Long, Integer> quantities);
+
+    void releaseReservation(Long cartId, Long productId);
+
+    boolean commitReservation(Long cartId, Long productId, int quantity);
+
+    List<Long> commitReservations(Long cartId, Map<Long, Integer> quantities);
+
+    int expireReservations(int batchSize);
+
+    int releaseCarts(Collection<Long> cartIds);
+
+    int getAvailableStock(Long productId);
+
+    boolean takeStock(Long productId, int quantity);
+
+    void returnStock(Long productId, int quantity);
+
+    void setStock(Long productId, int quantity);
+
+    void evictProduct(Long productId);
+
+    void removeProducts(Collection<Long> productIds);
+}
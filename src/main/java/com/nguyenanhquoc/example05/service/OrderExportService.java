@@ -0,0 +1,10 @@
+package com.nguyenanhquoc.example05.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+public interface OrderExportService {
+
+    long exportOrders(LocalDate from, LocalDate to, String orderStatus, boolean csv, OutputStream output) throws IOException;
+}
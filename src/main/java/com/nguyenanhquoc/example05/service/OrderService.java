@@ -2,18 +2,28 @@ package com.nguyenanhquoc.example05.service;
 
 import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
 import com.nguyenanhquoc.example05.payloads.response.OrderResponse;
+import com.nguyenanhquoc.example05.payloads.response.OrderSummaryResponse;
 
-import java.util.List;
 
 public interface OrderService {
 
     OrderDTO placeOrder(String emailId, Long cartId, String paymentMethod);
 
+    void processOrder(Long orderId, Long cartId, String paymentMethod);
+
+    void failOrder(Long orderId, String reason);
+
     OrderDTO getOrder(String emailId, Long orderId);
 
-    List<OrderDTO> getOrdersByUser(String emailId);
+    Long getOrderVersion(String emailId, Long orderId);
+
+    OrderSummaryResponse getOrdersByUser(String emailId, String cursor, Integer pageSize);
+
+    String getOrdersVersion(String emailId);
 
     OrderResponse getAllOrders(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+    OrderResponse getAllOrders(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal);
+
     OrderDTO updateOrder(String emailId, Long orderId, String orderStatus);
 }
\ No newline at end of file
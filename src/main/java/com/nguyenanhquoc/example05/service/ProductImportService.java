@@ -0,0 +1,10 @@
+package com.nguyenanhquoc.example05.service;
+
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse;
+
+import java.io.InputStream;
+
+public interface ProductImportService {
+
+    ProductImportResponse importProducts(InputStream input, boolean csv);
+}
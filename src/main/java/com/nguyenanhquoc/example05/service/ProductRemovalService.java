@@ -0,0 +1,21 @@
+package com.nguyenanhquoc.example05.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
+
+public interface ProductRemovalService {
+
+    Removal removeProducts(Collection<Long> productIds);
+
+    long removeCategory(Long categoryId, CategoryRemovalResponse progress);
+
+    CategoryRemovalResponse startCategoryRemoval(Long categoryId);
+
+    CategoryRemovalResponse getCategoryRemoval(String jobId);
+
+    // Products referenced by order lines are retired rather than deleted
+    record Removal(int removed, List<Long> retiredProductIds) {
+    }
+}
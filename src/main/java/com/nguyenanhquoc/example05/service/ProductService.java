@@ -1,13 +1,12 @@
 package com.nguyenanhquoc.example05.service;
 
 import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.payloads.ImageFile;
 import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
 import com.nguyenanhquoc.example05.payloads.response.ProductResponse;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 
 public interface ProductService {
 
@@ -15,15 +14,25 @@ public interface ProductService {
 
     ProductResponse getAllProducts(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
-    ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
+    ProductResponse getAllProducts(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal);
+
+    ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy, String sortOrder,
+                                     boolean inStockOnly);
+
+    ProductResponse searchByCategory(Long categoryId, String cursor, Integer pageSize, String sortBy, String sortOrder,
+                                     boolean inStockOnly, boolean withTotal);
 
     ProductDTO updateProduct(Long productId, Product product);
 
     ProductDTO updateProductImage(Long productId, MultipartFile image) throws IOException;
 
-    public InputStream getProductImage(String fileName) throws FileNotFoundException;
+    public ImageFile getProductImage(String fileName, Integer size) throws IOException;
 
     ProductResponse searchProductByKeyword(String keyword, Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
     String deleteProduct(Long productId);
+
+    int getAvailableQuantity(Long productId);
+
+    int rebuildSearchIndex();
 }
\ No newline at end of file
@@ -9,6 +9,8 @@ public interface UserService {
 
     UserResponse getAllUsers(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+    UserResponse getAllUsers(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal);
+
     UserDTO getUserById(Long userId);
 
     UserDTO updateUser(Long userId, UserDTO userDTO);
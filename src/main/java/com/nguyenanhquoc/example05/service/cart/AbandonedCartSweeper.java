@@ -0,0 +1,118 @@
+package com.nguyenanhquoc.example05.service.cart;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.service.InventoryService;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Empties carts their owner has not changed for project.cart-abandon-after: their stock holds are
+ * dropped, their items deleted and their totals reset, one short transaction per chunk of carts.
+ * The carts themselves are kept, they are one per user.
+ */
+@Slf4j
+@Component
+public class AbandonedCartSweeper {
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectProvider<CartWriteBehindStore> cartStore;
+
+    @Value("${project.cart-abandon-after:P7D}")
+    private Duration abandonAfter;
+
+    // Totals since startup
+    private final AtomicLong cartsSwept = new AtomicLong();
+    private final AtomicLong unitsReleased = new AtomicLong();
+
+    @Scheduled(initialDelayString = "${project.cart-sweep-interval:PT1H}", fixedDelayString = "${project.cart-sweep-interval:PT1H}")
+    public void sweepAbandonedCarts() {
+        int[] swept = sweep(Instant.now().minus(abandonAfter));
+
+        if (swept[0] > 0) {
+            log.info("Emptied {} abandoned carts, released {} units of stock", swept[0], swept[1]);
+        }
+    }
+
+    // Returns the carts emptied and the units of stock they held
+    public int[] sweep(Instant cutoff) {
+        Pageable chunk = PageRequest.of(0, AppConstants.CART_SWEEP_CHUNK_SIZE);
+        int[] swept = { 0, 0 };
+
+        List<Long> cartIds = cartRepo.findAbandonedCartIds(cutoff, 0L, chunk);
+
+        while (!cartIds.isEmpty()) {
+            List<Long> listed = cartIds;
+
+            transactionTemplate.executeWithoutResult(status -> {
+                // A cart changed in memory but not flushed yet still has an old last_modified, it is not abandoned
+                CartWriteBehindStore store = cartStore.getIfAvailable();
+                List<Long> candidates = store == null ? listed : store.withoutPendingChanges(listed);
+
+                if (candidates.isEmpty()) {
+                    return;
+                }
+
+                List<Long> abandoned = cartRepo.lockAbandonedCarts(candidates, cutoff);
+
+                if (abandoned.isEmpty()) {
+                    return;
+                }
+
+                int released = inventoryService.releaseCarts(abandoned);
+                cartItemRepo.deleteByCartIds(abandoned);
+                cartRepo.clearTotals(abandoned);
+
+                TransactionUtils.afterCommit(() -> {
+                    if (store != null) {
+                        store.evict(abandoned);
+                    }
+                    cartsSwept.addAndGet(abandoned.size());
+                    unitsReleased.addAndGet(released);
+                    swept[0] += abandoned.size();
+                    swept[1] += released;
+                });
+            });
+
+            cartIds = cartRepo.findAbandonedCartIds(cutoff, listed.get(listed.size() - 1), chunk);
+        }
+
+        return swept;
+    }
+
+    public long getCartsSwept() {
+        return cartsSwept.get();
+    }
+
+    public long getUnitsReleased() {
+        return unitsReleased.get();
+    }
+}
@@ -0,0 +1,137 @@
+package com.nguyenanhquoc.example05.service.cart;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of write-behind cart changes, one line per change: the cart id followed by the
+ * new absolute quantity of every line it touched (empty for a removed line), so replaying a file
+ * twice is harmless. A new file is started at every flush and the older ones are deleted once the
+ * carts they describe are in the database.
+ */
+@Slf4j
+public class CartJournal implements Closeable {
+
+    private static final Pattern FILE_NAME = Pattern.compile("cart-journal\\.(\\d+)\\.log");
+
+    private final Path folder;
+    private final boolean sync;
+    private long sequence;
+    private Path current;
+    private FileChannel channel;
+
+    public CartJournal(Path folder, boolean sync) throws IOException {
+        this.folder = folder;
+        this.sync = sync;
+
+        Files.createDirectories(folder);
+        sequence = files().stream().mapToLong(CartJournal::sequenceOf).max().orElse(0);
+        open();
+    }
+
+    public synchronized void append(Long cartId, Map<Long, Integer> changes) {
+        String line = cartId + "\t" + changes.entrySet().stream()
+                .map(change -> change.getKey() + "=" + (change.getValue() == null ? "" : change.getValue()))
+                .collect(Collectors.joining(",")) + "\n";
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            // Without sync a process crash loses nothing, only a power loss can drop the last writes
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Starts a new file and returns all older ones, to be deleted once their carts are flushed
+    public synchronized List<Path> rotate() throws IOException {
+        channel.close();
+        open();
+
+        return files().stream().filter(file -> !file.equals(current)).toList();
+    }
+
+    public List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(CartJournal::sequenceOf))
+                    .toList();
+        }
+    }
+
+    public void delete(List<Path> files) throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // A last line without its newline was torn by a crash in the middle of a write and is skipped
+    public static void replay(Path file, BiConsumer<Long, Map<Long, Integer>> consumer) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n') + 1;
+
+        if (end < content.length()) {
+            log.warn("Skipping torn last line of cart journal {}", file);
+        }
+
+        for (String line : content.substring(0, end).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                String[] parts = line.split("\t", 2);
+                Map<Long, Integer> changes = new HashMap<>();
+
+                for (String change : parts[1].split(",")) {
+                    String[] productAndQuantity = change.split("=", -1);
+                    changes.put(Long.valueOf(productAndQuantity[0]),
+                            productAndQuantity[1].isEmpty() ? null : Integer.valueOf(productAndQuantity[1]));
+                }
+
+                consumer.accept(Long.valueOf(parts[0]), changes);
+            } catch (RuntimeException e) {
+                log.warn("Skipping unreadable cart journal line in {}: {}", file, line);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        current = folder.resolve("cart-journal." + (++sequence) + ".log");
+        channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static long sequenceOf(Path file) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+}
@@ -0,0 +1,86 @@
+package com.nguyenanhquoc.example05.service.cart;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.exceptions.ConflictException;
+
+/**
+ * One fair lock per cart owner, created on first use and dropped once nobody holds or waits for
+ * it, so requests of different users never wait on each other. Waiting is bounded by
+ * project.cart-lock-timeout, after which the request is rejected with a conflict.
+ */
+@Component
+public class CartLocks {
+
+    @Value("${project.cart-lock-timeout:PT2S}")
+    private Duration timeout;
+
+    private final Map<Object, OwnerLock> locks = new ConcurrentHashMap<>();
+
+    // Totals since startup
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public <T> T withLock(Object owner, Supplier<T> action) {
+        OwnerLock ownerLock = locks.compute(owner, (key, existing) -> {
+            OwnerLock lock = existing == null ? new OwnerLock() : existing;
+            lock.users++;
+            return lock;
+        });
+
+        try {
+            // A timed tryLock keeps the fairness that a plain tryLock would skip
+            if (!ownerLock.lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                contended.incrementAndGet();
+
+                if (!ownerLock.lock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    timedOut.incrementAndGet();
+                    throw new ConflictException("Another change to this cart is in progress, please retry");
+                }
+            }
+
+            try {
+                return action.get();
+            } finally {
+                ownerLock.lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("Interrupted while waiting for the cart");
+        } finally {
+            locks.computeIfPresent(owner, (key, lock) -> --lock.users == 0 ? null : lock);
+        }
+    }
+
+    public void withLock(Object owner, Runnable action) {
+        withLock(owner, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public long getContended() {
+        return contended.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    private static class OwnerLock {
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        // Holders and waiters, only changed inside ConcurrentHashMap.compute
+        private int users;
+    }
+}
@@ -0,0 +1,643 @@
+package com.nguyenanhquoc.example05.service.cart;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.entity.User;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.repository.UserRepo;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Active carts held in memory, keyed by cart id with an index by owner email. Every change is
+ * appended to the local journal before it is applied, and dirty carts are written to carts and
+ * cart_items in batches every project.cart-flush-interval, which bounds how far the database lags.
+ * Carts not in memory are loaded from the database on first use.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "project.cart-store", havingValue = "write-behind")
+public class CartWriteBehindStore {
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${project.cart-journal:cart-journal/}")
+    private String journalFolder;
+
+    @Value("${project.cart-journal-sync:false}")
+    private boolean journalSync;
+
+    @Value("${project.cart-idle-timeout:PT30M}")
+    private Duration idleTimeout;
+
+    private final Map<Long, CachedCart> carts = new ConcurrentHashMap<>();
+    private final Map<String, Long> cartIdsByEmail = new ConcurrentHashMap<>();
+
+    // Guards the maps and a cart's lines for a moment at a time, never across a database call
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Carts dropped from memory per stripe, so a cart read from the database is not published over a newer one
+    private final long[] removals = new long[LOCK_STRIPES];
+
+    // Serializes creating one owner's cart without holding a stripe lock while the row is inserted
+    private final Map<String, Object> cartCreations = new ConcurrentHashMap<>();
+
+    // Changes append under the read lock, so a rotation never splits a change from the flag it sets
+    private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
+
+    private CartJournal journal;
+
+    public CartWriteBehindStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Recovers before the web server starts, so no request sees a cart without its journaled changes
+    @PostConstruct
+    public void openJournal() throws IOException {
+        journal = new CartJournal(Paths.get(journalFolder), journalSync);
+        recover();
+    }
+
+    // Replays what the previous run journaled but did not flush, then writes it out
+    private void recover() throws IOException {
+        List<Path> files = journal.files();
+        int[] replayed = { 0 };
+
+        for (Path file : files.subList(0, files.size() - 1)) {
+            CartJournal.replay(file, (cartId, changes) -> {
+                if (replay(cartId, changes)) {
+                    replayed[0]++;
+                }
+            });
+        }
+
+        if (files.size() > 1) {
+            log.info("Replayed {} cart changes from {} journal files", replayed[0], files.size() - 1);
+            flush();
+        }
+    }
+
+    public Long cartIdOf(String email) {
+        Long cartId = cartIdsByEmail.get(email);
+
+        if (cartId != null) {
+            return cartId;
+        }
+
+        Object creation = cartCreations.computeIfAbsent(email, key -> new Object());
+
+        // The id is published before the entry goes, so whoever locks a later entry finds it
+        try {
+            synchronized (creation) {
+                cartId = cartIdsByEmail.get(email);
+
+                if (cartId == null) {
+                    User user = userRepo.findByEmail(email)
+                            .orElseThrow(() -> new ResourceNotFoundException("User", "email", email));
+
+                    // New carts are inserted right away, everything else about them is written behind
+                    cartId = transactionTemplate.execute(status -> cartRepo.findByUser(user).orElseGet(() -> {
+                        Cart newCart = new Cart();
+                        newCart.setUser(user);
+                        newCart.setTotalPrice(0.0);
+                        return cartRepo.save(newCart);
+                    }).getCartId());
+
+                    cartIdsByEmail.putIfAbsent(email, cartId);
+                }
+
+                return cartId;
+            }
+        } finally {
+            cartCreations.remove(email, creation);
+        }
+    }
+
+    public CartLines get(Long cartId) {
+        while (true) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = cached(cartId);
+
+                if (cart != null) {
+                    return cart.snapshot();
+                }
+            }
+
+            load(cartId);
+        }
+    }
+
+    /**
+     * Applies the changes the function returns for the current lines: the new absolute quantity by
+     * product id, or null to remove the line. The function runs under that cart's own lock, so checks
+     * made in it cannot race with another change to the same cart, and a slow one, e.g. a stock
+     * reservation, only holds up this cart.
+     */
+    public CartLines mutate(Long cartId, Function<Map<Long, Integer>, Map<Long, Integer>> change) {
+        CachedCart cart = pin(cartId);
+
+        cart.changing.lock();
+        try {
+            Map<Long, Integer> lines;
+
+            synchronized (lockFor(cartId)) {
+                lines = cart.snapshot().getLines();
+            }
+
+            Map<Long, Integer> changes = change.apply(lines);
+
+            synchronized (lockFor(cartId)) {
+                if (!changes.isEmpty()) {
+                    apply(cart, changes);
+                }
+
+                return cart.snapshot();
+            }
+        } finally {
+            cart.changing.unlock();
+            unpin(cart);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${project.cart-flush-interval:PT5S}", fixedDelayString = "${project.cart-flush-interval:PT5S}")
+    public void flushDirtyCarts() {
+        try {
+            flush();
+        } catch (RuntimeException | IOException e) {
+            log.error("Flushing carts failed, they stay dirty and journaled", e);
+        }
+    }
+
+    // Writes every dirty cart, one transaction per batch, and drops the journal files that are now in the database
+    public synchronized int flush() throws IOException {
+        List<Path> sealed;
+
+        journalLock.writeLock().lock();
+        try {
+            sealed = journal.rotate();
+        } finally {
+            journalLock.writeLock().unlock();
+        }
+
+        // Sorted, so the write locks of a batch are always taken in the same order
+        List<Long> dirty = carts.values().stream().filter(cart -> cart.dirty).map(cart -> cart.cartId).sorted().toList();
+        int flushed = 0;
+
+        for (int from = 0; from < dirty.size(); from += AppConstants.CART_FLUSH_BATCH_SIZE) {
+            List<ReentrantLock> held = new ArrayList<>();
+
+            try {
+                List<CartLines> batch = new ArrayList<>();
+
+                for (Long cartId : dirty.subList(from, Math.min(from + AppConstants.CART_FLUSH_BATCH_SIZE, dirty.size()))) {
+                    ReentrantLock writing = writeLockOf(cartId);
+
+                    if (writing != null) {
+                        writing.lock();
+                        held.add(writing);
+
+                        CartLines cart = takeDirty(cartId);
+                        if (cart != null) {
+                            batch.add(cart);
+                        }
+                    }
+                }
+
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(batch));
+                } catch (RuntimeException e) {
+                    batch.forEach(cart -> markDirty(cart.getCartId()));
+                    throw e;
+                }
+
+                flushed += batch.size();
+            } finally {
+                held.forEach(ReentrantLock::unlock);
+            }
+        }
+
+        journal.delete(sealed);
+        evictIdle();
+
+        return flushed;
+    }
+
+    /**
+     * Writes one cart in the caller's transaction, for code that is about to read it from the database.
+     * Only this cart's write lock is taken, which also waits for a batch flush that is writing it.
+     */
+    public void flush(Long cartId) {
+        ReentrantLock writing = writeLockOf(cartId);
+
+        if (writing == null) {
+            return;
+        }
+
+        writing.lock();
+        try {
+            CartLines cart = takeDirty(cartId);
+
+            if (cart == null) {
+                return;
+            }
+
+            TransactionUtils.afterRollback(() -> markDirty(cartId));
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(List.of(cart)));
+            } catch (RuntimeException e) {
+                markDirty(cartId);
+                throw e;
+            }
+        } finally {
+            writing.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        try {
+            flush();
+        } finally {
+            journal.close();
+        }
+    }
+
+    // Forgets carts whose rows were changed behind the store, unless they have changes of their own to write
+    public void evict(Collection<Long> cartIds) {
+        for (Long cartId : cartIds) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = carts.get(cartId);
+
+                if (cart != null && !cart.dirty && cart.pinned == 0) {
+                    remove(cart);
+                }
+            }
+        }
+    }
+
+    // Drops the lines of products taken off the catalog, journaled like any other change; the rows are already gone
+    public void removeProducts(Collection<Long> productIds) {
+        for (Long cartId : List.copyOf(carts.keySet())) {
+            boolean holdsProduct;
+
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = carts.get(cartId);
+                holdsProduct = cart != null && productIds.stream().anyMatch(cart.lines::containsKey);
+            }
+
+            if (holdsProduct) {
+                mutate(cartId, lines -> {
+                    Map<Long, Integer> removal = new HashMap<>();
+                    productIds.stream().filter(lines::containsKey).forEach(productId -> removal.put(productId, null));
+                    return removal;
+                });
+            }
+        }
+    }
+
+    // The carts with nothing waiting in memory, the others are newer than their rows say
+    public List<Long> withoutPendingChanges(Collection<Long> cartIds) {
+        List<Long> settled = new ArrayList<>(cartIds.size());
+
+        for (Long cartId : cartIds) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = carts.get(cartId);
+
+                if (cart == null || (!cart.dirty && cart.pinned == 0)) {
+                    settled.add(cartId);
+                }
+            }
+        }
+
+        return settled;
+    }
+
+    private void write(List<CartLines> batch) {
+        List<Long> cartIds = batch.stream().map(CartLines::getCartId).toList();
+
+        Map<Long, Map<Long, Object[]>> rowsByCart = new HashMap<>();
+        for (Object[] row : cartItemRepo.findLinesByCartIds(cartIds)) {
+            rowsByCart.computeIfAbsent((Long) row[1], cartId -> new HashMap<>()).put((Long) row[2], row);
+        }
+
+        Set<Long> productIds = new HashSet<>();
+        batch.forEach(cart -> productIds.addAll(cart.getLines().keySet()));
+
+        Map<Long, ProductDTO> products = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            productRepo.findProductDTOsByIds(productIds).forEach(product -> products.put(product.getProductId(), product));
+        }
+
+        List<Long> deleted = new ArrayList<>();
+        List<CartItem> inserted = new ArrayList<>();
+
+        for (CartLines cart : batch) {
+            Map<Long, Object[]> rows = rowsByCart.getOrDefault(cart.getCartId(), Map.of());
+
+            // Lines of products deleted or retired since they were added are dropped
+            rows.forEach((productId, row) -> {
+                Integer quantity = cart.getLines().get(productId);
+
+                if (quantity == null || !products.containsKey(productId)) {
+                    deleted.add((Long) row[0]);
+                } else if (!quantity.equals(row[3])) {
+                    cartItemRepo.setQuantity((Long) row[0], quantity);
+                }
+            });
+
+            cart.getLines().forEach((productId, quantity) -> {
+                ProductDTO product = products.get(productId);
+
+                if (product != null && !rows.containsKey(productId)) {
+                    CartItem cartItem = new CartItem();
+                    cartItem.setCart(entityManager.getReference(Cart.class, cart.getCartId()));
+                    cartItem.setProduct(entityManager.getReference(Product.class, productId));
+                    cartItem.setQuantity(quantity);
+                    cartItem.setDiscount(product.getDiscount());
+                    cartItem.setProductPrice(product.getSpecialPrice());
+                    inserted.add(cartItem);
+                }
+            });
+        }
+
+        if (!deleted.isEmpty()) {
+            cartItemRepo.deleteAllByIdInBatch(deleted);
+        }
+
+        cartItemRepo.saveAll(inserted);
+        cartRepo.recomputeTotals(cartIds);
+        cartRepo.touch(cartIds, Instant.now());
+    }
+
+    private boolean replay(Long cartId, Map<Long, Integer> changes) {
+        while (true) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = cached(cartId);
+
+                if (cart != null) {
+                    apply(cart, changes);
+                    return true;
+                }
+            }
+
+            try {
+                load(cartId);
+            } catch (ResourceNotFoundException e) {
+                log.warn("Skipping journaled changes of cart {}, it no longer exists", cartId);
+                return false;
+            }
+        }
+    }
+
+    private void apply(CachedCart cart, Map<Long, Integer> changes) {
+        journalLock.readLock().lock();
+        try {
+            journal.append(cart.cartId, changes);
+
+            changes.forEach((productId, quantity) -> {
+                if (quantity == null) {
+                    cart.lines.remove(productId);
+                } else {
+                    cart.lines.put(productId, quantity);
+                }
+            });
+            cart.dirty = true;
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Could not journal a change to cart " + cart.cartId, e);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the cart's lock, null when the cart is not in memory
+    private CachedCart cached(Long cartId) {
+        CachedCart cached = carts.get(cartId);
+
+        if (cached != null) {
+            cached.lastAccess = System.nanoTime();
+        }
+
+        return cached;
+    }
+
+    /**
+     * Reads a cart that is not in memory with the stripe lock released, so a slow query only holds up
+     * the caller. The result is dropped when another thread cached the cart first, or when a cart of the
+     * stripe left memory meanwhile, since the rows read may then predate what that cart flushed. Callers
+     * look the cart up again under the lock.
+     */
+    private void load(Long cartId) {
+        long seenRemovals;
+
+        synchronized (lockFor(cartId)) {
+            if (carts.containsKey(cartId)) {
+                return;
+            }
+
+            seenRemovals = removals[stripeOf(cartId)];
+        }
+
+        List<Object[]> owner = cartRepo.findCartOwner(cartId);
+
+        if (owner.isEmpty()) {
+            throw new ResourceNotFoundException("Cart", "cartId", cartId);
+        }
+
+        CachedCart loaded = new CachedCart(cartId, (String) owner.get(0)[1]);
+        for (Object[] row : cartItemRepo.findLinesByCartIds(List.of(cartId))) {
+            loaded.lines.put((Long) row[2], (Integer) row[3]);
+        }
+
+        synchronized (lockFor(cartId)) {
+            if (removals[stripeOf(cartId)] == seenRemovals && carts.putIfAbsent(cartId, loaded) == null
+                    && loaded.email != null) {
+                cartIdsByEmail.putIfAbsent(loaded.email, cartId);
+            }
+        }
+    }
+
+    // Kept in memory until unpinned, so a change that waits for the cart's lock lands on the cart that is served
+    private CachedCart pin(Long cartId) {
+        while (true) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = cached(cartId);
+
+                if (cart != null) {
+                    cart.pinned++;
+                    return cart;
+                }
+            }
+
+            load(cartId);
+        }
+    }
+
+    private void unpin(CachedCart cart) {
+        synchronized (lockFor(cart.cartId)) {
+            cart.pinned--;
+        }
+    }
+
+    private CartLines takeDirty(Long cartId) {
+        synchronized (lockFor(cartId)) {
+            CachedCart cart = carts.get(cartId);
+
+            if (cart == null || !cart.dirty) {
+                return null;
+            }
+
+            cart.dirty = false;
+            return cart.snapshot();
+        }
+    }
+
+    // Null when the cart is not in memory, it then has nothing to write
+    private ReentrantLock writeLockOf(Long cartId) {
+        synchronized (lockFor(cartId)) {
+            CachedCart cart = carts.get(cartId);
+            return cart == null ? null : cart.writing;
+        }
+    }
+
+    private void markDirty(Long cartId) {
+        synchronized (lockFor(cartId)) {
+            CachedCart cart = carts.get(cartId);
+
+            if (cart != null) {
+                cart.dirty = true;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long idleSince = System.nanoTime() - idleTimeout.toNanos();
+
+        for (Long cartId : List.copyOf(carts.keySet())) {
+            synchronized (lockFor(cartId)) {
+                CachedCart cart = carts.get(cartId);
+
+                if (cart != null && !cart.dirty && cart.pinned == 0 && cart.lastAccess - idleSince < 0) {
+                    remove(cart);
+                }
+            }
+        }
+    }
+
+    // Caller holds the cart's lock
+    private void remove(CachedCart cart) {
+        carts.remove(cart.cartId);
+        removals[stripeOf(cart.cartId)]++;
+        if (cart.email != null) {
+            cartIdsByEmail.remove(cart.email, cart.cartId);
+        }
+    }
+
+    private Object lockFor(Object key) {
+        return locks[stripeOf(key)];
+    }
+
+    private static int stripeOf(Object key) {
+        return Math.floorMod(key.hashCode(), LOCK_STRIPES);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class CartLines {
+
+        private final Long cartId;
+        private final String email;
+        private final Map<Long, Integer> lines;
+    }
+
+    private static class CachedCart {
+
+        private final Long cartId;
+        private final String email;
+        private final Map<Long, Integer> lines = new LinkedHashMap<>();
+
+        // Held while the cart's lines are written, so two flushes never write the same cart at once
+        private final ReentrantLock writing = new ReentrantLock();
+
+        // Held for the whole of a change, including what the change checks in the database
+        private final ReentrantLock changing = new ReentrantLock();
+
+        // Changes holding or waiting for the cart, it is not evicted while there are any
+        private int pinned;
+        private boolean dirty;
+        private long lastAccess;
+
+        private CachedCart(Long cartId, String email) {
+            this.cartId = cartId;
+            this.email = email;
+        }
+
+        private CartLines snapshot() {
+            return new CartLines(cartId, email, Collections.unmodifiableMap(new LinkedHashMap<>(lines)));
+        }
+    }
+}
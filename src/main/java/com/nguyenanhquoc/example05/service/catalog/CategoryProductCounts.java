@@ -0,0 +1,93 @@
+package com.nguyenanhquoc.example05.service.catalog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+/**
+ * Per-category product counts kept in memory so category listings do not pay a COUNT(*) per request.
+ * A category is counted once on first use and then maintained by the product write paths.
+ */
+@Component
+public class CategoryProductCounts {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    private final Map<Long, Count> counts = new ConcurrentHashMap<>();
+
+    // Bumped when a change to a category starts and again when it ends, so a count loaded in between is not kept
+    private final Map<Long, AtomicLong> changes = new ConcurrentHashMap<>();
+
+    public long get(Long categoryId) {
+        Count count = counts.get(categoryId);
+
+        if (count != null) {
+            return count.value.get();
+        }
+
+        // Counted outside the map, a slow COUNT(*) must not block other categories
+        long changesBefore = changesOf(categoryId).get();
+        Count loaded = new Count(productRepo.countByCategoryCategoryId(categoryId), changesBefore);
+        Count existing = counts.putIfAbsent(categoryId, loaded);
+
+        if (existing != null) {
+            return existing.value.get();
+        }
+
+        // A product added or removed meanwhile may be in the query and in add() as well, count again next time
+        if (changesOf(categoryId).get() != changesBefore) {
+            counts.remove(categoryId, loaded);
+        }
+
+        return loaded.value.get();
+    }
+
+    /**
+     * Called inside the transaction that adds or removes the products, before it commits: the delta is
+     * applied once it has committed. A count loaded after the change started may already include it,
+     * so it is dropped instead. Categories that were never read are left alone, they are counted on first use.
+     */
+    public void add(Long categoryId, long delta) {
+        long started = changesOf(categoryId).incrementAndGet();
+
+        TransactionUtils.afterCommit(() -> counts.computeIfPresent(categoryId, (id, count) -> {
+            if (count.loadedAt >= started) {
+                return null;
+            }
+
+            count.value.addAndGet(delta);
+            return count;
+        }));
+
+        TransactionUtils.afterCompletion(() -> changesOf(categoryId).incrementAndGet());
+    }
+
+    public void evict(Long categoryId) {
+        changesOf(categoryId).incrementAndGet();
+        counts.remove(categoryId);
+    }
+
+    private AtomicLong changesOf(Long categoryId) {
+        return changes.computeIfAbsent(categoryId, id -> new AtomicLong());
+    }
+
+    private static class Count {
+
+        private final AtomicLong value;
+
+        // Changes of the category when its COUNT(*) started
+        private final long loadedAt;
+
+        private Count(long value, long loadedAt) {
+            this.value = new AtomicLong(value);
+            this.loadedAt = loadedAt;
+        }
+    }
+}
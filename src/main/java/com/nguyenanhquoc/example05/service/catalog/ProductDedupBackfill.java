@@ -0,0 +1,123 @@
+package com.nguyenanhquoc.example05.service.catalog;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fills dedup_hash for products created before the column existed. Rows that turn out to
+ * duplicate an earlier product keep a null hash (the unique key ignores nulls) and are logged.
+ * Runs before the web server starts, so no request sees a product that the unique key does not
+ * cover yet. Each batch is checked with one query and updated in one transaction, a batch that
+ * does not commit is retried row by row.
+ */
+@Slf4j
+@Component
+public class ProductDedupBackfill {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void backfillOnStartup() {
+        int updated = backfill();
+
+        if (updated > 0) {
+            log.info("Backfilled dedup_hash for {} products", updated);
+        }
+    }
+
+    public int backfill() {
+        Pageable batch = PageRequest.of(0, AppConstants.PRODUCT_DEDUP_BACKFILL_BATCH_SIZE);
+        Long lastProductId = 0L;
+        int updated = 0;
+
+        List<Product> products = productRepo.findWithoutDedupHash(lastProductId, batch);
+
+        while (!products.isEmpty()) {
+            Long afterProductId = lastProductId;
+
+            try {
+                updated += transactionTemplate.<Integer>execute(status -> setDedupHashes(afterProductId, batch));
+            } catch (DataIntegrityViolationException e) {
+                // Another instance inserted a matching product since the check, so only the rows that collide are skipped
+                log.warn("Product dedup_hash backfill batch after product {} rolled back, retrying row by row",
+                        afterProductId, e);
+
+                for (Product product : products) {
+                    if (setDedupHash(product.getProductId(), Product.dedupHash(product.getProductName(), product.getDescription()))) {
+                        updated++;
+                    }
+                }
+            }
+
+            lastProductId = products.get(products.size() - 1).getProductId();
+            products = productRepo.findWithoutDedupHash(lastProductId, batch);
+        }
+
+        return updated;
+    }
+
+    // Re-reads the batch inside the transaction, the changed rows are flushed as one JDBC batch on commit
+    private int setDedupHashes(Long lastProductId, Pageable batch) {
+        List<Product> products = productRepo.findWithoutDedupHash(lastProductId, batch);
+
+        Set<Long> categoryIds = products.stream().map(product -> product.getCategory().getCategoryId())
+                .collect(Collectors.toSet());
+        Set<String> dedupHashes = products.stream()
+                .map(product -> Product.dedupHash(product.getProductName(), product.getDescription()))
+                .collect(Collectors.toSet());
+
+        Set<String> taken = new HashSet<>();
+
+        for (Object[] pair : productRepo.findDedupHashes(categoryIds, dedupHashes)) {
+            taken.add(pair[0] + ":" + pair[1]);
+        }
+
+        int updated = 0;
+
+        for (Product product : products) {
+            String dedupHash = Product.dedupHash(product.getProductName(), product.getDescription());
+
+            // An earlier row of the same batch counts as well
+            if (!taken.add(product.getCategory().getCategoryId() + ":" + dedupHash)) {
+                log.warn("Product {} duplicates another product in its category, left without dedup_hash",
+                        product.getProductId());
+                continue;
+            }
+
+            product.setDedupHash(dedupHash);
+            updated++;
+        }
+
+        return updated;
+    }
+
+    private boolean setDedupHash(Long productId, String dedupHash) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> productRepo.setDedupHash(productId, dedupHash));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Product {} duplicates another product in its category, left without dedup_hash", productId);
+            return false;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.nguyenanhquoc.example05.entity.Address;
 import com.nguyenanhquoc.example05.entity.User;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
 import com.nguyenanhquoc.example05.payloads.dto.AddressDTO;
 import com.nguyenanhquoc.example05.repository.AddressRepo;
 import com.nguyenanhquoc.example05.repository.UserRepo;
@@ -31,6 +32,9 @@ public class AddressServiceImpl implements AddressService {
     @Autowired
     private ModelMapper modelMapper;
 
+    @Autowired
+    private DtoMapper dtoMapper;
+
     @Override
     public AddressDTO createAddress(AddressDTO addressDTO) {
         String country = addressDTO.getCountry();
@@ -48,14 +52,14 @@ public class AddressServiceImpl implements AddressService {
 
         Address address = modelMapper.map(addressDTO, Address.class);
         Address savedAddress = addressRepo.save(address);
-        return modelMapper.map(savedAddress, AddressDTO.class);
+        return dtoMapper.toAddressDTO(savedAddress);
     }
 
     @Override
     public List<AddressDTO> getAddresses() {
         List<Address> addresses = addressRepo.findAll();
         List<AddressDTO> addressDTOs = addresses.stream()
-                .map(address -> modelMapper.map(address, AddressDTO.class))
+                .map(dtoMapper::toAddressDTO)
                 .collect(Collectors.toList());
         return addressDTOs;
     }
@@ -64,7 +68,7 @@ public class AddressServiceImpl implements AddressService {
     public AddressDTO getAddress(Long addressId) {
         Address address = addressRepo.findById(addressId)
                 .orElseThrow(() -> new ResourceNotFoundException("Address", "addressId", addressId));
-        return modelMapper.map(address, AddressDTO.class);
+        return dtoMapper.toAddressDTO(address);
     }
 
     @Override
@@ -86,13 +90,13 @@ public class AddressServiceImpl implements AddressService {
             addressFromDB.setBuildingName(address.getBuildingName());
 
             Address updatedAddress = addressRepo.save(addressFromDB);
-            return modelMapper.map(updatedAddress, AddressDTO.class);
+            return dtoMapper.toAddressDTO(updatedAddress);
         } else {
             List<User> users = userRepo.findByAddress(addressId);
             final Address finalAddress = addressFromDB;
             users.forEach(user -> user.getAddresses().add(finalAddress));
             deleteAddress(addressId);
-            return modelMapper.map(addressFromDB, AddressDTO.class);
+            return dtoMapper.toAddressDTO(addressFromDB);
         }
     }
 
@@ -0,0 +1,106 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.service.CartRepricingService;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pushes a product's new special price into every cart holding it with two set-based statements:
+ * one update of cart_items.product_price and one recomputation of carts.total_price. Products in
+ * more carts than project.cart-reprice-async-threshold are repriced after the product update commits,
+ * in chunks of carts that each get their own short transaction. Not @Transactional on purpose.
+ */
+@Slf4j
+@Service
+public class CartRepricingServiceImpl implements CartRepricingService {
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("catalogExecutor")
+    private TaskExecutor catalogExecutor;
+
+    @Value("${project.cart-reprice-async-threshold:1000}")
+    private long asyncThreshold;
+
+    // Runs inside the caller's transaction unless the fan-out is large enough to be deferred
+    @Override
+    public void repriceCarts(Long productId) {
+        if (cartItemRepo.countByProductProductId(productId) <= asyncThreshold) {
+            cartItemRepo.repriceProduct(productId);
+            cartRepo.recomputeTotalsForProduct(productId);
+            return;
+        }
+
+        TransactionUtils.afterCommit(() -> {
+            try {
+                catalogExecutor.execute(() -> repriceInBackground(productId));
+            } catch (TaskRejectedException e) {
+                log.warn("Catalog queue is full, repricing carts of product {} on the request thread", productId);
+                repriceInBackground(productId);
+            }
+        });
+    }
+
+    @Override
+    public int repriceCartsInChunks(Long productId) {
+        Pageable chunk = PageRequest.of(0, AppConstants.CART_REPRICE_CHUNK_SIZE);
+        Long lastCartId = 0L;
+        int repriced = 0;
+
+        List<Long> cartIds = cartItemRepo.findCartIdsByProductId(productId, lastCartId, chunk);
+
+        while (!cartIds.isEmpty()) {
+            List<Long> chunkCartIds = cartIds;
+
+            transactionTemplate.executeWithoutResult(status -> {
+                cartItemRepo.repriceProductInCarts(productId, chunkCartIds);
+                cartRepo.recomputeTotals(chunkCartIds);
+            });
+
+            repriced += chunkCartIds.size();
+            lastCartId = chunkCartIds.get(chunkCartIds.size() - 1);
+            cartIds = cartItemRepo.findCartIdsByProductId(productId, lastCartId, chunk);
+        }
+
+        return repriced;
+    }
+
+    // One VERSIONED update in the caller's transaction, the version is all a cart's ETag is built from
+    @Override
+    public void touchCarts(Long productId) {
+        cartRepo.touchVersionsForProduct(productId);
+    }
+
+    private void repriceInBackground(Long productId) {
+        try {
+            int repriced = repriceCartsInChunks(productId);
+            log.info("Repriced {} carts holding product {}", repriced, productId);
+        } catch (RuntimeException e) {
+            log.error("Repricing carts of product {} stopped, carts keep the old price", productId, e);
+        }
+    }
+}
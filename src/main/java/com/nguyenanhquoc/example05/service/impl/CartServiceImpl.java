@@ -6,19 +6,25 @@ import com.nguyenanhquoc.example05.entity.Product;
 import com.nguyenanhquoc.example05.entity.User;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
 import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
-import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
 import com.nguyenanhquoc.example05.repository.CartItemRepo;
 import com.nguyenanhquoc.example05.repository.CartRepo;
 import com.nguyenanhquoc.example05.repository.ProductRepo;
 import com.nguyenanhquoc.example05.repository.UserRepo;
 import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.InventoryService;
 import jakarta.transaction.Transactional;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -38,7 +44,10 @@ public class CartServiceImpl implements CartService {
     private UserRepo userRepo;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private InventoryService inventoryService;
 
     @Override
     public CartDTO addProductToCart(String email, Long productId, Integer quantity) {
@@ -61,25 +70,21 @@ public class CartServiceImpl implements CartService {
 
         // 4. Kiểm tra sản phẩm đã có trong giỏ hay chưa
         CartItem cartItem = cartItemRepo.findCartItemByProductIdAndCartId(cart.getCartId(), productId);
+        int newQuantity = cartItem != null ? cartItem.getQuantity() + quantity : quantity;
+
+        // 5. Giữ hàng có thời hạn cho cả dòng giỏ hàng, tồn kho chỉ bị trừ khi đặt hàng
+        if (!inventoryService.reserve(cart.getCartId(), productId, newQuantity)) {
+            throw new APIException("Not enough stock for " + product.getProductName());
+        }
 
         if (cartItem != null) {
             // Cộng dồn quantity
-            int newQuantity = cartItem.getQuantity() + quantity;
-
-            if (product.getQuantity() < quantity) {
-                throw new APIException("Not enough stock for " + product.getProductName());
-            }
-
             cartItem.setQuantity(newQuantity);
             cartItem.setProductPrice(product.getSpecialPrice()); // cập nhật giá nếu cần
             cartItemRepo.save(cartItem);
 
         } else {
             // Thêm CartItem mới
-            if (product.getQuantity() < quantity) {
-                throw new APIException("Not enough stock for " + product.getProductName());
-            }
-
             CartItem newCartItem = new CartItem();
             newCartItem.setProduct(product);
             newCartItem.setCart(cart);
@@ -89,43 +94,122 @@ public class CartServiceImpl implements CartService {
             cartItemRepo.save(newCartItem);
         }
 
-        // 5. Cập nhật tồn kho và tổng tiền giỏ
-        product.setQuantity(product.getQuantity() - quantity);
+        // 6. Cập nhật tổng tiền giỏ
         double totalPrice = cart.getCartItems().stream()
                 .mapToDouble(ci -> ci.getProductPrice() * ci.getQuantity())
                 .sum();
         cart.setTotalPrice(totalPrice);
+        cart.setLastModified(Instant.now());
         cartRepo.save(cart);
 
-        // 6. Mapping sang DTO
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-        List<ProductDTO> productDTOs = cart.getCartItems().stream()
-                .map(ci -> modelMapper.map(ci.getProduct(), ProductDTO.class))
-                .collect(Collectors.toList());
-        cartDTO.setProducts(productDTOs);
+        // 7. Mapping sang DTO
+        CartDTO cartDTO = dtoMapper.toCartDTO(cart);
 
         return cartDTO;
     }
 
 
     @Override
-    public List<CartDTO> getAllCarts() {
-        List<Cart> carts = cartRepo.findAll();
+    public CartDTO addProductsToCart(String email, List<CartItemChange> changes) {
 
-        if (carts.size() == 0) {
-            throw new APIException("No cart exists");
+        // 1. Gộp các dòng trùng sản phẩm, kiểm tra số lượng
+        Map<Long, Integer> added = new LinkedHashMap<>();
+
+        for (CartItemChange change : changes) {
+            if (change.getProductId() == null || change.getQuantity() == null || change.getQuantity() < 1) {
+                throw new APIException("Each item needs a productId and a quantity of at least 1");
+            }
+
+            added.merge(change.getProductId(), change.getQuantity(), Integer::sum);
+        }
+
+        if (added.isEmpty()) {
+            throw new APIException("No products to add to the cart");
+        }
+
+        // 2. Lấy user và giỏ hàng
+        User user = userRepo.findByEmail(email)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "email", email));
+
+        Cart cart = cartRepo.findByUser(user).orElseGet(() -> {
+            Cart newCart = new Cart();
+            newCart.setUser(user);
+            newCart.setTotalPrice(0.0);
+            return cartRepo.save(newCart);
+        });
+
+        // 3. Một câu IN cho sản phẩm, một câu IN cho các CartItem đã có
+        Map<Long, Product> products = productRepo.findAllById(added.keySet()).stream()
+                .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+
+        for (Long productId : added.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new ResourceNotFoundException("Product", "productId", productId);
+            }
         }
 
-        List<CartDTO> cartDTOs = carts.stream().map(cart -> {
-            CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
+        Map<Long, CartItem> cartItems = cartItemRepo.findCartItemsByProductIdsAndCartId(cart.getCartId(), added.keySet())
+                .stream().collect(Collectors.toMap(ci -> ci.getProduct().getProductId(), Function.identity()));
 
-            List<ProductDTO> products = cart.getCartItems().stream()
-                    .map(p -> modelMapper.map(p.getProduct(), ProductDTO.class)).collect(Collectors.toList());
+        // 4. Giữ hàng cho cả lô: thiếu một sản phẩm thì không giữ sản phẩm nào
+        Map<Long, Integer> newQuantities = new LinkedHashMap<>();
+        added.forEach((productId, quantity) -> {
+            CartItem cartItem = cartItems.get(productId);
+            newQuantities.put(productId, cartItem == null ? quantity : cartItem.getQuantity() + quantity);
+        });
 
-            cartDTO.setProducts(products);
+        List<Long> unavailable = inventoryService.reserveAll(cart.getCartId(), newQuantities);
 
-            return cartDTO;
-        }).collect(Collectors.toList());
+        if (!unavailable.isEmpty()) {
+            throw new APIException("Not enough stock for " + unavailable.stream()
+                    .map(productId -> products.get(productId).getProductName())
+                    .collect(Collectors.joining(", ")));
+        }
+
+        // 5. Cập nhật hoặc thêm CartItem, ghi tất cả trong một lần saveAll
+        List<CartItem> changed = new ArrayList<>(newQuantities.size());
+
+        newQuantities.forEach((productId, quantity) -> {
+            Product product = products.get(productId);
+            CartItem cartItem = cartItems.get(productId);
+
+            if (cartItem == null) {
+                cartItem = new CartItem();
+                cartItem.setProduct(product);
+                cartItem.setCart(cart);
+                cartItem.setDiscount(product.getDiscount());
+            }
+
+            cartItem.setQuantity(quantity);
+            cartItem.setProductPrice(product.getSpecialPrice());
+            changed.add(cartItem);
+        });
+
+        cartItemRepo.saveAll(changed);
+
+        // 6. Giỏ vừa tạo chưa có các dòng mới trong bộ nhớ (so sánh theo tham chiếu, CartItem dùng @Data)
+        List<CartItem> lines = cart.getCartItems();
+        changed.stream()
+                .filter(cartItem -> lines.stream().noneMatch(line -> line == cartItem))
+                .forEach(lines::add);
+
+        // 7. Cập nhật tổng tiền và trả về một CartDTO
+        cart.setTotalPrice(lines.stream().mapToDouble(ci -> ci.getProductPrice() * ci.getQuantity()).sum());
+        cart.setLastModified(Instant.now());
+        cartRepo.save(cart);
+
+        return dtoMapper.toCartDTO(cart);
+    }
+
+    @Override
+    public List<CartDTO> getAllCarts() {
+        List<Cart> carts = cartRepo.findAllWithItems();
+
+        if (carts.size() == 0) {
+            throw new APIException("No cart exists");
+        }
+
+        List<CartDTO> cartDTOs = carts.stream().map(dtoMapper::toCartDTO).collect(Collectors.toList());
 
         return cartDTOs;
     }
@@ -138,16 +222,16 @@ public class CartServiceImpl implements CartService {
             throw new ResourceNotFoundException("Cart", "cartId", cartId);
         }
 
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-
-        List<ProductDTO> products = cart.getCartItems().stream()
-                .map(p -> modelMapper.map(p.getProduct(), ProductDTO.class)).collect(Collectors.toList());
-
-        cartDTO.setProducts(products);
+        CartDTO cartDTO = dtoMapper.toCartDTO(cart);
 
         return cartDTO;
     }
 
+    @Override
+    public Long getCartVersion(String emailId, Long cartId) {
+        return cartRepo.findVersion(emailId, cartId);
+    }
+
     @Override
     public CartDTO updateProductQuantityInCart(Long cartId, Long productId, Integer quantity) {
         // 1. Lấy Cart và Product
@@ -158,14 +242,8 @@ public class CartServiceImpl implements CartService {
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
 
 
-        if (product.getQuantity() == 0) {
-            throw new APIException(product.getProductName() + " is not available");
-        }
-
-
-        if (product.getQuantity() < quantity) {
-            throw new APIException("Please, make an order of the " + product.getProductName()
-                    + " less than or equal to the quantity " + product.getQuantity() + ".");
+        if (quantity < 0) {
+            throw new APIException("Quantity must not be negative");
         }
 
 
@@ -178,8 +256,17 @@ public class CartServiceImpl implements CartService {
 
         Integer oldQuantity = cartItem.getQuantity();
 
+        // Giữ hàng theo số lượng mới và gia hạn thời gian giữ
+        if (!inventoryService.reserve(cartId, productId, quantity)) {
+            int available = inventoryService.getAvailableStock(productId) + oldQuantity;
 
-        product.setQuantity(product.getQuantity() + oldQuantity);
+            if (available == 0) {
+                throw new APIException(product.getProductName() + " is not available");
+            }
+
+            throw new APIException("Please, make an order of the " + product.getProductName()
+                    + " less than or equal to the quantity " + available + ".");
+        }
 
 
         cart.setTotalPrice(cart.getTotalPrice() - (cartItem.getProductPrice() * oldQuantity));
@@ -187,21 +274,14 @@ public class CartServiceImpl implements CartService {
 
         cartItem.setQuantity(quantity);
 
-        product.setQuantity(product.getQuantity() - quantity);
-
 
         cart.setTotalPrice(cart.getTotalPrice() + (cartItem.getProductPrice() * quantity));
+        cart.setLastModified(Instant.now());
 
 
         cartItem = cartItemRepo.save(cartItem);
 
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-
-        List<ProductDTO> productDTOs = cart.getCartItems().stream()
-                .map(p -> modelMapper.map(p.getProduct(), ProductDTO.class))
-                .collect(Collectors.toList());
-
-        cartDTO.setProducts(productDTOs);
+        CartDTO cartDTO = dtoMapper.toCartDTO(cart);
 
         return cartDTO;
     }
@@ -246,12 +326,13 @@ public class CartServiceImpl implements CartService {
             throw new ResourceNotFoundException("Product", "productId", productId);
         }
 
-        // 3. Hoàn trả số lượng vào tồn kho
+        // 3. Hủy giữ hàng, số lượng được trả lại cho các giỏ khác
         Product product = cartItem.getProduct();
-        product.setQuantity(product.getQuantity() + cartItem.getQuantity());
+        inventoryService.releaseReservation(cartId, productId);
 
         // 4. Trừ tổng tiền của mục hàng khỏi giỏ hàng
         cart.setTotalPrice(cart.getTotalPrice() - (cartItem.getProductPrice() * cartItem.getQuantity()));
+        cart.setLastModified(Instant.now());
 
         // 5. Xóa CartItem
         // Dùng @Modifying query để xóa: deleteCartItemByProductIdAndCartId(Long productId, Long cartId)
@@ -261,4 +342,34 @@ public class CartServiceImpl implements CartService {
 
         return "Product " + product.getProductName() + " removed from the cart !!!";
     }
+
+    @Override
+    public void removeOrderedItems(Long cartId, List<CartItem> orderedItems) {
+        // Chỉ xóa các CartItem đã được đặt hàng bằng một câu DELETE, rồi tính lại tổng tiền từ những dòng còn lại
+        cartItemRepo.deleteAllByIdInBatch(orderedItems.stream().map(CartItem::getCartItemId).toList());
+        cartRepo.recomputeTotals(List.of(cartId));
+    }
+
+    @Override
+    public void removeOrderedQuantities(Long cartId, Map<Long, Integer> orderedQuantities) {
+        List<CartItem> emptied = new ArrayList<>();
+
+        // Dòng nào còn nhiều hơn số lượng đã đặt (thêm vào sau khi nhận đơn) thì chỉ giảm đi, không xóa
+        for (CartItem cartItem : cartItemRepo.findCartItemsByProductIdsAndCartId(cartId, orderedQuantities.keySet())) {
+            int left = cartItem.getQuantity() - orderedQuantities.get(cartItem.getProduct().getProductId());
+
+            if (left > 0) {
+                cartItemRepo.setQuantity(cartItem.getCartItemId(), left);
+            } else {
+                emptied.add(cartItem);
+            }
+        }
+
+        removeOrderedItems(cartId, emptied);
+    }
+
+    @Override
+    public void persistCart(Long cartId) {
+        // Giỏ hàng được ghi thẳng vào database, không có gì phải ghi thêm
+    }
 }
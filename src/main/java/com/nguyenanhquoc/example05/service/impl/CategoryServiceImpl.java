@@ -1,16 +1,18 @@
 package com.nguyenanhquoc.example05.service.impl;
 
 import com.nguyenanhquoc.example05.entity.Category;
-import com.nguyenanhquoc.example05.entity.Product;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
 import com.nguyenanhquoc.example05.payloads.dto.CategoryDTO;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
 import com.nguyenanhquoc.example05.payloads.response.CategoryResponse;
 import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.KeysetPager;
+import com.nguyenanhquoc.example05.repository.KeysetPager.KeysetPage;
 import com.nguyenanhquoc.example05.service.CategoryService;
-import com.nguyenanhquoc.example05.service.ProductService;
+import com.nguyenanhquoc.example05.service.ProductRemovalService;
 import jakarta.transaction.Transactional;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -29,10 +31,13 @@ public class CategoryServiceImpl implements CategoryService {
     private CategoryRepo categoryRepo;
 
     @Autowired
-    private ProductService productService;
+    private ProductRemovalService productRemovalService;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private KeysetPager keysetPager;
 
     @Override
     public CategoryDTO createCategory(Category category) {
@@ -44,7 +49,7 @@ public class CategoryServiceImpl implements CategoryService {
 
         savedCategory = categoryRepo.save(category);
 
-        return modelMapper.map(savedCategory, CategoryDTO.class);
+        return dtoMapper.toCategoryDTO(savedCategory);
     }
 
     @Override
@@ -64,7 +69,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         List<CategoryDTO> categoryDTOs = categories.stream()
-                .map(category -> modelMapper.map(category, CategoryDTO.class)).collect(Collectors.toList());
+                .map(dtoMapper::toCategoryDTO).collect(Collectors.toList());
 
         CategoryResponse categoryResponse = new CategoryResponse();
 
@@ -78,6 +83,37 @@ public class CategoryServiceImpl implements CategoryService {
         return categoryResponse;
     }
 
+    @Override
+    public CategoryResponse getCategories(String cursor, Integer pageSize, String sortBy, String sortOrder,
+                                          boolean withTotal) {
+        KeysetPage<Category> pageCategories = keysetPager.seek(Category.class, "categoryId", null, cursor, pageSize,
+                sortBy, sortOrder);
+
+        List<Category> categories = pageCategories.getContent();
+
+        if (categories.size() == 0) {
+            throw new APIException("No category is created till now");
+        }
+
+        List<CategoryDTO> categoryDTOs = categories.stream()
+                .map(dtoMapper::toCategoryDTO).collect(Collectors.toList());
+
+        CategoryResponse categoryResponse = new CategoryResponse();
+
+        categoryResponse.setContent(categoryDTOs);
+        categoryResponse.setPageSize(pageSize);
+        categoryResponse.setLastPage(pageCategories.getNextCursor() == null);
+        categoryResponse.setNextCursor(pageCategories.getNextCursor());
+
+        if (withTotal) {
+            long totalElements = keysetPager.count(Category.class, null);
+            categoryResponse.setTotalElements(totalElements);
+            categoryResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+
+        return categoryResponse;
+    }
+
     @Override
     public CategoryDTO updateCategory(Category category, Long categoryId) {
         Category savedCategory = categoryRepo.findById(categoryId)
@@ -87,21 +123,24 @@ public class CategoryServiceImpl implements CategoryService {
 
         savedCategory = categoryRepo.save(category);
 
-        return modelMapper.map(savedCategory, CategoryDTO.class);
+        return dtoMapper.toCategoryDTO(savedCategory);
     }
 
     @Override
-    public String deleteCategory(Long categoryId) {
-        Category category = categoryRepo.findById(categoryId)
-                .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
-
-        List<Product> products = category.getProducts();
+    public CategoryRemovalResponse startCategoryRemoval(Long categoryId) {
+        return productRemovalService.startCategoryRemoval(categoryId);
+    }
 
-        products.forEach(product -> {
-            productService.deleteProduct(product.getProductId());
-        });
+    @Override
+    public CategoryRemovalResponse getCategoryRemoval(String jobId) {
+        return productRemovalService.getCategoryRemoval(jobId);
+    }
 
-        categoryRepo.delete(category);
+    // Commits chunk by chunk, so it must not run inside the class-level transaction
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public String deleteCategory(Long categoryId) {
+        productRemovalService.removeCategory(categoryId, null);
 
         return "Category with categoryId: " + categoryId + " deleted successfully !!!";
     }
@@ -1,44 +1,241 @@
 package com.nguyenanhquoc.example05.service.impl;
 
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.payloads.ImageFile;
+import com.nguyenanhquoc.example05.repository.StoredImageRepo;
 import com.nguyenanhquoc.example05.service.FileService;
+import com.nguyenanhquoc.example05.service.ImageVariantService;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.UUID;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 
+/**
+ * Content-addressed image store. An upload is hashed while it streams to disk and kept as
+ * sha256.ext under ab/cd/ shard directories, so identical content is stored once and no
+ * directory grows past a few thousand entries. Older UUID names still resolve from the
+ * flat project.image folder. A new reference is committed while the file's lock is held, so a
+ * release that deletes the last one either runs first or sees the reference and keeps the file.
+ */
 @Service
 @Transactional
 public class FileServiceImpl implements FileService {
+
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]+)?");
+    private static final String INCOMING = ".incoming";
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private StoredImageRepo storedImageRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Reference count changes that commit on their own, whatever the caller's transaction does
+    private TransactionTemplate referenceTransaction;
+
+    // Stored names keep the uploaded extension, so the content type only has to be detected once per extension
+    private final Map<String, MediaType> contentTypes = new ConcurrentHashMap<>();
+
+    // Serializes creating and deleting the same stored file
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public FileServiceImpl() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    void createReferenceTransaction() {
+        referenceTransaction = new TransactionTemplate(transactionManager);
+        referenceTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     @Override
     public String uploadImage(String path, MultipartFile file) throws IOException {
-        String originalFileName = file.getOriginalFilename();
-        String randomId = UUID.randomUUID().toString();
-        @SuppressWarnings("null")
-        String fileName = randomId.concat(originalFileName.substring(originalFileName.lastIndexOf('.')));
-        String filePath = path + File.separator + fileName;
+        Path folder = Paths.get(path);
+        Path incoming = Files.createDirectories(folder.resolve(INCOMING));
+        Path temp = Files.createTempFile(incoming, "upload-", ".tmp");
 
-        File folder = new File(path);
-        if(!folder.exists()) {
+        MessageDigest digest = sha256();
 
-            folder.mkdir();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
         }
 
-        Files.copy(file.getInputStream(), Paths.get(filePath));
+        String fileName = HexFormat.of().formatHex(digest.digest()) + extension(file.getOriginalFilename());
+        Path target = storedPath(folder, fileName);
+        synchronized (lockFor(fileName)) {
+            boolean created = false;
+
+            if (Files.exists(target)) {
+                Files.delete(temp);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                created = true;
+            }
+
+            // Committed before the lock is released, a release waiting for the lock then finds the reference
+            try {
+                referenceTransaction.executeWithoutResult(status -> storedImageRepo.addReference(fileName));
+            } catch (RuntimeException e) {
+                if (created) {
+                    Files.deleteIfExists(target);
+                }
+                throw e;
+            }
+        }
+
+        // The reference outlives a rolled back caller, so it is given back the way a product removal would
+        TransactionUtils.afterRollback(() -> referenceTransaction.executeWithoutResult(status -> releaseImage(path, fileName)));
+
+        // Thumbnails and sized variants are derived in the background so the upload returns right away; a
+        // duplicate of an image whose variants never got made, e.g. the queue was full, schedules them again
+        if (!imageVariantService.hasVariants(target)) {
+            TransactionUtils.afterCommit(() -> imageVariantService.scheduleVariants(target));
+        }
 
         return fileName;
     }
 
     @Override
-    public InputStream getResource(String path, String fileName) throws FileNotFoundException {
-        String filePath = path + File.separator + fileName;
+    public void releaseImage(String path, String fileName) {
+        // Legacy and default images are not reference counted and are never removed
+        if (fileName == null || !CONTENT_ADDRESSED.matcher(fileName).matches()) {
+            return;
+        }
+
+        storedImageRepo.decrementRefCount(fileName);
+
+        if (storedImageRepo.deleteIfUnreferenced(fileName) == 0) {
+            return;
+        }
+
+        Path target = storedPath(Paths.get(path), fileName);
+
+        TransactionUtils.afterCommit(() -> {
+            synchronized (lockFor(fileName)) {
+                // A concurrent upload of the same content may have claimed the file again
+                if (storedImageRepo.existsById(fileName)) {
+                    return;
+                }
+
+                try {
+                    imageVariantService.deleteVariants(target);
+                    Files.deleteIfExists(target);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public ImageFile getImage(String path, String fileName, Integer size) throws IOException {
+        Path folder = Paths.get(path).toAbsolutePath().normalize();
+        Path file = CONTENT_ADDRESSED.matcher(fileName).matches() ? storedPath(folder, fileName)
+                : folder.resolve(fileName).normalize();
+
+        if (!file.startsWith(folder) || !Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            throw new ResourceNotFoundException("Image", "fileName", fileName);
+        }
+
+        Path original = file;
+        file = imageVariantService.nearestVariant(original, size);
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        // Stored names never change their bytes, so size and modification time identify the content
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        // Only a stand-in while variants are still to come; once they are made the original is the answer for this size
+        boolean fallback = size != null && file.equals(original) && !imageVariantService.hasVariants(original);
+
+        // e.g. a legacy image or one whose variants were lost, so the stand-in does not last forever
+        if (fallback) {
+            imageVariantService.scheduleVariants(original);
+        }
+
+        return new ImageFile(file, length, lastModified, eTag, contentType(file), fallback);
+    }
+
+    private Object lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static Path storedPath(Path folder, String fileName) {
+        return folder.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+    }
+
+    private static String extension(String originalFileName) {
+        if (originalFileName == null || originalFileName.lastIndexOf('.') < 0) {
+            return "";
+        }
+
+        String extension = originalFileName.substring(originalFileName.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+
+        return extension.matches("\\.[a-z0-9]+") ? extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MediaType contentType(Path file) {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+
+        return contentTypes.computeIfAbsent(extension, ext -> {
+            try {
+                String probed = Files.probeContentType(file);
 
-        InputStream inputStream = new FileInputStream(filePath);
+                if (probed != null) {
+                    return MediaType.parseMediaType(probed);
+                }
+            } catch (IOException e) {
+                // fall back to the extension mapping below
+            }
 
-        return inputStream;
+            return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        });
     }
 }
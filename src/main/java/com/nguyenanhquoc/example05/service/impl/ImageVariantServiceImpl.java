@@ -0,0 +1,188 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import com.nguyenanhquoc.example05.service.ImageVariantService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Precomputes down-scaled copies of uploaded images, written next to the original as
+ * name_128.ext, name_512.ext and so on. Missing variants are never an error: the image
+ * endpoint falls back to the original until the workers have caught up. A name.ext.variants
+ * marker records that an original has been processed, including when it was too small to scale.
+ */
+@Slf4j
+@Service
+public class ImageVariantServiceImpl implements ImageVariantService {
+
+    @Autowired
+    @Qualifier("imageExecutor")
+    private TaskExecutor imageExecutor;
+
+    private final int[] sizes;
+
+    // Originals queued or being scaled, so asking again while they wait does not queue them twice
+    private final Set<Path> scheduled = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantServiceImpl(@Value("${project.image-sizes:128,512,1024}") int[] sizes) {
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+    }
+
+    @Override
+    public void scheduleVariants(Path original) {
+        if (!scheduled.add(original)) {
+            return;
+        }
+
+        try {
+            imageExecutor.execute(() -> {
+                try {
+                    createVariants(original);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not create variants of {}", original, e);
+                } finally {
+                    scheduled.remove(original);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            scheduled.remove(original);
+            log.warn("Image queue is full, {} will be served at full size", original);
+        }
+    }
+
+    @Override
+    public void createVariants(Path original) throws IOException {
+        String format = extension(original.getFileName().toString());
+        BufferedImage source = ImageIO.getImageWritersBySuffix(format).hasNext() ? ImageIO.read(original.toFile()) : null;
+
+        if (source != null) {
+            scaleAll(original, source, format);
+        }
+
+        // Also written when nothing could be scaled, the original then is the final answer for every size
+        Files.write(markerPath(original), new byte[0]);
+    }
+
+    @Override
+    public boolean hasVariants(Path original) {
+        return Files.exists(markerPath(original));
+    }
+
+    // Smallest precomputed variant that is at least the requested size, otherwise the original
+    @Override
+    public Path nearestVariant(Path original, Integer size) {
+        if (size == null) {
+            return original;
+        }
+
+        for (int candidate : sizes) {
+            if (candidate >= size) {
+                Path variant = variantPath(original, candidate);
+
+                if (Files.isRegularFile(variant)) {
+                    return variant;
+                }
+            }
+        }
+
+        return original;
+    }
+
+    @Override
+    public void deleteVariants(Path original) throws IOException {
+        Files.deleteIfExists(markerPath(original));
+
+        for (int size : sizes) {
+            Files.deleteIfExists(variantPath(original, size));
+        }
+    }
+
+    private void scaleAll(Path original, BufferedImage source, String format) throws IOException {
+        int longestSide = Math.max(source.getWidth(), source.getHeight());
+
+        for (int size : sizes) {
+            // Never upscale, the original already is the best match for larger requests
+            if (size >= longestSide) {
+                break;
+            }
+
+            BufferedImage scaled = scale(source, (double) size / longestSide, hasAlpha(format));
+            Path target = variantPath(original, size);
+            Path temp = Files.createTempFile(original.getParent(), ".variant-", "." + format);
+
+            try {
+                // False when no writer takes this image type in this format, the temp file is then empty
+                if (!ImageIO.write(scaled, format, temp.toFile())) {
+                    log.warn("No {} writer for the {}px variant of {}, the original is served instead", format, size, original);
+                    Files.deleteIfExists(target);
+                    continue;
+                }
+
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, double ratio, boolean alpha) {
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+
+    private static Path variantPath(Path original, int size) {
+        String fileName = original.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String variant = dot < 0 ? fileName + "_" + size : fileName.substring(0, dot) + "_" + size + fileName.substring(dot);
+
+        return original.resolveSibling(variant);
+    }
+
+    private static Path markerPath(Path original) {
+        return original.resolveSibling(original.getFileName() + ".variants");
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean hasAlpha(String format) {
+        return format.equals("png") || format.equals("gif");
+    }
+}
@@ -0,0 +1,343 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import com.nguyenanhquoc.example05.entity.StockReservation;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.repository.StockReservationRepo;
+import com.nguyenanhquoc.example05.service.InventoryService;
+import com.nguyenanhquoc.example05.service.inventory.StockAvailability;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The only writer of product.quantity and stock_reservations. Carts hold stock through time-bounded
+ * reservations claimed against StockAvailability; product.quantity (stock on hand) is only lowered,
+ * with a single conditional UPDATE, when a reservation is committed by an order.
+ */
+@Service
+@Transactional
+public class InventoryServiceImpl implements InventoryService {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private StockReservationRepo stockReservationRepo;
+
+    @Autowired
+    private StockAvailability stockAvailability;
+
+    @Value("${project.reservation-ttl:PT30M}")
+    private Duration reservationTtl;
+
+    // Sets the cart's hold on the product to quantity and restarts its TTL, false when not enough is available
+    @Override
+    public boolean reserve(Long cartId, Long productId, int quantity) {
+        checkQuantity(quantity);
+
+        return hold(cartId, productId, quantity) != null || quantity == 0;
+    }
+
+    /**
+     * All-or-nothing version of reserve for a whole batch of cart lines, with one locking read of the
+     * existing holds. Returns the products that are short; nothing is held in that case.
+     */
+    @Override
+    public List<Long> reserveAll(Long cartId, Map<Long, Integer> quantities) {
+        quantities.values().forEach(InventoryServiceImpl::checkQuantity);
+        stockAvailability.load(quantities.keySet());
+
+        Map<Long, StockReservation> reservations = stockReservationRepo
+                .findByCartIdAndProductIdIn(cartId, quantities.keySet()).stream()
+                .collect(Collectors.toMap(StockReservation::getProductId, Function.identity()));
+
+        Map<Long, Integer> claimed = new HashMap<>();
+        List<Long> unavailable = new ArrayList<>();
+
+        quantities.forEach((productId, quantity) -> {
+            StockReservation reservation = reservations.get(productId);
+            int extra = quantity - (reservation == null ? 0 : reservation.getQuantity());
+
+            if (extra > 0) {
+                if (stockAvailability.tryClaim(productId, extra)) {
+                    claimed.put(productId, extra);
+                } else {
+                    unavailable.add(productId);
+                }
+            }
+        });
+
+        if (!unavailable.isEmpty()) {
+            claimed.forEach(stockAvailability::add);
+            return unavailable;
+        }
+
+        TransactionUtils.afterRollback(() -> claimed.forEach(stockAvailability::add));
+
+        Instant expiresAt = Instant.now().plus(reservationTtl);
+        List<StockReservation> held = new ArrayList<>(quantities.size());
+        List<StockReservation> dropped = new ArrayList<>();
+
+        quantities.forEach((productId, quantity) -> {
+            StockReservation reservation = reservations.get(productId);
+
+            if (reservation != null && reservation.getQuantity() > quantity) {
+                release(productId, reservation.getQuantity() - quantity);
+            }
+
+            if (quantity == 0) {
+                if (reservation != null) {
+                    dropped.add(reservation);
+                }
+                return;
+            }
+
+            if (reservation == null) {
+                reservation = new StockReservation();
+                reservation.setCartId(cartId);
+                reservation.setProductId(productId);
+            }
+
+            reservation.setQuantity(quantity);
+            reservation.setExpiresAt(expiresAt);
+            held.add(reservation);
+        });
+
+        stockReservationRepo.deleteAll(dropped);
+        stockReservationRepo.saveAll(held);
+
+        return unavailable;
+    }
+
+    @Override
+    public void releaseReservation(Long cartId, Long productId) {
+        hold(cartId, productId, 0);
+    }
+
+    // Turns the hold into a sale. An expired hold is taken again first, so this only fails when the stock is gone
+    @Override
+    public boolean commitReservation(Long cartId, Long productId, int quantity) {
+        checkQuantity(quantity);
+
+        if (quantity == 0) {
+            releaseReservation(cartId, productId);
+            return true;
+        }
+
+        StockReservation reservation = hold(cartId, productId, quantity);
+
+        if (reservation == null) {
+            return false;
+        }
+
+        // On hand and reserved both drop by quantity, so the available counter stays as it is
+        stockReservationRepo.delete(reservation);
+        return takeOnHand(productId, quantity);
+    }
+
+    /**
+     * commitReservation for every line of a cart, with one locking read and one delete of the holds.
+     * A hold larger than what is sold keeps the difference. Returns the products that could not be
+     * sold; the caller rolls back in that case.
+     */
+    @Override
+    public List<Long> commitReservations(Long cartId, Map<Long, Integer> quantities) {
+        quantities.values().forEach(InventoryServiceImpl::checkQuantity);
+        stockAvailability.load(quantities.keySet());
+
+        Map<Long, StockReservation> reservations = stockReservationRepo
+                .findByCartIdAndProductIdIn(cartId, quantities.keySet()).stream()
+                .collect(Collectors.toMap(StockReservation::getProductId, Function.identity()));
+
+        List<StockReservation> committed = new ArrayList<>();
+        List<Long> unavailable = new ArrayList<>();
+
+        quantities.forEach((productId, quantity) -> {
+            StockReservation reservation = reservations.get(productId);
+            int reserved = reservation == null ? 0 : reservation.getQuantity();
+
+            if (reservation != null) {
+                // Units the cart took after an asynchronous order was accepted stay held for it
+                if (quantity < reserved) {
+                    reservation.setQuantity(reserved - quantity);
+                } else {
+                    committed.add(reservation);
+                }
+            }
+
+            if (quantity > reserved && !claim(productId, quantity - reserved)) {
+                unavailable.add(productId);
+                return;
+            }
+
+            if (quantity > 0 && !takeOnHand(productId, quantity)) {
+                unavailable.add(productId);
+            }
+        });
+
+        stockReservationRepo.deleteAllInBatch(committed);
+
+        return unavailable;
+    }
+
+    @Override
+    public int expireReservations(int batchSize) {
+        List<StockReservation> expired = stockReservationRepo.findExpired(Instant.now(), PageRequest.of(0, batchSize));
+
+        stockReservationRepo.deleteAllInBatch(expired);
+        expired.forEach(reservation -> release(reservation.getProductId(), reservation.getQuantity()));
+
+        return expired.size();
+    }
+
+    // Drops every hold of the given carts, returns the number of units given back
+    @Override
+    public int releaseCarts(Collection<Long> cartIds) {
+        List<StockReservation> held = stockReservationRepo.findByCartIdIn(cartIds);
+        Map<Long, Integer> released = new HashMap<>();
+
+        held.forEach(reservation -> released.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum));
+
+        stockReservationRepo.deleteAllInBatch(held);
+        released.forEach(this::release);
+
+        return released.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public int getAvailableStock(Long productId) {
+        return stockAvailability.get(productId);
+    }
+
+    // Sale without a cart: false when fewer than quantity items are available, nothing is changed in that case
+    @Override
+    public boolean takeStock(Long productId, int quantity) {
+        checkQuantity(quantity);
+
+        if (quantity == 0) {
+            return true;
+        }
+
+        if (!claim(productId, quantity)) {
+            return false;
+        }
+
+        return takeOnHand(productId, quantity);
+    }
+
+    @Override
+    public void returnStock(Long productId, int quantity) {
+        checkQuantity(quantity);
+
+        if (quantity > 0 && productRepo.returnStock(productId, quantity) == 1) {
+            release(productId, quantity);
+        }
+    }
+
+    @Override
+    public void setStock(Long productId, int quantity) {
+        checkQuantity(quantity);
+
+        Integer onHand = productRepo.findQuantityForUpdate(productId);
+
+        if (onHand == null) {
+            throw new ResourceNotFoundException("Product", "productId", productId);
+        }
+
+        productRepo.setStock(productId, quantity);
+        TransactionUtils.afterCommit(() -> stockAvailability.add(productId, quantity - onHand));
+    }
+
+    // Dropped now and again when the transaction ends, which is usually a rollback: a claim given back
+    // on rollback must not land on a counter that is already known to be wrong
+    @Override
+    public void evictProduct(Long productId) {
+        stockAvailability.evict(productId);
+        TransactionUtils.afterCompletion(() -> stockAvailability.evict(productId));
+    }
+
+    // Drops every hold on products that are being deleted, there is no stock left to give back
+    @Override
+    public void removeProducts(Collection<Long> productIds) {
+        stockReservationRepo.deleteByProductIds(productIds);
+        TransactionUtils.afterCommit(() -> productIds.forEach(stockAvailability::evict));
+    }
+
+    // Null when the extra stock is not available, the existing hold is then left untouched
+    private StockReservation hold(Long cartId, Long productId, int quantity) {
+        StockReservation reservation = stockReservationRepo.findByCartIdAndProductId(cartId, productId).orElse(null);
+        int held = reservation == null ? 0 : reservation.getQuantity();
+
+        if (quantity > held && !claim(productId, quantity - held)) {
+            return null;
+        }
+
+        if (quantity < held) {
+            release(productId, held - quantity);
+        }
+
+        if (quantity == 0) {
+            if (reservation != null) {
+                stockReservationRepo.delete(reservation);
+            }
+            return null;
+        }
+
+        if (reservation == null) {
+            reservation = new StockReservation();
+            reservation.setCartId(cartId);
+            reservation.setProductId(productId);
+        }
+
+        reservation.setQuantity(quantity);
+        reservation.setExpiresAt(Instant.now().plus(reservationTtl));
+
+        return stockReservationRepo.save(reservation);
+    }
+
+    // The counter said yes but the row disagrees (another instance sold it): reload the counter from the database
+    private boolean takeOnHand(Long productId, int quantity) {
+        if (productRepo.takeStock(productId, quantity) == 1) {
+            return true;
+        }
+
+        evictProduct(productId);
+        return false;
+    }
+
+    // Claimed right away so concurrent carts see it, given back if the transaction rolls back
+    private boolean claim(Long productId, int quantity) {
+        if (!stockAvailability.tryClaim(productId, quantity)) {
+            return false;
+        }
+
+        TransactionUtils.afterRollback(() -> stockAvailability.add(productId, quantity));
+        return true;
+    }
+
+    // Released stock only becomes available to others once the release is committed
+    private void release(Long productId, int quantity) {
+        TransactionUtils.afterCommit(() -> stockAvailability.add(productId, quantity));
+    }
+
+    private static void checkQuantity(int quantity) {
+        if (quantity < 0) {
+            throw new APIException("Quantity must not be negative");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs each cart change of a user one at a time, around the whole transaction of CartServiceImpl,
+ * so two requests cannot both miss an existing cart or cart item. The write-behind store already
+ * serializes changes per cart and does not need this.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "project.cart-store", havingValue = "database", matchIfMissing = true)
+public class LockingCartServiceImpl implements CartService {
+
+    @Autowired
+    @Qualifier("cartServiceImpl")
+    private CartService cartService;
+
+    @Autowired
+    private CartLocks cartLocks;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Override
+    public CartDTO addProductToCart(String email, Long productId, Integer quantity) {
+        return cartLocks.withLock(email, () -> cartService.addProductToCart(email, productId, quantity));
+    }
+
+    @Override
+    public CartDTO addProductsToCart(String email, List<CartItemChange> changes) {
+        return cartLocks.withLock(email, () -> cartService.addProductsToCart(email, changes));
+    }
+
+    @Override
+    public List<CartDTO> getAllCarts() {
+        return cartService.getAllCarts();
+    }
+
+    @Override
+    public CartDTO getCart(String emailId, Long cartId) {
+        return cartService.getCart(emailId, cartId);
+    }
+
+    @Override
+    public Long getCartVersion(String emailId, Long cartId) {
+        return cartService.getCartVersion(emailId, cartId);
+    }
+
+    @Override
+    public CartDTO updateProductQuantityInCart(Long cartId, Long productId, Integer quantity) {
+        return cartLocks.withLock(ownerOf(cartId), () -> cartService.updateProductQuantityInCart(cartId, productId, quantity));
+    }
+
+    @Override
+    public void updateProductInCarts(Long cartId, Long productId) {
+        cartLocks.withLock(ownerOf(cartId), () -> cartService.updateProductInCarts(cartId, productId));
+    }
+
+    @Override
+    public String deleteProductFromCart(Long cartId, Long productId) {
+        return cartLocks.withLock(ownerOf(cartId), () -> cartService.deleteProductFromCart(cartId, productId));
+    }
+
+    // Called inside the order's transaction, LockingOrderServiceImpl already holds the lock around all of it
+    @Override
+    public void removeOrderedItems(Long cartId, List<CartItem> orderedItems) {
+        cartService.removeOrderedItems(cartId, orderedItems);
+    }
+
+    // Called inside the asynchronous order's transaction, OrderOutboxProcessor holds the lock around it
+    @Override
+    public void removeOrderedQuantities(Long cartId, Map<Long, Integer> orderedQuantities) {
+        cartService.removeOrderedQuantities(cartId, orderedQuantities);
+    }
+
+    @Override
+    public void persistCart(Long cartId) {
+        cartService.persistCart(cartId);
+    }
+
+    // Changes by email and by cart id take the same lock; a cart without a user is locked by its id
+    private Object ownerOf(Long cartId) {
+        List<Object[]> owner = cartRepo.findCartOwner(cartId);
+
+        if (owner.isEmpty() || owner.get(0)[1] == null) {
+            return cartId;
+        }
+
+        return owner.get(0)[1];
+    }
+}
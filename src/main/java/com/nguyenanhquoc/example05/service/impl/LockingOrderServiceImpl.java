@@ -0,0 +1,79 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.payloads.response.OrderResponse;
+import com.nguyenanhquoc.example05.payloads.response.OrderSummaryResponse;
+import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * Places an order under the owner's cart lock, around the whole transaction of OrderServiceImpl, so
+ * no cart change can land between reading the cart and removing the ordered lines. Cart changes
+ * take the same lock in LockingCartServiceImpl, and the async order workers take it in
+ * OrderOutboxProcessor.
+ */
+@Service
+@Primary
+public class LockingOrderServiceImpl implements OrderService {
+
+    @Autowired
+    @Qualifier("orderServiceImpl")
+    private OrderService orderService;
+
+    @Autowired
+    private CartLocks cartLocks;
+
+    @Override
+    public OrderDTO placeOrder(String emailId, Long cartId, String paymentMethod) {
+        return cartLocks.withLock(emailId, () -> orderService.placeOrder(emailId, cartId, paymentMethod));
+    }
+
+    @Override
+    public void processOrder(Long orderId, Long cartId, String paymentMethod) {
+        orderService.processOrder(orderId, cartId, paymentMethod);
+    }
+
+    @Override
+    public void failOrder(Long orderId, String reason) {
+        orderService.failOrder(orderId, reason);
+    }
+
+    @Override
+    public OrderDTO getOrder(String emailId, Long orderId) {
+        return orderService.getOrder(emailId, orderId);
+    }
+
+    @Override
+    public Long getOrderVersion(String emailId, Long orderId) {
+        return orderService.getOrderVersion(emailId, orderId);
+    }
+
+    @Override
+    public OrderSummaryResponse getOrdersByUser(String emailId, String cursor, Integer pageSize) {
+        return orderService.getOrdersByUser(emailId, cursor, pageSize);
+    }
+
+    @Override
+    public String getOrdersVersion(String emailId) {
+        return orderService.getOrdersVersion(emailId);
+    }
+
+    @Override
+    public OrderResponse getAllOrders(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
+        return orderService.getAllOrders(pageNumber, pageSize, sortBy, sortOrder);
+    }
+
+    @Override
+    public OrderResponse getAllOrders(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal) {
+        return orderService.getAllOrders(cursor, pageSize, sortBy, sortOrder, withTotal);
+    }
+
+    @Override
+    public OrderDTO updateOrder(String emailId, Long orderId, String orderStatus) {
+        return orderService.updateOrder(emailId, orderId, orderStatus);
+    }
+}
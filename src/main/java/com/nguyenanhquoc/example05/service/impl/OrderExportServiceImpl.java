@@ -0,0 +1,146 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.SelectionQuery;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.payloads.dto.OrderExportRow;
+import com.nguyenanhquoc.example05.service.OrderExportService;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes orders with their items as NDJSON or CSV while they are read. The rows come from one
+ * forward-only cursor (on MySQL a streaming result set, Connector/J's Integer.MIN_VALUE fetch size,
+ * set on this query only), are selected as plain columns so nothing accumulates in the persistence
+ * context, and the output is flushed every ORDER_EXPORT_FETCH_SIZE rows, so heap use does not grow
+ * with the date range. The failed status matches every "Order Failed: <reason>".
+ */
+@Slf4j
+@Transactional
+@Service
+public class OrderExportServiceImpl implements OrderExportService {
+
+    private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private static final ObjectWriter CSV_WRITER = CSV_MAPPER.writer(CSV_MAPPER.schemaFor(OrderExportRow.class).withHeader());
+
+    private static final ObjectWriter NDJSON_WRITER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build()
+            .writerFor(OrderExportRow.class)
+            .withRootValueSeparator("\n");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public long exportOrders(LocalDate from, LocalDate to, String orderStatus, boolean csv, OutputStream output)
+            throws IOException {
+        long started = System.currentTimeMillis();
+
+        StringBuilder hql = new StringBuilder("SELECT o.orderId, o.email, o.orderDate, o.orderStatus, p.paymentMethod, o.totalAmount, "
+                + "i.orderItemId, pr.productId, pr.productName, i.quantity, i.discount, i.orderedProductPrice "
+                + "FROM Order o LEFT JOIN o.payment p LEFT JOIN o.orderItems i LEFT JOIN i.product pr WHERE 1 = 1");
+
+        if (from != null) {
+            hql.append(" AND o.orderDate >= :from");
+        }
+        if (to != null) {
+            hql.append(" AND o.orderDate <= :to");
+        }
+        boolean failed = orderStatus != null && isFailedStatus(orderStatus);
+
+        if (orderStatus != null) {
+            hql.append(failed ? " AND o.orderStatus LIKE :status" : " AND o.orderStatus = :status");
+        }
+        hql.append(" ORDER BY o.orderId, i.orderItemId");
+
+        SelectionQuery<Object[]> query = entityManager.unwrap(Session.class)
+                .createSelectionQuery(hql.toString(), Object[].class)
+                .setReadOnly(true)
+                .setFetchSize(fetchSize());
+
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (orderStatus != null) {
+            query.setParameter("status", failed ? AppConstants.ORDER_STATUS_FAILED + "%" : orderStatus);
+        }
+
+        long rows = 0;
+        ObjectWriter writer = (csv ? CSV_WRITER : NDJSON_WRITER)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (ScrollableResults<Object[]> results = query.scroll(ScrollMode.FORWARD_ONLY);
+                SequenceWriter out = writer.writeValues(output)) {
+            while (results.next()) {
+                out.write(toRow(results.get()));
+
+                if (++rows % AppConstants.ORDER_EXPORT_FETCH_SIZE == 0) {
+                    out.flush();
+                }
+            }
+        }
+
+        // NDJSON lines are separated, not terminated, so end the last one too
+        if (!csv && rows > 0) {
+            output.write('\n');
+        }
+        output.flush();
+
+        log.info("Order export: {} rows in {} ms", rows, System.currentTimeMillis() - started);
+
+        return rows;
+    }
+
+    // "Order Failed" or "Order Failed:", failed orders carry their reason after the prefix
+    private static boolean isFailedStatus(String orderStatus) {
+        String status = orderStatus.strip();
+        String failed = AppConstants.ORDER_STATUS_FAILED.strip();
+
+        return status.equals(failed) || (status + ":").equals(failed);
+    }
+
+    // Connector/J only streams with Integer.MIN_VALUE, other drivers take it as an invalid fetch size
+    private int fetchSize() {
+        SessionFactoryImplementor sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+
+        return sessionFactory.getJdbcServices().getDialect() instanceof MySQLDialect
+                ? Integer.MIN_VALUE
+                : AppConstants.ORDER_EXPORT_FETCH_SIZE;
+    }
+
+    private static OrderExportRow toRow(Object[] row) {
+        return new OrderExportRow((Long) row[0], (String) row[1], (LocalDate) row[2], (String) row[3], (String) row[4],
+                (Double) row[5], (Long) row[6], (Long) row[7], (String) row[8], (Integer) row[9], (Double) row[10],
+                (Double) row[11]);
+    }
+}
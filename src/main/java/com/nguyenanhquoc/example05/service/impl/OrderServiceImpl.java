@@ -1,20 +1,28 @@
 package com.nguyenanhquoc.example05.service.impl;
 
 
+import com.nguyenanhquoc.example05.config.AppConstants;
 import com.nguyenanhquoc.example05.entity.*;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
 import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
-import com.nguyenanhquoc.example05.payloads.dto.OrderItemDTO;
+import com.nguyenanhquoc.example05.payloads.dto.OrderSummaryDTO;
 import com.nguyenanhquoc.example05.payloads.response.OrderResponse;
+import com.nguyenanhquoc.example05.payloads.response.OrderSummaryResponse;
 import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.KeysetPager;
+import com.nguyenanhquoc.example05.repository.KeysetPager.KeysetPage;
 import com.nguyenanhquoc.example05.repository.OrderItemRepo;
 import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.repository.OrderSummaryRepo;
 import com.nguyenanhquoc.example05.repository.PaymentRepo;
 import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.InventoryService;
 import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.order.OrderOutboxProcessor;
 import jakarta.transaction.Transactional;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -24,7 +32,10 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Transactional
@@ -44,17 +55,31 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private OrderItemRepo orderItemRepo;
 
+    @Autowired
+    private OrderSummaryRepo orderSummaryRepo;
+
     // Từ image_3eae5b.png
     @Autowired
     private CartService cartService;
 
     // Từ image_3eae5b.png
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private KeysetPager keysetPager;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    // Only present with project.order-processing=async
+    @Autowired
+    private ObjectProvider<OrderOutboxProcessor> orderOutbox;
 
     @Override
     public OrderDTO placeOrder(String emailId, Long cartId, String paymentMethod) {
-        // 1. Lấy Cart bằng email và cartId
+        // 1. Lấy Cart bằng email và cartId (ghi giỏ hàng đang giữ trong bộ nhớ xuống database trước)
+        cartService.persistCart(cartId);
         Cart cart = cartRepo.findCartByEmailAndCartId(emailId, cartId);
 
         if (cart == null) {
@@ -66,21 +91,79 @@ public class OrderServiceImpl implements OrderService {
         order.setEmail(emailId);
         order.setOrderDate(LocalDate.now());
         order.setTotalAmount(cart.getTotalPrice());
-        order.setOrderStatus("Order Accepted!");
 
-        // 3. Tạo Payment Entity và thiết lập mối quan hệ OneToOne
-        Payment payment = new Payment();
-        payment.setOrder(order);
-        payment.setPaymentMethod(paymentMethod);
+        OrderOutboxProcessor outbox = orderOutbox.getIfAvailable();
 
-        // Lưu Payment (PaymentRepo.save)
-        payment = paymentRepo.save(payment);
+        // Chế độ async: chỉ lưu Order PENDING cùng bản ghi outbox, worker sẽ xử lý phần còn lại
+        if (outbox != null) {
+            if (cart.getCartItems().isEmpty()) {
+                throw new APIException("Cart is empty");
+            }
 
-        // Liên kết Payment với Order
-        order.setPayment(payment);
+            order.setOrderStatus(AppConstants.ORDER_STATUS_PENDING);
+            Order savedOrder = orderRepo.save(order);
 
-        // Lưu Order (OrderRepo.save)
-        Order savedOrder = orderRepo.save(order);
+            // Các OrderItem được lưu ngay lúc nhận đơn, worker xử lý đúng những gì đã đặt dù giỏ hàng thay đổi sau đó
+            List<OrderItem> orderItems = orderItemRepo.saveAll(toOrderItems(savedOrder, cart.getCartItems()));
+
+            saveSummary(savedOrder, orderItems.size(), paymentMethod);
+            outbox.enqueue(savedOrder, cartId, paymentMethod);
+
+            return toOrderDTO(savedOrder, orderItems);
+        }
+
+        order.setOrderStatus(AppConstants.ORDER_STATUS_ACCEPTED);
+
+        return fulfil(order, cart, paymentMethod);
+    }
+
+    @Override
+    public void processOrder(Long orderId, Long cartId, String paymentMethod) {
+        Order order = orderRepo.findById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order", "orderId", orderId));
+
+        // Already fulfilled by a worker whose claim ran out before it committed
+        if (!AppConstants.ORDER_STATUS_PENDING.equals(order.getOrderStatus())) {
+            return;
+        }
+
+        // Fulfilled from the lines saved when the order was accepted, not from what the cart holds now
+        List<OrderItem> orderItems = order.getOrderItems();
+
+        if (orderItems.isEmpty()) {
+            throw new APIException("Order has no items");
+        }
+
+        cartService.persistCart(cartId);
+        order.setOrderStatus(AppConstants.ORDER_STATUS_ACCEPTED);
+
+        Order savedOrder = savePayment(order, paymentMethod);
+        takeStock(cartId, orderItems);
+
+        // Each cart line only loses what was ordered from it, units added since acceptance stay in the cart
+        Map<Long, Integer> orderedQuantities = new HashMap<>();
+        orderItems.forEach(item -> orderedQuantities.merge(item.getProduct().getProductId(), item.getQuantity(), Integer::sum));
+        cartService.removeOrderedQuantities(cartId, orderedQuantities);
+
+        saveSummary(savedOrder, orderItems.size(), paymentMethod);
+    }
+
+    @Override
+    public void failOrder(Long orderId, String reason) {
+        orderRepo.findById(orderId)
+                .filter(order -> AppConstants.ORDER_STATUS_PENDING.equals(order.getOrderStatus()))
+                .ifPresent(order -> {
+                    String status = AppConstants.ORDER_STATUS_FAILED + reason;
+                    order.setOrderStatus(status.length() > 255 ? status.substring(0, 255) : status);
+                    orderSummaryRepo.updateStatus(orderId, order.getOrderStatus());
+                });
+    }
+
+    private OrderDTO fulfil(Order order, Cart cart, String paymentMethod) {
+        Long cartId = cart.getCartId();
+
+        // 3. Tạo Payment, liên kết với Order và lưu Order
+        Order savedOrder = savePayment(order, paymentMethod);
 
         // 4. Lấy CartItems và kiểm tra giỏ hàng trống
         List<CartItem> cartItems = cart.getCartItems();
@@ -89,7 +172,38 @@ public class OrderServiceImpl implements OrderService {
             throw new APIException("Cart is empty");
         }
 
-        // 5. Tạo OrderItems từ CartItems
+        // 5. Tạo OrderItems từ CartItems và lưu tất cả
+        List<OrderItem> orderItems = orderItemRepo.saveAll(toOrderItems(savedOrder, cartItems));
+
+        // 6. Chuyển hàng đang giữ thành hàng đã bán cho cả giỏ
+        takeStock(cartId, orderItems);
+
+        // Xóa đúng các CartItem vừa đặt hàng bằng một câu DELETE và tính lại tổng tiền
+        cartService.removeOrderedItems(cartId, cartItems);
+
+        // Cập nhật dòng tóm tắt dùng cho lịch sử đơn hàng
+        saveSummary(savedOrder, orderItems.size(), paymentMethod);
+
+        // 7. Chuyển đổi sang OrderDTO và trả về
+        return toOrderDTO(savedOrder, orderItems);
+    }
+
+    private Order savePayment(Order order, String paymentMethod) {
+        // Tạo Payment Entity và thiết lập mối quan hệ OneToOne
+        Payment payment = new Payment();
+        payment.setOrder(order);
+        payment.setPaymentMethod(paymentMethod);
+
+        // Lưu Payment (PaymentRepo.save)
+        payment = paymentRepo.save(payment);
+
+        // Liên kết Payment với Order và lưu Order (OrderRepo.save)
+        order.setPayment(payment);
+
+        return orderRepo.save(order);
+    }
+
+    private static List<OrderItem> toOrderItems(Order order, List<CartItem> cartItems) {
         List<OrderItem> orderItems = new ArrayList<>();
 
         for (CartItem cartItem : cartItems) {
@@ -102,33 +216,37 @@ public class OrderServiceImpl implements OrderService {
             orderItem.setOrderedProductPrice(cartItem.getProductPrice());
 
             // Liên kết OrderItem với Order đã lưu
-            orderItem.setOrder(savedOrder);
+            orderItem.setOrder(order);
 
             orderItems.add(orderItem);
         }
 
-        // Lưu tất cả OrderItems
-        orderItems = orderItemRepo.saveAll(orderItems);
-
-        // 6. Xử lý CartItems: xóa khỏi giỏ và cập nhật tồn kho (đã được trừ)
-        cart.getCartItems().forEach(item -> {
-            int quantity = item.getQuantity();
-            Product product = item.getProduct();
+        return orderItems;
+    }
 
-            // Xóa item khỏi cart (CartService.deleteProductFromCart)
-            cartService.deleteProductFromCart(cartId, item.getProduct().getProductId());
+    // Một câu đọc reservation, một UPDATE có điều kiện mỗi sản phẩm
+    private void takeStock(Long cartId, List<OrderItem> orderItems) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        Map<Long, String> productNames = new HashMap<>();
 
-            // Cập nhật tồn kho (Logic này hơi lạ vì tồn kho đã được trừ ở addProductToCart,
-            // nhưng đoạn code hiển thị rõ ràng là trừ quantity lần nữa - có thể là lỗi logic
-            // hoặc logic phức tạp hơn. Ta chỉ trích xuất như code hiển thị.)
-            product.setQuantity(product.getQuantity() - quantity);
+        orderItems.forEach(item -> {
+            quantities.merge(item.getProduct().getProductId(), item.getQuantity(), Integer::sum);
+            productNames.put(item.getProduct().getProductId(), item.getProduct().getProductName());
         });
 
-        // 7. Chuyển đổi sang OrderDTO và trả về
-        OrderDTO orderDTO = modelMapper.map(savedOrder, OrderDTO.class);
+        List<Long> unavailable = inventoryService.commitReservations(cartId, quantities);
+
+        if (!unavailable.isEmpty()) {
+            throw new APIException("Not enough stock for " + unavailable.stream()
+                    .map(productNames::get).collect(Collectors.joining(", ")));
+        }
+    }
+
+    private OrderDTO toOrderDTO(Order order, List<OrderItem> orderItems) {
+        OrderDTO orderDTO = dtoMapper.toOrderDTO(order);
 
         // Thêm danh sách OrderItemDTO vào OrderDTO
-        orderItems.forEach(item -> orderDTO.getOrderItems().add(modelMapper.map(item, OrderItemDTO.class)));
+        orderItems.forEach(item -> orderDTO.getOrderItems().add(dtoMapper.toOrderItemDTO(item)));
 
         return orderDTO;
     }
@@ -145,17 +263,31 @@ public class OrderServiceImpl implements OrderService {
         }
 
         // 3. Chuyển đổi Order Entity sang OrderDTO và trả về
-        return modelMapper.map(order, OrderDTO.class);
+        return dtoMapper.toOrderDTO(order);
     }
 
+    // Null when there is no such order, the read then answers 404
     @Override
-    public List<OrderDTO> getOrdersByUser(String emailId) {
-        // 1. Tìm tất cả các Order Entity theo email
-        List<Order> orders = orderRepo.findAllByEmail(emailId);
+    public Long getOrderVersion(String emailId, Long orderId) {
+        return orderRepo.findVersion(emailId, orderId);
+    }
 
-        // 2. Chuyển đổi danh sách Order Entities sang List<OrderDTO>
-        List<OrderDTO> orderDTOs = orders.stream()
-                .map(order -> modelMapper.map(order, OrderDTO.class))
+    @Override
+    public String getOrdersVersion(String emailId) {
+        Object[] versions = orderRepo.findVersionsByEmail(emailId).get(0);
+
+        return versions[0] + "-" + versions[1] + "-" + versions[2];
+    }
+
+    @Override
+    public OrderSummaryResponse getOrdersByUser(String emailId, String cursor, Integer pageSize) {
+        // 1. Đọc một trang từ order_summaries theo (email, orderId giảm dần), không tải Order, OrderItem hay Payment
+        KeysetPage<OrderSummary> pageOrders = keysetPager.seek(OrderSummary.class, "orderId",
+                (root, query, cb) -> cb.equal(root.get("email"), emailId), cursor, pageSize, "orderId", "desc");
+
+        // 2. Chuyển đổi sang OrderSummaryDTO
+        List<OrderSummaryDTO> orderDTOs = pageOrders.getContent().stream()
+                .map(dtoMapper::toOrderSummaryDTO)
                 .collect(Collectors.toList());
 
         // 3. Kiểm tra nếu danh sách trống
@@ -164,8 +296,8 @@ public class OrderServiceImpl implements OrderService {
             throw new APIException("No orders placed yet by user with email: " + emailId);
         }
 
-        // 4. Trả về List<OrderDTO>
-        return orderDTOs;
+        // 4. Trả về trang kèm con trỏ của trang sau
+        return new OrderSummaryResponse(orderDTOs, pageSize, pageOrders.getNextCursor() == null, pageOrders.getNextCursor());
     }
 
     @Override
@@ -186,7 +318,7 @@ public class OrderServiceImpl implements OrderService {
 
         // 5. Chuyển đổi List<Order> sang List<OrderDTO>
         List<OrderDTO> orderDTOs = orders.stream()
-                .map(order -> modelMapper.map(order, OrderDTO.class))
+                .map(dtoMapper::toOrderDTO)
                 .collect(Collectors.toList());
 
         // 6. Kiểm tra nếu danh sách trống
@@ -207,6 +339,34 @@ public class OrderServiceImpl implements OrderService {
         return orderResponse;
     }
 
+    @Override
+    public OrderResponse getAllOrders(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal) {
+        KeysetPage<Order> pageOrders = keysetPager.seek(Order.class, "orderId", null, cursor, pageSize, sortBy, sortOrder);
+
+        List<OrderDTO> orderDTOs = pageOrders.getContent().stream()
+                .map(dtoMapper::toOrderDTO)
+                .collect(Collectors.toList());
+
+        if (orderDTOs.size() == 0) {
+            throw new APIException("No orders placed yet by the users");
+        }
+
+        OrderResponse orderResponse = new OrderResponse();
+        orderResponse.setContent(orderDTOs);
+        orderResponse.setPageSize(pageSize);
+        orderResponse.setLastPage(pageOrders.getNextCursor() == null);
+        orderResponse.setNextCursor(pageOrders.getNextCursor());
+
+        // COUNT(*) chỉ chạy khi client yêu cầu tổng số
+        if (withTotal) {
+            long totalElements = keysetPager.count(Order.class, null);
+            orderResponse.setTotalElements(totalElements);
+            orderResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+
+        return orderResponse;
+    }
+
     @Override
     public OrderDTO updateOrder(String emailId, Long orderId, String orderStatus) {
         // 1. Tìm Order Entity theo email và orderId
@@ -220,9 +380,15 @@ public class OrderServiceImpl implements OrderService {
 
         // 3. Cập nhật trạng thái đơn hàng
         order.setOrderStatus(orderStatus);
+        orderSummaryRepo.updateStatus(orderId, orderStatus);
         // Giả định orderRepo.save(order) được gọi ở đây hoặc trong transaction.
 
         // 4. Chuyển đổi Order Entity đã cập nhật sang OrderDTO và trả về
-        return modelMapper.map(order, OrderDTO.class);
+        return dtoMapper.toOrderDTO(order);
+    }
+
+    private void saveSummary(Order order, int itemCount, String paymentMethod) {
+        orderSummaryRepo.save(new OrderSummary(order.getOrderId(), order.getEmail(), order.getOrderDate(),
+                order.getTotalAmount(), order.getOrderStatus(), itemCount, paymentMethod));
     }
 }
@@ -0,0 +1,286 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
+import com.nguyenanhquoc.example05.payloads.dto.ProductImportRow;
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse;
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse.RowError;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.ProductImportService;
+import com.nguyenanhquoc.example05.service.catalog.CategoryProductCounts;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams a CSV or NDJSON catalog and inserts it chunk by chunk. Each chunk is checked for
+ * duplicates with one query and committed in its own transaction, so the file is never held
+ * in memory and a bad row only fails itself: a chunk that does not commit is retried row by
+ * row. Not @Transactional on purpose.
+ */
+@Slf4j
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+
+    private static final ObjectReader CSV_READER = new CsvMapper().readerFor(ProductImportRow.class)
+            .with(CsvSchema.emptySchema().withHeader());
+    private static final ObjectReader NDJSON_READER = new ObjectMapper().readerFor(ProductImportRow.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CategoryRepo categoryRepo;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    private static class Candidate {
+        private final long row;
+        private final Product product;
+        private final Long categoryId;
+
+        Candidate(long row, Product product, Long categoryId) {
+            this.row = row;
+            this.product = product;
+            this.categoryId = categoryId;
+        }
+
+        String key() {
+            return key(categoryId, product.getDedupHash());
+        }
+
+        static String key(Object categoryId, String dedupHash) {
+            return categoryId + ":" + dedupHash;
+        }
+    }
+
+    @Override
+    public ProductImportResponse importProducts(InputStream input, boolean csv) {
+        long started = System.currentTimeMillis();
+        ProductImportResponse report = new ProductImportResponse();
+
+        // Categories are resolved once per import, not once per row
+        Map<Long, Boolean> categories = new HashMap<>();
+        List<Candidate> chunk = new ArrayList<>(AppConstants.IMPORT_CHUNK_SIZE);
+        long row = 0;
+
+        try (MappingIterator<ProductImportRow> rows = (csv ? CSV_READER : NDJSON_READER).readValues(input)) {
+            while (rows.hasNextValue()) {
+                ProductImportRow importRow = rows.nextValue();
+                row++;
+
+                try {
+                    chunk.add(toCandidate(row, importRow, categories));
+                } catch (APIException e) {
+                    reject(report, row, e.getMessage());
+                }
+
+                if (chunk.size() == AppConstants.IMPORT_CHUNK_SIZE) {
+                    insertChunk(chunk, report);
+                    chunk.clear();
+                    log.info("Product import: {} rows read, {} imported", row, report.getImported());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Malformed input cannot be resynchronized, everything committed so far stays
+            reject(report, row + 1, "Import stopped, unreadable input: " + e.getMessage());
+        }
+
+        insertChunk(chunk, report);
+
+        report.setTotalRows(row);
+        report.setElapsedMillis(System.currentTimeMillis() - started);
+
+        log.info("Product import finished: {} rows, {} imported, {} duplicates, {} failed in {} ms", row,
+                report.getImported(), report.getDuplicates(), report.getFailed(), report.getElapsedMillis());
+
+        return report;
+    }
+
+    private Candidate toCandidate(long row, ProductImportRow importRow, Map<Long, Boolean> categories) {
+        Long categoryId = parseLong(importRow.getCategoryId(), "categoryId");
+
+        if (!categories.computeIfAbsent(categoryId, categoryRepo::existsById)) {
+            throw new APIException("Category not found with categoryId: " + categoryId);
+        }
+
+        String productName = trim(importRow.getProductName());
+        String description = trim(importRow.getDescription());
+
+        if (productName == null || productName.length() < 3) {
+            throw new APIException("Product name must contain atleast 3 characters");
+        }
+
+        if (description == null || description.length() < 6) {
+            throw new APIException("Product description must contain atleast 6 characters");
+        }
+
+        long quantity = parseLong(importRow.getQuantity(), "quantity");
+
+        // The column is an int, a larger value would wrap around instead of failing
+        if (quantity > Integer.MAX_VALUE) {
+            throw new APIException("Invalid quantity: " + importRow.getQuantity());
+        }
+
+        double price = parseDouble(importRow.getPrice(), "price", 0);
+        double discount = parseDouble(importRow.getDiscount(), "discount", 0);
+
+        if (quantity < 0 || price < 0 || discount < 0 || discount > 100) {
+            throw new APIException("quantity and price must not be negative, discount must be between 0 and 100");
+        }
+
+        String image = trim(importRow.getImage());
+
+        Product product = new Product();
+        product.setProductName(productName);
+        product.setDescription(description);
+        product.setImage(image == null ? "default.png" : image);
+        product.setQuantity((int) quantity);
+        product.setPrice(price);
+        product.setDiscount(discount);
+        product.setSpecialPrice(price - ((discount * 0.01) * price));
+        product.setDedupHash(Product.dedupHash(productName, description));
+
+        return new Candidate(row, product, categoryId);
+    }
+
+    private void insertChunk(List<Candidate> chunk, ProductImportResponse report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            insert(chunk, report);
+        } catch (RuntimeException e) {
+            if (chunk.size() == 1) {
+                reject(report, chunk.get(0).row, "Could not be imported: " + e.getMessage());
+                return;
+            }
+
+            // The whole chunk was rolled back, so it is retried one row at a time and only the rows that fail are rejected
+            log.warn("Product import chunk of {} rows rolled back, retrying row by row", chunk.size(), e);
+            chunk.forEach(candidate -> insertChunk(List.of(candidate), report));
+        }
+    }
+
+    private void insert(List<Candidate> chunk, ProductImportResponse report) {
+        Set<Long> categoryIds = new HashSet<>();
+        Set<String> dedupHashes = new HashSet<>();
+
+        chunk.forEach(candidate -> {
+            // Ids handed out in a rolled back attempt are not reused
+            candidate.product.setProductId(null);
+            categoryIds.add(candidate.categoryId);
+            dedupHashes.add(candidate.product.getDedupHash());
+        });
+
+        List<Candidate> accepted = new ArrayList<>(chunk.size());
+        List<Candidate> duplicates = new ArrayList<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<String> existing = new HashSet<>();
+
+            for (Object[] pair : productRepo.findDedupHashes(categoryIds, dedupHashes)) {
+                existing.add(Candidate.key(pair[0], (String) pair[1]));
+            }
+
+            for (Candidate candidate : chunk) {
+                // Also catches the same product appearing twice in this chunk
+                if (!existing.add(candidate.key())) {
+                    duplicates.add(candidate);
+                    continue;
+                }
+
+                candidate.product.setCategory(entityManager.getReference(Category.class, candidate.categoryId));
+                entityManager.persist(candidate.product);
+                accepted.add(candidate);
+            }
+
+            accepted.stream()
+                    .collect(Collectors.groupingBy(candidate -> candidate.categoryId, Collectors.counting()))
+                    .forEach(categoryProductCounts::add);
+            TransactionUtils.afterCommit(() -> accepted.forEach(candidate ->
+                    productSearchIndex.index(dtoMapper.toProductDTO(candidate.product))));
+        });
+
+        report.setImported(report.getImported() + accepted.size());
+        report.setDuplicates(report.getDuplicates() + duplicates.size());
+        duplicates.forEach(candidate -> addError(report, candidate.row, "Product already exists !!!"));
+    }
+
+    private static void reject(ProductImportResponse report, long row, String message) {
+        report.setFailed(report.getFailed() + 1);
+        addError(report, row, message);
+    }
+
+    private static void addError(ProductImportResponse report, long row, String message) {
+        if (report.getErrors().size() < AppConstants.IMPORT_MAX_ERRORS) {
+            report.getErrors().add(new RowError(row, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static String trim(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static Long parseLong(String value, String field) {
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new APIException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String field, double defaultValue) {
+        if (trim(value) == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new APIException("Invalid " + field + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse.Status;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.OrderItemRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.FileService;
+import com.nguyenanhquoc.example05.service.InventoryService;
+import com.nguyenanhquoc.example05.service.ProductRemovalService;
+import com.nguyenanhquoc.example05.service.cart.CartWriteBehindStore;
+import com.nguyenanhquoc.example05.service.catalog.CategoryProductCounts;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Removes products a batch at a time with set-based statements: cart totals are lowered, then the
+ * cart lines, reservations and products are deleted, a few statements per batch whatever its size.
+ * Products that orders reference are retired instead: flagged, taken off their category and out of
+ * stock, so no listing, search or cart shows them any more.
+ * Whole categories are removed in chunks that each commit on their own, either on the request
+ * thread or as a background job whose progress can be polled. Not @Transactional on purpose.
+ */
+@Slf4j
+@Service
+public class ProductRemovalServiceImpl implements ProductRemovalService {
+
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private CategoryRepo categoryRepo;
+
+    @Autowired
+    private OrderItemRepo orderItemRepo;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectProvider<CartWriteBehindStore> cartStore;
+
+    @Autowired
+    @Qualifier("catalogExecutor")
+    private TaskExecutor catalogExecutor;
+
+    @Value("${project.image}")
+    private String path;
+
+    private final Map<String, CategoryRemovalResponse> jobs = new ConcurrentHashMap<>();
+
+    // Joins the caller's transaction when there is one, otherwise the batch commits on its own
+    @Override
+    public Removal removeProducts(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return new Removal(0, List.of());
+        }
+
+        return transactionTemplate.execute(status -> removeBatch(productIds));
+    }
+
+    @Override
+    public long removeCategory(Long categoryId, CategoryRemovalResponse progress) {
+        if (!categoryRepo.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Category", "categoryId", categoryId);
+        }
+
+        Pageable chunk = PageRequest.of(0, AppConstants.PRODUCT_REMOVAL_CHUNK_SIZE);
+        long removed = 0;
+
+        // Removed rows drop out of the query, so the first chunk is always the next one
+        List<Long> productIds = productRepo.findProductIdsByCategory(categoryId, chunk);
+
+        // Retired products leave the category too, so they do not come back in the next chunk
+        while (!productIds.isEmpty()) {
+            Removal removal = removeProducts(productIds);
+            removed += removal.removed();
+
+            if (progress != null) {
+                progress.setRemovedProducts(removed);
+                progress.getRetiredProductIds().addAll(removal.retiredProductIds());
+                progress.setRetiredProducts(progress.getRetiredProductIds().size());
+            }
+
+            productIds = productRepo.findProductIdsByCategory(categoryId, chunk);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> categoryRepo.deleteById(categoryId));
+        categoryProductCounts.evict(categoryId);
+
+        return removed;
+    }
+
+    @Override
+    public CategoryRemovalResponse startCategoryRemoval(Long categoryId) {
+        if (!categoryRepo.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Category", "categoryId", categoryId);
+        }
+
+        Instant now = Instant.now();
+        jobs.values().removeIf(job -> job.getFinishedAt() != null
+                && job.getFinishedAt().isBefore(now.minus(FINISHED_JOB_RETENTION)));
+
+        CategoryRemovalResponse job = new CategoryRemovalResponse();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setCategoryId(categoryId);
+        job.setStatus(Status.RUNNING);
+        job.setTotalProducts(productRepo.countByCategoryCategoryId(categoryId));
+        job.setStartedAt(now);
+        jobs.put(job.getJobId(), job);
+
+        try {
+            catalogExecutor.execute(() -> runCategoryRemoval(job));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getJobId());
+            throw new APIException("Too many catalog jobs are running, try again later");
+        }
+
+        return job;
+    }
+
+    @Override
+    public CategoryRemovalResponse getCategoryRemoval(String jobId) {
+        CategoryRemovalResponse job = jobs.get(jobId);
+
+        if (job == null) {
+            throw new ResourceNotFoundException("Category removal", "jobId", jobId);
+        }
+
+        return job;
+    }
+
+    private void runCategoryRemoval(CategoryRemovalResponse job) {
+        try {
+            removeCategory(job.getCategoryId(), job);
+            job.setStatus(Status.COMPLETED);
+            log.info("Removed category {} with {} products, {} products with orders retired", job.getCategoryId(),
+                    job.getRemovedProducts(), job.getRetiredProducts());
+        } catch (RuntimeException e) {
+            job.setError(e.getMessage());
+            job.setStatus(Status.FAILED);
+            log.error("Removing category {} stopped after {} products", job.getCategoryId(), job.getRemovedProducts(), e);
+        } finally {
+            job.setFinishedAt(Instant.now());
+        }
+    }
+
+    private Removal removeBatch(Collection<Long> productIds) {
+        List<Object[]> products = productRepo.findCategoriesAndImages(productIds);
+        List<Long> retiredIds = orderItemRepo.findOrderedProductIds(productIds);
+        List<Long> deletedIds = productIds.stream().filter(productId -> !retiredIds.contains(productId)).toList();
+
+        // Totals first: they are computed from the cart lines deleted right after
+        cartRepo.subtractProducts(productIds);
+        cartItemRepo.deleteByProductIds(productIds);
+        inventoryService.removeProducts(productIds);
+        int removed = deletedIds.isEmpty() ? 0 : productRepo.deleteByProductIds(deletedIds);
+
+        if (!retiredIds.isEmpty()) {
+            productRepo.retireByProductIds(retiredIds);
+        }
+
+        Map<Long, Long> removedPerCategory = new HashMap<>();
+
+        for (Object[] product : products) {
+            if (product[1] != null) {
+                removedPerCategory.merge((Long) product[1], 1L, Long::sum);
+            }
+
+            // Order history still shows a retired product's image
+            if (!retiredIds.contains((Long) product[0])) {
+                fileService.releaseImage(path, (String) product[2]);
+            }
+        }
+
+        List<Long> removedIds = products.stream().map(product -> (Long) product[0]).toList();
+
+        removedPerCategory.forEach((categoryId, count) -> categoryProductCounts.add(categoryId, -count));
+        TransactionUtils.afterCommit(() -> {
+            cartStore.ifAvailable(store -> store.removeProducts(removedIds));
+            removedIds.forEach(productSearchIndex::remove);
+        });
+
+        return new Removal(removed, retiredIds);
+    }
+}
@@ -1,34 +1,49 @@
 package com.nguyenanhquoc.example05.service.impl;
 
-import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.config.AppConstants;
 import com.nguyenanhquoc.example05.entity.Category;
 import com.nguyenanhquoc.example05.entity.Product;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
-import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
+import com.nguyenanhquoc.example05.payloads.ImageFile;
 import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
 import com.nguyenanhquoc.example05.payloads.response.ProductResponse;
-import com.nguyenanhquoc.example05.repository.CartRepo;
 import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.KeysetPager;
+import com.nguyenanhquoc.example05.repository.KeysetPager.KeysetPage;
 import com.nguyenanhquoc.example05.repository.ProductRepo;
-import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.CartRepricingService;
 import com.nguyenanhquoc.example05.service.FileService;
+import com.nguyenanhquoc.example05.service.InventoryService;
+import com.nguyenanhquoc.example05.service.ProductRemovalService;
 import com.nguyenanhquoc.example05.service.ProductService;
+import com.nguyenanhquoc.example05.service.catalog.CategoryProductCounts;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
 import jakarta.transaction.Transactional;
-import org.modelmapper.ModelMapper;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -43,16 +58,28 @@ public class ProductServiceImpl implements ProductService {
     private CategoryRepo categoryRepo;
 
     @Autowired
-    private CartRepo cartRepo;
+    private FileService fileService;
 
     @Autowired
-    private CartService cartService;
+    private InventoryService inventoryService;
 
     @Autowired
-    private FileService fileService;
+    private CartRepricingService cartRepricingService;
+
+    @Autowired
+    private ProductRemovalService productRemovalService;
+
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private KeysetPager keysetPager;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private CategoryProductCounts categoryProductCounts;
 
     @Value("${project.image}")
     private String path;
@@ -62,31 +89,20 @@ public class ProductServiceImpl implements ProductService {
         Category category = categoryRepo.findById(categoryId)
                 .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
 
-        boolean isProductNotPresent = true;
-
-        List<Product> products = category.getProducts();
-
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getProductName().equals(product.getProductName())
-                    && products.get(i).getDescription().equals(product.getDescription())) {
-                isProductNotPresent = false;
-                break;
-            }
-        }
+        product.setImage("default.png");
+        product.setCategory(category);
 
-        if (isProductNotPresent) {
-            product.setImage("default.png");
-            product.setCategory(category);
+        double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
+        product.setSpecialPrice(specialPrice);
 
-            double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
-            product.setSpecialPrice(specialPrice);
+        // uk_product_category_dedup decides, so two concurrent inserts cannot both pass a read-then-write check
+        Product savedProduct = saveUnique(product);
 
-            Product savedProduct = productRepo.save(product);
+        categoryProductCounts.add(categoryId, 1);
+        ProductDTO savedProductDTO = dtoMapper.toProductDTO(savedProduct);
+        TransactionUtils.afterCommit(() -> productSearchIndex.index(savedProductDTO));
 
-            return modelMapper.map(savedProduct, ProductDTO.class);
-        } else {
-            throw new APIException("Product already exists !!!");
-        }
+        return savedProductDTO;
     }
 
     @Override
@@ -96,11 +112,9 @@ public class ProductServiceImpl implements ProductService {
 
         Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sort);
 
-        Page<Product> pageProducts = productRepo.findAll(pageDetails);
+        Page<ProductDTO> pageProducts = productRepo.findAllProductDTOs(pageDetails);
 
-        List<Product> products = pageProducts.getContent();
-        List<ProductDTO> productDTOs = products.stream().map(product -> modelMapper.map(product, ProductDTO.class))
-                .collect(Collectors.toList());
+        List<ProductDTO> productDTOs = pageProducts.getContent();
 
         ProductResponse productResponse = new ProductResponse();
 
@@ -115,7 +129,32 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
+    public ProductResponse getAllProducts(String cursor, Integer pageSize, String sortBy, String sortOrder,
+                                          boolean withTotal) {
+        Specification<Product> listed = (root, query, cb) -> cb.isFalse(root.get("retired"));
+
+        KeysetPage<ProductDTO> pageProducts = keysetPager.seek(Product.class, ProductDTO.class,
+                ProductServiceImpl::productDTOSelection, "productId", listed, cursor, pageSize, sortBy, sortOrder);
+
+        ProductResponse productResponse = new ProductResponse();
+
+        productResponse.setContent(pageProducts.getContent());
+        productResponse.setPageSize(pageSize);
+        productResponse.setLastPage(pageProducts.getNextCursor() == null);
+        productResponse.setNextCursor(pageProducts.getNextCursor());
+
+        if (withTotal) {
+            long totalElements = keysetPager.count(Product.class, listed);
+            productResponse.setTotalElements(totalElements);
+            productResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+
+        return productResponse;
+    }
+
+    @Override
+    public ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy,
+                                            String sortOrder, boolean inStockOnly) {
         Category category = categoryRepo.findById(categoryId)
                 .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
 
@@ -124,27 +163,66 @@ public class ProductServiceImpl implements ProductService {
 
         Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sort);
 
-        Page<Product> pageProducts = productRepo.findAll(pageDetails);
+        List<ProductDTO> productDTOs;
+        long totalElements;
 
-        List<Product> products = pageProducts.getContent();
+        if (inStockOnly) {
+            Page<ProductDTO> pageProducts = productRepo.findInStockProductDTOsByCategory(categoryId, pageDetails);
+            productDTOs = pageProducts.getContent();
+            totalElements = pageProducts.getTotalElements();
+        } else {
+            productDTOs = productRepo.findProductDTOsByCategory(categoryId, pageDetails);
+            totalElements = categoryProductCounts.get(categoryId);
+        }
 
-        if (products.size() == 0) {
+        if (productDTOs.size() == 0) {
             throw new APIException(category.getCategoryName() + " category doesn't contain any products !!!");
         }
 
-        // Dòng 126
-
-        List<ProductDTO> productDTOs = products.stream().map(p -> modelMapper.map(p, ProductDTO.class))
-                .collect(Collectors.toList());
+        int totalPages = (int) ((totalElements + pageSize - 1) / pageSize);
 
         ProductResponse productResponse = new ProductResponse();
 
         productResponse.setContent(productDTOs);
-        productResponse.setPageNumber(pageProducts.getNumber());
-        productResponse.setPageSize(pageProducts.getSize());
-        productResponse.setTotalElements(pageProducts.getTotalElements());
-        productResponse.setTotalPages(pageProducts.getTotalPages());
-        productResponse.setLastPage(pageProducts.isLast());
+        productResponse.setPageNumber(pageNumber);
+        productResponse.setPageSize(pageSize);
+        productResponse.setTotalElements(totalElements);
+        productResponse.setTotalPages(totalPages);
+        productResponse.setLastPage(pageNumber + 1 >= totalPages);
+
+        return productResponse;
+    }
+
+    @Override
+    public ProductResponse searchByCategory(Long categoryId, String cursor, Integer pageSize, String sortBy,
+                                            String sortOrder, boolean inStockOnly, boolean withTotal) {
+        Category category = categoryRepo.findById(categoryId)
+                .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
+
+        Specification<Product> inCategory = (root, query, cb) -> inStockOnly
+                ? cb.and(cb.equal(root.get("category").get("categoryId"), categoryId), cb.greaterThan(root.get("quantity"), 0))
+                : cb.equal(root.get("category").get("categoryId"), categoryId);
+
+        KeysetPage<ProductDTO> pageProducts = keysetPager.seek(Product.class, ProductDTO.class,
+                ProductServiceImpl::productDTOSelection, "productId", inCategory, cursor, pageSize, sortBy, sortOrder);
+
+        if (pageProducts.getContent().size() == 0) {
+            throw new APIException(category.getCategoryName() + " category doesn't contain any products !!!");
+        }
+
+        ProductResponse productResponse = new ProductResponse();
+
+        productResponse.setContent(pageProducts.getContent());
+        productResponse.setPageSize(pageSize);
+        productResponse.setLastPage(pageProducts.getNextCursor() == null);
+        productResponse.setNextCursor(pageProducts.getNextCursor());
+
+        if (withTotal) {
+            long totalElements = inStockOnly ? keysetPager.count(Product.class, inCategory)
+                    : categoryProductCounts.get(categoryId);
+            productResponse.setTotalElements(totalElements);
+            productResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
 
         return productResponse;
     }
@@ -152,43 +230,72 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public ProductResponse searchProductByKeyword(String keyword, Integer pageNumber, Integer pageSize, String sortBy,
                                                   String sortOrder) {
-        Sort sort = sortOrder.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending()
-                : Sort.by(sortBy).descending();
+        List<ProductSearchIndex.Hit> hits = productSearchIndex.search(keyword);
 
-        Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sort);
+        if (hits.size() == 0) {
+            throw new APIException("Products not found with keyword: " + keyword);
+        }
+
+        boolean ascending = sortOrder.equalsIgnoreCase("asc");
+        int fromIndex = Math.min(pageNumber * pageSize, hits.size());
+        int toIndex = Math.min(fromIndex + pageSize, hits.size());
+
+        List<ProductDTO> productDTOs;
+
+        Comparator<ProductSearchIndex.Hit> order = sortBy.equalsIgnoreCase(AppConstants.SORT_PRODUCTS_BY_RELEVANCE)
+                ? ProductSearchIndex.BY_RELEVANCE
+                : ProductSearchIndex.sortedBy(sortBy, ascending);
+
+        if (order != null) {
+            // The index keeps the sort keys, only the page itself is read from the database
+            hits.sort(order);
 
-        Page<Product> pageProducts = productRepo.findByProductNameContainingIgnoreCase(keyword, pageDetails);
+            List<Long> pageIds = hits.subList(fromIndex, toIndex).stream()
+                    .map(ProductSearchIndex.Hit::getProductId)
+                    .collect(Collectors.toList());
 
-        List<Product> products = pageProducts.getContent();
+            Map<Long, ProductDTO> productsById = productRepo.findProductDTOsByIds(pageIds).stream()
+                    .collect(Collectors.toMap(ProductDTO::getProductId, Function.identity()));
+
+            productDTOs = pageIds.stream().map(productsById::get).filter(Objects::nonNull).collect(Collectors.toList());
+        } else {
+            // Fields the index does not keep are sorted by the database, which needs every hit's id in one query
+            if (hits.size() > AppConstants.SEARCH_DATABASE_SORT_MAX_HITS) {
+                throw new APIException("Too many products match keyword: " + keyword + " to sort by " + sortBy
+                        + ", narrow the search or sort by relevance, productName, price, discount or specialPrice");
+            }
+
+            Sort sort = ascending ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+
+            List<Long> matchingIds = hits.stream().map(ProductSearchIndex.Hit::getProductId).collect(Collectors.toList());
+
+            productDTOs = productRepo.findProductDTOsByIds(matchingIds, PageRequest.of(pageNumber, pageSize, sort));
+        }
 
-        if (products.size() == 0) {
+        if (productDTOs.size() == 0) {
             throw new APIException("Products not found with keyword: " + keyword);
         }
 
-        List<ProductDTO> productDTOs = products.stream().map(p -> modelMapper.map(p, ProductDTO.class))
-                .collect(Collectors.toList());
+        int totalPages = (hits.size() + pageSize - 1) / pageSize;
 
         ProductResponse productResponse = new ProductResponse();
 
         productResponse.setContent(productDTOs);
-        productResponse.setPageNumber(pageProducts.getNumber());
-        productResponse.setPageSize(pageProducts.getSize());
-        productResponse.setTotalElements(pageProducts.getTotalElements());
-        productResponse.setTotalPages(pageProducts.getTotalPages());
-        productResponse.setLastPage(pageProducts.isLast());
+        productResponse.setPageNumber(pageNumber);
+        productResponse.setPageSize(pageSize);
+        productResponse.setTotalElements((long) hits.size());
+        productResponse.setTotalPages(totalPages);
+        productResponse.setLastPage(pageNumber + 1 >= totalPages);
 
         return productResponse;
     }
 
     @Override
     public ProductDTO updateProduct(Long productId, Product product) {
-        Product productFromDB = productRepo.findById(productId)
+        // A retired product is only kept for its order lines, so it cannot be edited back into the catalog
+        Product productFromDB = productRepo.findById(productId).filter(existing -> !existing.isRetired())
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
 
-        if (productFromDB == null) {
-            throw new APIException("Product not found with productId: " + productId);
-        }
-
         product.setImage(productFromDB.getImage());
         product.setProductId(productId);
         product.setCategory(productFromDB.getCategory());
@@ -196,60 +303,116 @@ public class ProductServiceImpl implements ProductService {
         double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
         product.setSpecialPrice(specialPrice);
 
-        Product savedProduct = productRepo.save(product);
-
-        List<Cart> carts = cartRepo.findCartsByProductId(productId);
-
-        List<CartDTO> cartDTOs = carts.stream().map(cart -> {
-            CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-
-            List<ProductDTO> products = cart.getCartItems().stream()
-                    .map(p -> modelMapper.map(p.getProduct(), ProductDTO.class)).collect(Collectors.toList());
+        // The merge below never writes quantity, an admin stock edit goes through the inventory path
+        if (product.getQuantity() == null) {
+            product.setQuantity(productFromDB.getQuantity());
+        } else {
+            inventoryService.setStock(productId, product.getQuantity());
+        }
 
-            cartDTO.setProducts(products);
+        Product savedProduct = saveUnique(product);
 
-            return cartDTO;
-        }).collect(Collectors.toList());
+        cartRepricingService.repriceCarts(productId);
 
-        cartDTOs.forEach(cart -> cartService.updateProductInCarts(cart.getCartId(), productId));
+        ProductDTO savedProductDTO = dtoMapper.toProductDTO(savedProduct);
+        TransactionUtils.afterCommit(() -> productSearchIndex.index(savedProductDTO));
 
-        return modelMapper.map(savedProduct, ProductDTO.class);
+        return savedProductDTO;
     }
 
     @Override
     public ProductDTO updateProductImage(Long productId, MultipartFile image) throws IOException {
-        Product productFromDB = productRepo.findById(productId)
+        // A retired product is only kept for its order lines, so it cannot be edited back into the catalog
+        Product productFromDB = productRepo.findById(productId).filter(existing -> !existing.isRetired())
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
 
-        if (productFromDB == null) {
-            throw new APIException("Product not found with productId: " + productId);
-        }
-
+        String previousImage = productFromDB.getImage();
         String fileName = fileService.uploadImage(path, image);
 
         productFromDB.setImage(fileName);
+        fileService.releaseImage(path, previousImage);
 
         Product updatedProduct = productRepo.save(productFromDB);
 
-        return modelMapper.map(updatedProduct, ProductDTO.class);
+        // Carts embed the product image, so their ETags have to change with it
+        cartRepricingService.touchCarts(productId);
+
+        return dtoMapper.toProductDTO(updatedProduct);
     }
 
     @Override
     public String deleteProduct(Long productId) {
-        Product product = productRepo.findById(productId)
-                .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
+        if (!productRepo.existsById(productId)) {
+            throw new ResourceNotFoundException("Product", "productId", productId);
+        }
+
+        // Carts, reservations, image, search index and counts are cleaned up with the product
+        if (productRemovalService.removeProducts(List.of(productId)).removed() == 0) {
+            return "Product with productId: " + productId + " has orders, it was taken off the catalog instead of deleted";
+        }
+
+        return "Product with productId: " + productId + " deleted successfully !!!";
+    }
 
-        List<Cart> carts = cartRepo.findCartsByProductId(productId);
+    // On hand minus what carts are holding, served from memory
+    @Override
+    public int getAvailableQuantity(Long productId) {
+        return inventoryService.getAvailableStock(productId);
+    }
 
-        carts.forEach(cart -> cartService.deleteProductFromCart(cart.getCartId(), productId));
+    @Override
+    public int rebuildSearchIndex() {
+        Pageable batch = PageRequest.of(0, AppConstants.SEARCH_INDEX_BATCH_SIZE);
 
-        productRepo.delete(product);
+        productSearchIndex.rebuild(rebuilt -> {
+            Long lastProductId = 0L;
 
-        return "Product with productId: " + productId + " deleted successfully !!!";
+            List<ProductDTO> products = productRepo.findProductDTOsAfter(lastProductId, batch);
+
+            while (!products.isEmpty()) {
+                products.forEach(rebuilt::index);
+
+                lastProductId = products.get(products.size() - 1).getProductId();
+                products = productRepo.findProductDTOsAfter(lastProductId, batch);
+            }
+        });
+
+        return productSearchIndex.size();
+    }
+
+    private Product saveUnique(Product product) {
+        try {
+            return productRepo.saveAndFlush(product);
+        } catch (DataIntegrityViolationException e) {
+            // Any other violation, e.g. a category deleted in the meantime, is not a duplicate
+            if (violates(e, Product.DEDUP_CONSTRAINT)) {
+                throw new APIException("Product already exists !!!");
+            }
+
+            throw e;
+        }
+    }
+
+    // Drivers report the name differently, e.g. MySQL prefixes the table and H2 appends the index
+    private static boolean violates(DataIntegrityViolationException e, String constraint) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase(Locale.ROOT).contains(constraint);
+            }
+        }
+
+        return false;
+    }
+
+    // Same columns as the ProductDTO constructor expression in ProductRepo
+    private static Selection<ProductDTO> productDTOSelection(Root<Product> root, CriteriaBuilder cb) {
+        return cb.construct(ProductDTO.class, root.get("productId"), root.get("productName"), root.get("image"),
+                root.get("description"), root.get("quantity"), root.get("price"), root.get("discount"),
+                root.get("specialPrice"));
     }
 
     @Override
-    public InputStream getProductImage(String fileName) throws FileNotFoundException {
-        return fileService.getResource(path, fileName);
+    public ImageFile getProductImage(String fileName, Integer size) throws IOException {
+        return fileService.getImage(path, fileName, size);
     }
 }
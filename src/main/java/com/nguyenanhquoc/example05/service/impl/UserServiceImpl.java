@@ -19,10 +19,12 @@ import com.nguyenanhquoc.example05.entity.Role;
 import com.nguyenanhquoc.example05.entity.User;
 import com.nguyenanhquoc.example05.exceptions.APIException;
 import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
-import com.nguyenanhquoc.example05.payloads.dto.AddressDTO;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
 import com.nguyenanhquoc.example05.payloads.dto.UserDTO;
 import com.nguyenanhquoc.example05.payloads.response.UserResponse;
 import com.nguyenanhquoc.example05.repository.AddressRepo;
+import com.nguyenanhquoc.example05.repository.KeysetPager;
+import com.nguyenanhquoc.example05.repository.KeysetPager.KeysetPage;
 import com.nguyenanhquoc.example05.repository.RoleRepo;
 import com.nguyenanhquoc.example05.repository.UserRepo;
 import com.nguyenanhquoc.example05.service.UserService;
@@ -51,6 +53,12 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private ModelMapper modelMapper;
 
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private KeysetPager keysetPager;
+
     @Override
     public UserDTO registerUser(UserDTO userDTO) {
         try {
@@ -85,11 +93,7 @@ public class UserServiceImpl implements UserService {
             
             // // cart.setUser(registeredUser);
             
-            userDTO = modelMapper.map(registeredUser, UserDTO.class);
-            
-            if (!registeredUser.getAddresses().isEmpty()) {
-                userDTO.setAddress(modelMapper.map(registeredUser.getAddresses().stream().findFirst().get(), AddressDTO.class));
-            }
+            userDTO = dtoMapper.toUserDTO(registeredUser);
             
             return userDTO;
 
@@ -110,10 +114,7 @@ public class UserServiceImpl implements UserService {
         }
 
         List<UserDTO> userDTOs = users.stream().map(user -> {
-            UserDTO dto = modelMapper.map(user, UserDTO.class);
-            if (!user.getAddresses().isEmpty()) {
-                dto.setAddress(modelMapper.map(user.getAddresses().stream().findFirst().get(), AddressDTO.class));
-            }
+            UserDTO dto = dtoMapper.toUserDTO(user);
             // // CartDTO cart = modelMapper.map(user.getCart(), CartDTO.class);
             // // List<ProductDTO> products = user.getCart().getCartItems().stream().map(item -> modelMapper.map(item.getProduct(), ProductDTO.class)).collect(Collectors.toList());
             // // dto.setCart(cart);
@@ -132,16 +133,38 @@ public class UserServiceImpl implements UserService {
         return userResponse;
     }
 
+    @Override
+    public UserResponse getAllUsers(String cursor, Integer pageSize, String sortBy, String sortOrder, boolean withTotal) {
+        KeysetPage<User> pageUsers = keysetPager.seek(User.class, "userId", null, cursor, pageSize, sortBy, sortOrder);
+        List<User> users = pageUsers.getContent();
+
+        if (users.isEmpty()) {
+            throw new APIException("No User exists!!!");
+        }
+
+        List<UserDTO> userDTOs = users.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList());
+
+        UserResponse userResponse = new UserResponse();
+        userResponse.setContent(userDTOs);
+        userResponse.setPageSize(pageSize);
+        userResponse.setLastPage(pageUsers.getNextCursor() == null);
+        userResponse.setNextCursor(pageUsers.getNextCursor());
+
+        if (withTotal) {
+            long totalElements = keysetPager.count(User.class, null);
+            userResponse.setTotalElements(totalElements);
+            userResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+
+        return userResponse;
+    }
+
     @Override
     public UserDTO getUserById(Long userId) {
         User user = userRepo.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "userId", userId));
 
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
-        
-        if (!user.getAddresses().isEmpty()) {
-            userDTO.setAddress(modelMapper.map(user.getAddresses().stream().findFirst().get(), AddressDTO.class));
-        }
+        UserDTO userDTO = dtoMapper.toUserDTO(user);
 
         // // Mapping for Cart and Products would go here
         
@@ -178,10 +201,7 @@ public class UserServiceImpl implements UserService {
             user.setAddresses(List.of(address));
         }
 
-        userDTO = modelMapper.map(user, UserDTO.class);
-        if (!user.getAddresses().isEmpty()) {
-            userDTO.setAddress(modelMapper.map(user.getAddresses().stream().findFirst().get(), AddressDTO.class));
-        }
+        userDTO = dtoMapper.toUserDTO(user);
         
         // // Mapping for Cart and Products would go here
 
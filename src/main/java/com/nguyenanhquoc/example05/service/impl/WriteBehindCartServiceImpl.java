@@ -0,0 +1,299 @@
+package com.nguyenanhquoc.example05.service.impl;
+
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.InventoryService;
+import com.nguyenanhquoc.example05.service.cart.CartWriteBehindStore;
+import com.nguyenanhquoc.example05.service.cart.CartWriteBehindStore.CartLines;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cart service for project.cart-store=write-behind: carts are read and changed in memory and
+ * written to the database by CartWriteBehindStore. Stock is still reserved synchronously, so a
+ * cart never holds more than is available.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "project.cart-store", havingValue = "write-behind")
+public class WriteBehindCartServiceImpl implements CartService {
+
+    @Autowired
+    private CartWriteBehindStore cartStore;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    @Qualifier("cartServiceImpl")
+    private CartService databaseCartService;
+
+    @Override
+    public CartDTO addProductToCart(String email, Long productId, Integer quantity) {
+        Long cartId = cartStore.cartIdOf(email);
+
+        CartLines cart = reserveAndMutate(cartId, lines -> {
+            int newQuantity = lines.getOrDefault(productId, 0) + quantity;
+
+            if (!inventoryService.reserve(cartId, productId, newQuantity)) {
+                throw new APIException("Not enough stock for " + product(productId).getProductName());
+            }
+
+            return Map.of(productId, newQuantity);
+        });
+
+        return toCartDTO(cart);
+    }
+
+    @Override
+    public CartDTO addProductsToCart(String email, List<CartItemChange> changes) {
+        Map<Long, Integer> added = new LinkedHashMap<>();
+
+        for (CartItemChange change : changes) {
+            if (change.getProductId() == null || change.getQuantity() == null || change.getQuantity() < 1) {
+                throw new APIException("Each item needs a productId and a quantity of at least 1");
+            }
+
+            added.merge(change.getProductId(), change.getQuantity(), Integer::sum);
+        }
+
+        if (added.isEmpty()) {
+            throw new APIException("No products to add to the cart");
+        }
+
+        Map<Long, Product> products = productRepo.findAllById(added.keySet()).stream()
+                .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+
+        for (Long productId : added.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new ResourceNotFoundException("Product", "productId", productId);
+            }
+        }
+
+        Long cartId = cartStore.cartIdOf(email);
+
+        CartLines cart = reserveAndMutate(cartId, lines -> {
+            Map<Long, Integer> newQuantities = new LinkedHashMap<>();
+            added.forEach((productId, quantity) -> newQuantities.put(productId, lines.getOrDefault(productId, 0) + quantity));
+
+            List<Long> unavailable = inventoryService.reserveAll(cartId, newQuantities);
+
+            if (!unavailable.isEmpty()) {
+                throw new APIException("Not enough stock for " + unavailable.stream()
+                        .map(productId -> products.get(productId).getProductName())
+                        .collect(Collectors.joining(", ")));
+            }
+
+            return newQuantities;
+        });
+
+        return toCartDTO(cart);
+    }
+
+    @Override
+    public List<CartDTO> getAllCarts() {
+        flushAll();
+
+        return databaseCartService.getAllCarts();
+    }
+
+    @Override
+    public CartDTO getCart(String emailId, Long cartId) {
+        CartLines cart = cartStore.get(cartId);
+
+        if (!emailId.equals(cart.getEmail())) {
+            throw new ResourceNotFoundException("Cart", "cartId", cartId);
+        }
+
+        return toCartDTO(cart);
+    }
+
+    // The database version lags behind the cart in memory and prices are read live, so there is none
+    @Override
+    public Long getCartVersion(String emailId, Long cartId) {
+        return null;
+    }
+
+    @Override
+    public CartDTO updateProductQuantityInCart(Long cartId, Long productId, Integer quantity) {
+        Product product = product(productId);
+
+        if (quantity < 0) {
+            throw new APIException("Quantity must not be negative");
+        }
+
+        CartLines cart = reserveAndMutate(cartId, lines -> {
+            Integer oldQuantity = lines.get(productId);
+
+            if (oldQuantity == null) {
+                throw new APIException("Product " + product.getProductName() + " not available in the cart!!!");
+            }
+
+            if (!inventoryService.reserve(cartId, productId, quantity)) {
+                int available = inventoryService.getAvailableStock(productId) + oldQuantity;
+
+                if (available == 0) {
+                    throw new APIException(product.getProductName() + " is not available");
+                }
+
+                throw new APIException("Please, make an order of the " + product.getProductName()
+                        + " less than or equal to the quantity " + available + ".");
+            }
+
+            return Map.of(productId, quantity);
+        });
+
+        return toCartDTO(cart);
+    }
+
+    @Override
+    public void updateProductInCarts(Long cartId, Long productId) {
+        cartStore.flush(cartId);
+
+        databaseCartService.updateProductInCarts(cartId, productId);
+    }
+
+    @Override
+    public String deleteProductFromCart(Long cartId, Long productId) {
+        Product product = product(productId);
+
+        // Checked, released and removed under the cart's lock, so an add in between cannot lose its hold
+        reserveAndMutate(cartId, lines -> {
+            if (!lines.containsKey(productId)) {
+                throw new ResourceNotFoundException("Product", "productId", productId);
+            }
+
+            inventoryService.releaseReservation(cartId, productId);
+
+            Map<Long, Integer> removal = new HashMap<>();
+            removal.put(productId, null);
+            return removal;
+        });
+
+        return "Product " + product.getProductName() + " removed from the cart !!!";
+    }
+
+    // The rows go in the order's transaction, the cart in memory only loses what was ordered and only if the order commits
+    @Override
+    public void removeOrderedItems(Long cartId, List<CartItem> orderedItems) {
+        databaseCartService.removeOrderedItems(cartId, orderedItems);
+
+        Map<Long, Integer> ordered = new HashMap<>();
+        orderedItems.forEach(item -> ordered.merge(item.getProduct().getProductId(), item.getQuantity(), Integer::sum));
+
+        lowerAfterCommit(cartId, ordered);
+    }
+
+    @Override
+    public void removeOrderedQuantities(Long cartId, Map<Long, Integer> orderedQuantities) {
+        databaseCartService.removeOrderedQuantities(cartId, orderedQuantities);
+
+        lowerAfterCommit(cartId, orderedQuantities);
+    }
+
+    @Override
+    public void persistCart(Long cartId) {
+        cartStore.flush(cartId);
+    }
+
+    // A line raised since the order was read keeps the difference
+    private void lowerAfterCommit(Long cartId, Map<Long, Integer> ordered) {
+        TransactionUtils.afterCommit(() -> cartStore.mutate(cartId, lines -> {
+            Map<Long, Integer> removal = new HashMap<>();
+            ordered.forEach((productId, quantity) -> {
+                Integer current = lines.get(productId);
+
+                if (current != null) {
+                    removal.put(productId, current > quantity ? current - quantity : null);
+                }
+            });
+            return removal;
+        }));
+    }
+
+    private void flushAll() {
+        try {
+            cartStore.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * cartStore.mutate for changes that reserve or release stock: the hold commits before the change is
+     * journaled, so when journaling fails the holds are put back to the quantities the cart still has.
+     */
+    private CartLines reserveAndMutate(Long cartId, Function<Map<Long, Integer>, Map<Long, Integer>> change) {
+        Map<Long, Integer> before = new HashMap<>();
+
+        try {
+            return cartStore.mutate(cartId, lines -> {
+                Map<Long, Integer> changes = change.apply(lines);
+                changes.keySet().forEach(productId -> before.put(productId, lines.getOrDefault(productId, 0)));
+                return changes;
+            });
+        } catch (RuntimeException e) {
+            if (!before.isEmpty()) {
+                try {
+                    inventoryService.reserveAll(cartId, before);
+                } catch (RuntimeException undo) {
+                    e.addSuppressed(undo);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private Product product(Long productId) {
+        return productRepo.findById(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
+    }
+
+    // Prices are read live, so a cart in memory always shows the current special price
+    private CartDTO toCartDTO(CartLines cart) {
+        Map<Long, ProductDTO> products = new HashMap<>();
+
+        if (!cart.getLines().isEmpty()) {
+            productRepo.findProductDTOsByIds(cart.getLines().keySet())
+                    .forEach(product -> products.put(product.getProductId(), product));
+        }
+
+        List<ProductDTO> productDTOs = new ArrayList<>(cart.getLines().size());
+        double totalPrice = 0;
+
+        for (Map.Entry<Long, Integer> line : cart.getLines().entrySet()) {
+            ProductDTO product = products.get(line.getKey());
+
+            if (product != null) {
+                productDTOs.add(product);
+                totalPrice += product.getSpecialPrice() * line.getValue();
+            }
+        }
+
+        return new CartDTO(cart.getCartId(), totalPrice, productDTOs);
+    }
+}
@@ -0,0 +1,91 @@
+package com.nguyenanhquoc.example05.service.inventory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.repository.StockReservationRepo;
+
+/**
+ * Available quantity per product (on hand minus every reservation row) kept in memory, so carts claim
+ * stock with a compare-and-set instead of reading the product row. A product is loaded once on first
+ * use and then maintained by InventoryService.
+ */
+@Component
+public class StockAvailability {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private StockReservationRepo stockReservationRepo;
+
+    private final Map<Long, AtomicInteger> available = new ConcurrentHashMap<>();
+
+    public int get(Long productId) {
+        return counter(productId).get();
+    }
+
+    // False, and nothing is claimed, when fewer than quantity items are available
+    public boolean tryClaim(Long productId, int quantity) {
+        AtomicInteger counter = counter(productId);
+        int current;
+
+        do {
+            current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current - quantity));
+
+        return true;
+    }
+
+    // Products that were never read are left alone, they are loaded on first use
+    public void add(Long productId, int delta) {
+        available.computeIfPresent(productId, (id, counter) -> {
+            counter.addAndGet(delta);
+            return counter;
+        });
+    }
+
+    // Loads the products not in memory yet with two IN queries instead of two queries each
+    public void load(Collection<Long> productIds) {
+        List<Long> missing = productIds.stream().filter(id -> !available.containsKey(id)).toList();
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> reserved = new HashMap<>();
+        stockReservationRepo.sumQuantitiesByProductIds(missing)
+                .forEach(row -> reserved.put((Long) row[0], ((Number) row[1]).longValue()));
+
+        productRepo.findQuantities(missing).forEach(row -> available.putIfAbsent((Long) row[0],
+                new AtomicInteger((Integer) row[1] - reserved.getOrDefault((Long) row[0], 0L).intValue())));
+    }
+
+    public void evict(Long productId) {
+        available.remove(productId);
+    }
+
+    private AtomicInteger counter(Long productId) {
+        return available.computeIfAbsent(productId, id -> {
+            Integer onHand = productRepo.findQuantity(id);
+
+            if (onHand == null) {
+                throw new ResourceNotFoundException("Product", "productId", id);
+            }
+
+            return new AtomicInteger(onHand - (int) stockReservationRepo.sumQuantityByProductId(id));
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.nguyenanhquoc.example05.service.inventory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.service.InventoryService;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Returns the stock of abandoned carts, one short transaction per batch of expired reservations
+@Slf4j
+@Component
+public class StockReservationSweeper {
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Scheduled(initialDelayString = "${project.reservation-sweep-interval:PT1M}",
+            fixedDelayString = "${project.reservation-sweep-interval:PT1M}")
+    public void expireReservations() {
+        int expired = 0;
+        int batch;
+
+        do {
+            batch = inventoryService.expireReservations(AppConstants.RESERVATION_SWEEP_BATCH_SIZE);
+            expired += batch;
+        } while (batch == AppConstants.RESERVATION_SWEEP_BATCH_SIZE);
+
+        if (expired > 0) {
+            log.info("Expired {} stock reservations", expired);
+        }
+    }
+}
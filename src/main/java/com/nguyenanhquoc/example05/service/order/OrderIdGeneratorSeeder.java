@@ -0,0 +1,66 @@
+package com.nguyenanhquoc.example05.service.order;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Orders, order items and payments used to take auto-increment ids. Their ids now come from
+ * id_generator in blocks of AppConstants.ORDER_ID_ALLOCATION_SIZE, so before the first insert
+ * each row is moved past the largest id already in its table. Runs before the web server starts.
+ */
+@Slf4j
+@Component
+public class OrderIdGeneratorSeeder {
+
+    // id_generator row, table and id column
+    private static final List<String[]> GENERATORS = List.of(
+            new String[] { "orders", "orders", "order_id" },
+            new String[] { "order_items", "order_items", "order_item_id" },
+            new String[] { "payments", "payments", "payment_id" });
+
+    // Injected so the schema exists before seeding
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void seed() {
+        transactionTemplate.executeWithoutResult(status -> GENERATORS.forEach(generator -> seed(generator[0], generator[1], generator[2])));
+    }
+
+    private void seed(String name, String table, String idColumn) {
+        Number maxId = (Number) entityManager.createNativeQuery("SELECT COALESCE(MAX(" + idColumn + "), 0) FROM " + table)
+                .getSingleResult();
+
+        // The pooled optimizer hands out the block below the stored value, so leave a whole block of room
+        long nextValue = maxId.longValue() + AppConstants.ORDER_ID_ALLOCATION_SIZE + 1;
+
+        List<?> current = entityManager.createNativeQuery("SELECT next_val FROM id_generator WHERE id_name = ?1 FOR UPDATE")
+                .setParameter(1, name).getResultList();
+
+        if (current.isEmpty()) {
+            entityManager.createNativeQuery("INSERT INTO id_generator (id_name, next_val) VALUES (?1, ?2)")
+                    .setParameter(1, name).setParameter(2, nextValue).executeUpdate();
+        } else if (((Number) current.get(0)).longValue() < nextValue) {
+            entityManager.createNativeQuery("UPDATE id_generator SET next_val = ?2 WHERE id_name = ?1")
+                    .setParameter(1, name).setParameter(2, nextValue).executeUpdate();
+            log.info("Moved the {} id generator past existing id {}", name, maxId);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.nguyenanhquoc.example05.service.order;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.IdempotencyKey;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.exceptions.ConflictException;
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.repository.IdempotencyKeyRepo;
+import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Places an order at most once per Idempotency-Key. The key is claimed in its own short
+ * transaction, then the order and the stored response commit together, so a retry either finds
+ * the response or a key still in progress (409). A claim older than project.idempotency-claim-timeout
+ * is taken over by the next retry, and the request that lost it cannot store its order any more.
+ * A failed order frees its key. Recent responses are also kept in a bounded LRU so most retries
+ * never reach the database. Keys live for project.idempotency-ttl.
+ */
+@Slf4j
+@Component
+public class OrderIdempotency {
+
+    @Autowired
+    private IdempotencyKeyRepo idempotencyKeyRepo;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartLocks cartLocks;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${project.idempotency-ttl:PT24H}")
+    private Duration ttl;
+
+    @Value("${project.idempotency-claim-timeout:PT1M}")
+    private Duration claimTimeout;
+
+    private final Map<String, Completed> recent;
+
+    // Totals since startup
+    private final AtomicLong replayedFromCache = new AtomicLong();
+    private final AtomicLong replayedFromDatabase = new AtomicLong();
+    private final AtomicLong rejectedInProgress = new AtomicLong();
+    private final AtomicLong takenOver = new AtomicLong();
+
+    public OrderIdempotency(@Value("${project.idempotency-cache-size:10000}") int cacheSize) {
+        recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Completed> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public OrderDTO placeOrder(String key, String emailId, Long cartId, String paymentMethod) {
+        if (key.isBlank() || key.length() > AppConstants.IDEMPOTENCY_KEY_MAX_LENGTH) {
+            throw new APIException("Idempotency-Key must have 1 to " + AppConstants.IDEMPOTENCY_KEY_MAX_LENGTH + " characters");
+        }
+
+        String request = cartId + "/" + paymentMethod;
+        Completed cached = cached(emailId + "\n" + key);
+
+        if (cached != null) {
+            checkSameRequest(cached.request, request);
+            replayedFromCache.incrementAndGet();
+            return cached.order;
+        }
+
+        Claim taken;
+
+        try {
+            taken = transactionTemplate.execute(status -> claim(key, emailId, request));
+        } catch (DataIntegrityViolationException e) {
+            IdempotencyKey existing = idempotencyKeyRepo.findByEmailAndIdempotencyKey(emailId, key).orElse(null);
+
+            // Freed by a failed first request in the meantime
+            if (existing == null) {
+                throw new ConflictException("A request with this Idempotency-Key has just failed, please retry");
+            }
+
+            checkSameRequest(existing.getRequest(), request);
+
+            if (existing.getResponse() != null) {
+                return replay(existing, emailId + "\n" + key);
+            }
+
+            taken = takeOver(existing);
+        }
+
+        Claim claim = taken;
+
+        try {
+            // The cart lock is taken outside the transaction, so it is only released once the order has committed
+            OrderDTO orderDTO = cartLocks.withLock(emailId, () -> transactionTemplate.execute(status -> {
+                OrderDTO placed = orderService.placeOrder(emailId, cartId, paymentMethod);
+
+                // A retry took the key over while this request ran past the claim timeout, its order is the one kept
+                if (idempotencyKeyRepo.complete(claim.id(), claim.claimedAt(), placed.getOrderId(), toJson(placed)) == 0) {
+                    throw new ConflictException("A retry with this Idempotency-Key took over the request");
+                }
+
+                return placed;
+            }));
+
+            remember(emailId + "\n" + key, new Completed(request, orderDTO, Instant.now().plus(ttl)));
+            return orderDTO;
+        } catch (RuntimeException e) {
+            // Nothing was ordered, the client may retry with the same key
+            transactionTemplate.executeWithoutResult(status -> idempotencyKeyRepo.release(claim.id(), claim.claimedAt()));
+            throw e;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${project.idempotency-purge-interval:PT10M}",
+            fixedDelayString = "${project.idempotency-purge-interval:PT10M}")
+    public void purgeExpiredKeys() {
+        int purged = purge(Instant.now());
+
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    // Deletes keys that expired before now, one short transaction per batch
+    public int purge(Instant now) {
+        int purged = 0;
+        List<Long> expired;
+
+        do {
+            expired = idempotencyKeyRepo.findExpiredIds(now, PageRequest.of(0, AppConstants.IDEMPOTENCY_PURGE_BATCH_SIZE));
+
+            if (!expired.isEmpty()) {
+                List<Long> batch = expired;
+                transactionTemplate.executeWithoutResult(status -> idempotencyKeyRepo.deleteAllByIdInBatch(batch));
+                purged += batch.size();
+            }
+        } while (expired.size() == AppConstants.IDEMPOTENCY_PURGE_BATCH_SIZE);
+
+        synchronized (recent) {
+            recent.values().removeIf(completed -> completed.expiresAt.isBefore(now));
+        }
+
+        return purged;
+    }
+
+    private Claim claim(String key, String emailId, String request) {
+        Instant now = now();
+
+        IdempotencyKey claim = new IdempotencyKey();
+        claim.setEmail(emailId);
+        claim.setIdempotencyKey(key);
+        claim.setRequest(request);
+        claim.setCreatedAt(now);
+        claim.setClaimedAt(now);
+        claim.setExpiresAt(now.plus(ttl));
+
+        // Flushed here so a second request with the key fails on uk_idempotency_email_key
+        return new Claim(idempotencyKeyRepo.saveAndFlush(claim).getId(), now);
+    }
+
+    // Keys claimed before claimedAt existed count from createdAt
+    private Claim takeOver(IdempotencyKey existing) {
+        Instant claimedAt = existing.getClaimedAt() != null ? existing.getClaimedAt() : existing.getCreatedAt();
+        Instant now = now();
+
+        if (claimedAt.plus(claimTimeout).isAfter(now)
+                || transactionTemplate.execute(status -> idempotencyKeyRepo.takeOver(existing.getId(), claimedAt, now)) == 0) {
+            rejectedInProgress.incrementAndGet();
+            throw new ConflictException("A request with this Idempotency-Key is still in progress");
+        }
+
+        takenOver.incrementAndGet();
+        log.warn("Idempotency-Key {} of {} claimed at {} was taken over by a retry", existing.getIdempotencyKey(),
+                existing.getEmail(), claimedAt);
+
+        return new Claim(existing.getId(), now);
+    }
+
+    private OrderDTO replay(IdempotencyKey existing, String cacheKey) {
+        OrderDTO orderDTO = fromJson(existing.getResponse());
+        remember(cacheKey, new Completed(existing.getRequest(), orderDTO, existing.getExpiresAt()));
+        replayedFromDatabase.incrementAndGet();
+
+        return orderDTO;
+    }
+
+    // Millisecond precision, so the claim time read back from any database compares equal
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static void checkSameRequest(String stored, String request) {
+        if (!stored.equals(request)) {
+            throw new APIException("Idempotency-Key was already used for a different order request");
+        }
+    }
+
+    private Completed cached(String cacheKey) {
+        synchronized (recent) {
+            Completed completed = recent.get(cacheKey);
+            return completed == null || completed.expiresAt.isBefore(Instant.now()) ? null : completed;
+        }
+    }
+
+    private void remember(String cacheKey, Completed completed) {
+        synchronized (recent) {
+            recent.put(cacheKey, completed);
+        }
+    }
+
+    private String toJson(OrderDTO orderDTO) {
+        try {
+            return objectMapper.writeValueAsString(orderDTO);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not store the order response", e);
+        }
+    }
+
+    private OrderDTO fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, OrderDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read the stored order response", e);
+        }
+    }
+
+    public long getReplayedFromCache() {
+        return replayedFromCache.get();
+    }
+
+    public long getReplayedFromDatabase() {
+        return replayedFromDatabase.get();
+    }
+
+    public long getRejectedInProgress() {
+        return rejectedInProgress.get();
+    }
+
+    public long getTakenOver() {
+        return takenOver.get();
+    }
+
+    private record Completed(String request, OrderDTO order, Instant expiresAt) {
+    }
+
+    private record Claim(Long id, Instant claimedAt) {
+    }
+}
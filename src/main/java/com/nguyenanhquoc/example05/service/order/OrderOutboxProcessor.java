@@ -0,0 +1,223 @@
+package com.nguyenanhquoc.example05.service.order;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.entity.OrderOutbox;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.exceptions.ConflictException;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.repository.OrderOutboxRepo;
+import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+import com.nguyenanhquoc.example05.utils.TransactionUtils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Order processing for project.order-processing=async: placing an order only writes it as PENDING
+ * with an outbox record, and project.order-workers virtual threads fulfil it afterwards. Each
+ * worker claims a batch of records for project.order-claim-timeout, then fulfils every order and
+ * deletes its record in one transaction, so a crashed worker's batch is simply claimed again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "project.order-processing", havingValue = "async")
+public class OrderOutboxProcessor {
+
+    @Autowired
+    private OrderOutboxRepo outboxRepo;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartLocks cartLocks;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${project.order-workers:4}")
+    private int workers;
+
+    @Value("${project.order-poll-interval:PT1S}")
+    private Duration pollInterval;
+
+    @Value("${project.order-claim-timeout:PT1M}")
+    private Duration claimTimeout;
+
+    // Released after each accepted order commits, so an idle worker starts at once instead of at the next poll
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    // Totals since startup, lag is from acceptance to fulfilment
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    // Called inside the transaction that writes the PENDING order
+    public void enqueue(Order order, Long cartId, String paymentMethod) {
+        if (outboxRepo.existsByCartId(cartId)) {
+            throw new ConflictException("An order for this cart is already being processed");
+        }
+
+        OrderOutbox record = new OrderOutbox();
+        record.setOrderId(order.getOrderId());
+        record.setCartId(cartId);
+        record.setEmail(order.getEmail());
+        record.setPaymentMethod(paymentMethod);
+        record.setCreatedAt(Instant.now());
+        outboxRepo.save(record);
+
+        TransactionUtils.afterCommit(wakeUps::release);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        running = true;
+
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofVirtual().name("order-worker-" + i).start(this::work));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        threads.forEach(Thread::interrupt);
+
+        for (Thread thread : threads) {
+            thread.join(Duration.ofSeconds(30));
+        }
+    }
+
+    private void work() {
+        while (running) {
+            List<OrderOutbox> claimed = List.of();
+
+            try {
+                claimed = claim();
+                claimed.forEach(this::process);
+            } catch (RuntimeException e) {
+                log.warn("Order worker failed to claim a batch", e);
+            }
+
+            // A full batch means there is probably more waiting
+            if (claimed.size() < AppConstants.ORDER_OUTBOX_BATCH_SIZE) {
+                try {
+                    if (wakeUps.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+                        wakeUps.drainPermits();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<OrderOutbox> claim() {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<OrderOutbox> records = new ArrayList<>(outboxRepo.findClaimable(now,
+                    PageRequest.of(0, AppConstants.ORDER_OUTBOX_BATCH_SIZE)));
+
+            // Without SKIP LOCKED a worker may have waited for rows another worker has just claimed
+            records.removeIf(record -> record.getClaimedUntil() != null && record.getClaimedUntil().isAfter(now));
+
+            records.forEach(record -> {
+                record.setClaimedUntil(now.plus(claimTimeout));
+                record.setAttempts(record.getAttempts() + 1);
+            });
+
+            return records;
+        });
+    }
+
+    private void process(OrderOutbox record) {
+        try {
+            // Same lock as the owner's cart changes, so the cart cannot change halfway through
+            cartLocks.withLock(record.getEmail(), () -> transactionTemplate.executeWithoutResult(status -> {
+                orderService.processOrder(record.getOrderId(), record.getCartId(), record.getPaymentMethod());
+                outboxRepo.deleteById(record.getOutboxId());
+            }));
+
+            long lag = Duration.between(record.getCreatedAt(), Instant.now()).toMillis();
+            lastLagMillis.set(lag);
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+            processed.incrementAndGet();
+        } catch (APIException | ResourceNotFoundException e) {
+            // The order can never be fulfilled, e.g. the cart is empty or stock ran out
+            fail(record, e.getMessage());
+        } catch (RuntimeException e) {
+            if (record.getAttempts() >= AppConstants.ORDER_OUTBOX_MAX_ATTEMPTS) {
+                log.error("Giving up on order {} after {} attempts", record.getOrderId(), record.getAttempts(), e);
+                fail(record, "could not be processed");
+            } else {
+                // Left claimed, it is retried once the claim runs out
+                log.warn("Order {} failed on attempt {}, will retry", record.getOrderId(), record.getAttempts(), e);
+                retried.incrementAndGet();
+            }
+        }
+    }
+
+    private void fail(OrderOutbox record, String reason) {
+        transactionTemplate.executeWithoutResult(status -> {
+            orderService.failOrder(record.getOrderId(), reason);
+            outboxRepo.deleteById(record.getOutboxId());
+        });
+
+        failed.incrementAndGet();
+    }
+
+    // Orders accepted and not yet fulfilled or failed
+    public long getQueueDepth() {
+        return outboxRepo.count();
+    }
+
+    // Age of the oldest waiting order, 0 when the queue is empty
+    public long getOldestWaitingMillis() {
+        Instant oldest = outboxRepo.findOldestCreatedAt();
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).toMillis());
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+}
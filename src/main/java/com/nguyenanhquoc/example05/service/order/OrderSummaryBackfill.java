@@ -0,0 +1,53 @@
+package com.nguyenanhquoc.example05.service.order;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.repository.OrderSummaryRepo;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Writes order_summaries rows for orders placed before the table existed, one INSERT ... SELECT per batch
+@Slf4j
+@Component
+public class OrderSummaryBackfill {
+
+    @Autowired
+    private OrderSummaryRepo orderSummaryRepo;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        int inserted = backfill();
+
+        if (inserted > 0) {
+            log.info("Backfilled order summaries for {} orders", inserted);
+        }
+    }
+
+    public int backfill() {
+        Pageable batch = PageRequest.of(0, AppConstants.ORDER_SUMMARY_BACKFILL_BATCH_SIZE);
+        int inserted = 0;
+
+        List<Long> orderIds = orderSummaryRepo.findOrderIdsWithoutSummary(0L, batch);
+
+        while (!orderIds.isEmpty()) {
+            List<Long> missing = orderIds;
+            inserted += transactionTemplate.execute(status -> orderSummaryRepo.insertSummaries(missing));
+
+            orderIds = orderSummaryRepo.findOrderIdsWithoutSummary(missing.get(missing.size() - 1), batch);
+        }
+
+        return inserted;
+    }
+}
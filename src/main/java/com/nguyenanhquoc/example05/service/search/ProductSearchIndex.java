@@ -0,0 +1,257 @@
+package com.nguyenanhquoc.example05.service.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Tokenized, lower-cased inverted index over product name and description.
+ * Query terms match indexed tokens by prefix and all terms must match (AND).
+ * Hits in the name weigh more than hits in the description. Each product also keeps the catalog
+ * fields results are sorted by, so a page of hits can be cut without reading every hit's row.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    public static final Comparator<Hit> BY_RELEVANCE = Comparator.comparingInt(Hit::getScore).reversed()
+            .thenComparing(Hit::getProductId);
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final Long productId;
+        private final int score;
+        private final String productName;
+        private final double price;
+        private final double discount;
+        private final double specialPrice;
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> (productId -> weight)
+    private NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+
+    // productId -> indexed terms and sort keys, the terms are needed to remove a product's postings
+    private Map<Long, Document> documents = new HashMap<>();
+
+    // Products changed while a rebuild runs, the last version of each (null when removed) is applied to the new index
+    private Map<Long, ProductDTO> changedDuringRebuild;
+
+    private final Object rebuilding = new Object();
+
+    public void index(ProductDTO product) {
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(product.getProductName()).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+        tokenize(product.getDescription()).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+
+        Long productId = product.getProductId();
+        Document document = new Document(weights.keySet(), product.getProductName(), product.getPrice(),
+                product.getDiscount(), product.getSpecialPrice());
+
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+            weights.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(productId, weight));
+            documents.put(productId, document);
+
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(productId, product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(productId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds a new index with the loader and swaps it in. Changes indexed while the loader runs are
+     * applied to the new index before the swap, they are at least as new as the rows it read.
+     */
+    public void rebuild(Consumer<ProductSearchIndex> loader) {
+        synchronized (rebuilding) {
+            ProductSearchIndex rebuilt = new ProductSearchIndex();
+
+            lock.writeLock().lock();
+            changedDuringRebuild = new HashMap<>();
+            lock.writeLock().unlock();
+
+            try {
+                loader.accept(rebuilt);
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                changedDuringRebuild = null;
+                lock.writeLock().unlock();
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild.forEach((productId, product) -> {
+                    if (product == null) {
+                        rebuilt.remove(productId);
+                    } else {
+                        rebuilt.index(product);
+                    }
+                });
+
+                postings = rebuilt.postings;
+                documents = rebuilt.documents;
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every product matching all query terms, unordered.
+     */
+    public List<Hit> search(String query) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> scores = null;
+
+            for (String term : terms) {
+                Map<Long, Integer> previous = scores;
+                Map<Long, Integer> termScores = new HashMap<>();
+
+                for (Map<Long, Integer> posting : postings.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                    posting.forEach((productId, weight) -> {
+                        if (previous == null || previous.containsKey(productId)) {
+                            termScores.merge(productId, weight, Integer::sum);
+                        }
+                    });
+                }
+
+                if (previous != null) {
+                    termScores.replaceAll((productId, score) -> score + previous.get(productId));
+                }
+
+                if (termScores.isEmpty()) {
+                    return List.of();
+                }
+
+                scores = termScores;
+            }
+
+            List<Hit> hits = new ArrayList<>(scores.size());
+            scores.forEach((productId, score) -> {
+                Document document = documents.get(productId);
+                hits.add(new Hit(productId, score, document.productName, document.price, document.discount,
+                        document.specialPrice));
+            });
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Orders hits the way the database would sort their rows, null for a field the index does not keep
+    public static Comparator<Hit> sortedBy(String sortBy, boolean ascending) {
+        Comparator<Hit> comparator = switch (sortBy) {
+            case "productId" -> Comparator.comparing(Hit::getProductId);
+            case "productName" -> Comparator.comparing(Hit::getProductName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            case "price" -> Comparator.comparingDouble(Hit::getPrice);
+            case "discount" -> Comparator.comparingDouble(Hit::getDiscount);
+            case "specialPrice" -> Comparator.comparingDouble(Hit::getSpecialPrice);
+            default -> null;
+        };
+
+        if (comparator == null) {
+            return null;
+        }
+
+        comparator = ascending ? comparator : comparator.reversed();
+
+        return comparator.thenComparing(Hit::getProductId);
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+
+        if (text == null) {
+            return tokens;
+        }
+
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    private void removeUnlocked(Long productId) {
+        Document document = documents.remove(productId);
+
+        if (document == null) {
+            return;
+        }
+
+        for (String term : document.terms) {
+            Map<Long, Integer> posting = postings.get(term);
+
+            if (posting != null) {
+                posting.remove(productId);
+
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private record Document(Set<String> terms, String productName, double price, double discount, double specialPrice) {
+    }
+}
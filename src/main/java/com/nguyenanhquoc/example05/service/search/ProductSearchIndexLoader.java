@@ -0,0 +1,25 @@
+package com.nguyenanhquoc.example05.service.search;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.service.ProductService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+public class ProductSearchIndexLoader {
+
+    @Autowired
+    private ProductService productService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        int indexedProducts = productService.rebuildSearchIndex();
+
+        log.info("Product search index built with {} products", indexedProducts);
+    }
+}
@@ -0,0 +1,56 @@
+package com.nguyenanhquoc.example05.utils;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+public final class FileTransferUtils {
+
+    // Request attributes understood by Tomcat's NIO connector, the same ones its DefaultServlet uses
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Below this size a buffered copy is cheaper than handing the file to the poller, as in Tomcat's DefaultServlet
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    private FileTransferUtils() {
+    }
+
+    /**
+     * Writes count bytes of the file starting at position as the response body.
+     * Content-Length must already be set. When the connector supports sendfile the kernel
+     * copies the bytes straight to the socket after the handler returns; otherwise the file
+     * channel is transferred to the response stream without going through an InputStream.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response, Path file, long position,
+            long count) throws IOException {
+        if (count >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, position);
+            request.setAttribute(SENDFILE_END, position + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long written = 0;
+
+            while (written < count) {
+                long transferred = channel.transferTo(position + written, count - written, target);
+
+                if (transferred <= 0) {
+                    break;
+                }
+                written += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.nguyenanhquoc.example05.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Many threads buying one SKU. Compares the old read, check in Java, write back path with the
+ * conditional UPDATE used by InventoryService. The sold, left and oversold counters show up next to
+ * the throughput in the JMH results.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=InventoryContentionBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class InventoryContentionBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:inventory-bench;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    private static final long PRODUCT_ID = 1;
+    private static final int STOCK = 200_000;
+
+    @State(Scope.Benchmark)
+    public static class Sku {
+        private final AtomicLong sold = new AtomicLong();
+
+        // Buyers still in the iteration, the last one to stop reads what is left
+        private final AtomicInteger buying = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void createTable() throws SQLException {
+            try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                    Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS product (product_id BIGINT PRIMARY KEY, quantity INT)");
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void restock(BenchmarkParams params) throws SQLException {
+            sold.set(0);
+            buying.set(params.getThreads());
+
+            try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                    Statement statement = connection.createStatement()) {
+                statement.execute("MERGE INTO product KEY (product_id) VALUES (" + PRODUCT_ID + ", " + STOCK + ")");
+            }
+        }
+    }
+
+    // Summed over the buyers by JMH, so left and oversold are only set by one of them
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sales {
+        public long sold;
+        public long left;
+        public long oversold;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            sold = 0;
+            left = 0;
+            oversold = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void count(Sku sku) throws SQLException {
+            sku.sold.addAndGet(sold);
+
+            if (sku.buying.decrementAndGet() > 0) {
+                return;
+            }
+
+            try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                    Statement statement = connection.createStatement();
+                    ResultSet rows = statement.executeQuery("SELECT quantity FROM product WHERE product_id = " + PRODUCT_ID)) {
+                rows.next();
+                left = rows.getLong(1);
+                oversold = sku.sold.get() - (STOCK - left);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Buyer {
+        private Connection connection;
+        private PreparedStatement read;
+        private PreparedStatement write;
+        private PreparedStatement take;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            connection = DriverManager.getConnection(URL, "sa", "");
+            read = connection.prepareStatement("SELECT quantity FROM product WHERE product_id = ?");
+            write = connection.prepareStatement("UPDATE product SET quantity = ? WHERE product_id = ?");
+            take = connection.prepareStatement("UPDATE product SET quantity = quantity - ? WHERE product_id = ? AND quantity >= ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public boolean readModifyWrite(Buyer buyer, Sales sales) throws SQLException {
+        int quantity;
+
+        buyer.read.setLong(1, PRODUCT_ID);
+        try (ResultSet rows = buyer.read.executeQuery()) {
+            rows.next();
+            quantity = rows.getInt(1);
+        }
+
+        if (quantity < 1) {
+            return false;
+        }
+
+        buyer.write.setInt(1, quantity - 1);
+        buyer.write.setLong(2, PRODUCT_ID);
+        buyer.write.executeUpdate();
+        sales.sold++;
+        return true;
+    }
+
+    @Benchmark
+    public boolean conditionalUpdate(Buyer buyer, Sales sales) throws SQLException {
+        buyer.take.setInt(1, 1);
+        buyer.take.setLong(2, PRODUCT_ID);
+        buyer.take.setInt(3, 1);
+
+        if (buyer.take.executeUpdate() == 1) {
+            sales.sold++;
+            return true;
+        }
+
+        return false;
+    }
+}
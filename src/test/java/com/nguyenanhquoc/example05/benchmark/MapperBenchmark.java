@@ -0,0 +1,188 @@
+package com.nguyenanhquoc.example05.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nguyenanhquoc.example05.entity.Address;
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.entity.OrderItem;
+import com.nguyenanhquoc.example05.entity.Payment;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.entity.Role;
+import com.nguyenanhquoc.example05.entity.User;
+import com.nguyenanhquoc.example05.mapper.DtoMapper;
+import com.nguyenanhquoc.example05.payloads.dto.AddressDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.dto.UserDTO;
+
+/**
+ * Compares ModelMapper with the hand-written DtoMapper on the hot response types.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="MapperBenchmark -prof gc"
+ * The gc profiler reports gc.alloc.rate.norm, the bytes allocated per mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    private static final int CART_ITEMS = 10;
+
+    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    private Product product;
+    private Cart cart;
+    private Order order;
+    private User user;
+    private Address address;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        dtoMapper = new DtoMapper();
+
+        product = product(1L);
+
+        cart = new Cart();
+        cart.setCartId(1L);
+        cart.setTotalPrice(0.0);
+
+        order = new Order();
+        order.setOrderId(1L);
+        order.setEmail("buyer@example.com");
+        order.setOrderDate(LocalDate.now());
+        order.setOrderStatus("Order Accepted !");
+        order.setTotalAmount(0.0);
+
+        Payment payment = new Payment();
+        payment.setPaymentId(1L);
+        payment.setPaymentMethod("card");
+        order.setPayment(payment);
+
+        for (long i = 1; i <= CART_ITEMS; i++) {
+            Product item = product(i);
+
+            CartItem cartItem = new CartItem();
+            cartItem.setCartItemId(i);
+            cartItem.setProduct(item);
+            cartItem.setQuantity(1);
+            cartItem.setProductPrice(item.getSpecialPrice());
+            cart.getCartItems().add(cartItem);
+            cart.setTotalPrice(cart.getTotalPrice() + item.getSpecialPrice());
+
+            OrderItem orderItem = new OrderItem();
+            orderItem.setOrderItemId(i);
+            orderItem.setProduct(item);
+            orderItem.setQuantity(1);
+            orderItem.setOrderedProductPrice(item.getSpecialPrice());
+            order.getOrderItems().add(orderItem);
+            order.setTotalAmount(order.getTotalAmount() + item.getSpecialPrice());
+        }
+
+        address = new Address("Vietnam", "Ho Chi Minh", "Thu Duc", "700000", "Vo Van Ngan", "Block A1");
+        address.setAddressId(1L);
+
+        Role role = new Role();
+        role.setRoleId(102L);
+        role.setRoleName("USER");
+
+        user = new User();
+        user.setUserId(1L);
+        user.setFirstName("Nguyen");
+        user.setLastName("Quoc");
+        user.setMobileNumber("0901234567");
+        user.setEmail("buyer@example.com");
+        user.setPassword("encoded");
+        user.getRoles().add(role);
+        user.setAddresses(List.of(address));
+    }
+
+    @Benchmark
+    public ProductDTO productModelMapper() {
+        return modelMapper.map(product, ProductDTO.class);
+    }
+
+    @Benchmark
+    public ProductDTO productDtoMapper() {
+        return dtoMapper.toProductDTO(product);
+    }
+
+    @Benchmark
+    public CartDTO cartModelMapper() {
+        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
+        cartDTO.setProducts(cart.getCartItems().stream().map(item -> modelMapper.map(item.getProduct(), ProductDTO.class))
+                .toList());
+        return cartDTO;
+    }
+
+    @Benchmark
+    public CartDTO cartDtoMapper() {
+        return dtoMapper.toCartDTO(cart);
+    }
+
+    @Benchmark
+    public OrderDTO orderModelMapper() {
+        return modelMapper.map(order, OrderDTO.class);
+    }
+
+    @Benchmark
+    public OrderDTO orderDtoMapper() {
+        return dtoMapper.toOrderDTO(order);
+    }
+
+    @Benchmark
+    public UserDTO userModelMapper() {
+        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        userDTO.setAddress(modelMapper.map(user.getAddresses().get(0), AddressDTO.class));
+        return userDTO;
+    }
+
+    @Benchmark
+    public UserDTO userDtoMapper() {
+        return dtoMapper.toUserDTO(user);
+    }
+
+    @Benchmark
+    public AddressDTO addressModelMapper() {
+        return modelMapper.map(address, AddressDTO.class);
+    }
+
+    @Benchmark
+    public AddressDTO addressDtoMapper() {
+        return dtoMapper.toAddressDTO(address);
+    }
+
+    private static Product product(long id) {
+        Product product = new Product();
+        product.setProductId(id);
+        product.setProductName("Product " + id);
+        product.setImage("default.png");
+        product.setDescription("Description of product " + id);
+        product.setQuantity(100);
+        product.setPrice(100.0);
+        product.setDiscount(10.0);
+        product.setSpecialPrice(90.0);
+        return product;
+    }
+}
@@ -0,0 +1,186 @@
+package com.nguyenanhquoc.example05.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing one order of a given size. Compares the old path, one identity INSERT per row and one
+ * DELETE per cart line, with ids taken from a table-hilo block, batched INSERTs and a single
+ * DELETE for the cart. The statements each order sent show up as a counter in the JMH results.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=OrderPlacementBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderPlacementBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:order-bench;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final long CART_ID = 1;
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Param({ "1", "10", "40" })
+    private int orderSize;
+
+    private Connection connection;
+    private PreparedStatement fillCart;
+    private PreparedStatement insertOrderIdentity;
+    private PreparedStatement insertItemIdentity;
+    private PreparedStatement deleteLine;
+    private PreparedStatement nextBlock;
+    private PreparedStatement insertOrder;
+    private PreparedStatement insertItem;
+    private PreparedStatement clearCart;
+
+    private long nextId;
+    private long lastId;
+
+    @Setup(Level.Trial)
+    public void connect() throws SQLException {
+        connection = DriverManager.getConnection(URL, "sa", "");
+        connection.setAutoCommit(false);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS cart_items (cart_id BIGINT, product_id BIGINT, quantity INT)");
+            statement.execute("CREATE TABLE IF NOT EXISTS orders_identity (order_id BIGINT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(64))");
+            statement.execute("CREATE TABLE IF NOT EXISTS order_items_identity (order_item_id BIGINT AUTO_INCREMENT PRIMARY KEY, order_id BIGINT, product_id BIGINT, quantity INT)");
+            statement.execute("CREATE TABLE IF NOT EXISTS orders (order_id BIGINT PRIMARY KEY, email VARCHAR(64))");
+            statement.execute("CREATE TABLE IF NOT EXISTS order_items (order_item_id BIGINT PRIMARY KEY, order_id BIGINT, product_id BIGINT, quantity INT)");
+            statement.execute("CREATE TABLE IF NOT EXISTS id_generator (id_name VARCHAR(32) PRIMARY KEY, next_val BIGINT)");
+            statement.execute("MERGE INTO id_generator KEY (id_name) VALUES ('orders', 1)");
+        }
+        connection.commit();
+
+        fillCart = connection.prepareStatement("INSERT INTO cart_items VALUES (?, ?, 1)");
+        insertOrderIdentity = connection.prepareStatement("INSERT INTO orders_identity (email) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+        insertItemIdentity = connection.prepareStatement("INSERT INTO order_items_identity (order_id, product_id, quantity) VALUES (?, ?, 1)", Statement.RETURN_GENERATED_KEYS);
+        deleteLine = connection.prepareStatement("DELETE FROM cart_items WHERE cart_id = ? AND product_id = ?");
+        nextBlock = connection.prepareStatement("UPDATE id_generator SET next_val = next_val + " + ALLOCATION_SIZE + " WHERE id_name = 'orders'");
+        insertOrder = connection.prepareStatement("INSERT INTO orders VALUES (?, ?)");
+        insertItem = connection.prepareStatement("INSERT INTO order_items VALUES (?, ?, ?, 1)");
+        clearCart = connection.prepareStatement("DELETE FROM cart_items WHERE cart_id = ?");
+    }
+
+    @Setup(Level.Invocation)
+    public void fillCart() throws SQLException {
+        for (int i = 0; i < orderSize; i++) {
+            fillCart.setLong(1, CART_ID);
+            fillCart.setLong(2, i);
+            fillCart.addBatch();
+        }
+
+        fillCart.executeBatch();
+        connection.commit();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Statements {
+        private long sent;
+        private long orders;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            sent = 0;
+            orders = 0;
+        }
+
+        public double statementsPerOrder() {
+            return orders == 0 ? 0 : (double) sent / orders;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long identityInsertsAndLineDeletes(Statements statements) throws SQLException {
+        insertOrderIdentity.setString(1, "bench@example.com");
+        insertOrderIdentity.executeUpdate();
+        long orderId = generatedKey(insertOrderIdentity);
+
+        for (int i = 0; i < orderSize; i++) {
+            insertItemIdentity.setLong(1, orderId);
+            insertItemIdentity.setLong(2, i);
+            insertItemIdentity.executeUpdate();
+            generatedKey(insertItemIdentity);
+
+            deleteLine.setLong(1, CART_ID);
+            deleteLine.setLong(2, i);
+            deleteLine.executeUpdate();
+        }
+
+        connection.commit();
+        statements.sent += 1 + 2L * orderSize;
+        statements.orders++;
+        return orderId;
+    }
+
+    @Benchmark
+    public long batchedInsertsAndOneDelete(Statements statements) throws SQLException {
+        long orderId = nextId(statements);
+        insertOrder.setLong(1, orderId);
+        insertOrder.setString(2, "bench@example.com");
+        insertOrder.executeUpdate();
+
+        for (int i = 0; i < orderSize; i++) {
+            insertItem.setLong(1, nextId(statements));
+            insertItem.setLong(2, orderId);
+            insertItem.setLong(3, i);
+            insertItem.addBatch();
+        }
+
+        // One round trip per batch with rewriteBatchedStatements on MySQL
+        insertItem.executeBatch();
+
+        clearCart.setLong(1, CART_ID);
+        clearCart.executeUpdate();
+
+        connection.commit();
+        statements.sent += 3;
+        statements.orders++;
+        return orderId;
+    }
+
+    // A block of ids costs one UPDATE every ALLOCATION_SIZE rows, it is counted with the row that fetched it
+    private long nextId(Statements statements) throws SQLException {
+        if (nextId == lastId) {
+            nextBlock.executeUpdate();
+            statements.sent++;
+            lastId = nextId + ALLOCATION_SIZE;
+        }
+
+        return nextId++;
+    }
+
+    private static long generatedKey(PreparedStatement statement) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            keys.next();
+            return keys.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.nguyenanhquoc.example05.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex;
+
+/**
+ * Compares the old LIKE '%keyword%' page + count queries with the inverted index.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ProductSearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ProductSearchBenchmark {
+
+    private static final String[] WORDS = { "phone", "laptop", "charger", "cable", "wireless", "gaming", "mouse",
+            "keyboard", "monitor", "speaker", "camera", "tablet", "watch", "headset", "router", "printer", "case",
+            "black", "white", "silver", "pro", "mini", "ultra", "portable", "smart" };
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "100000", "1000000" })
+    private int products;
+
+    @Param({ "laptop", "wireless gaming" })
+    private String keyword;
+
+    private Connection connection;
+    private PreparedStatement pageQuery;
+    private PreparedStatement countQuery;
+    private ProductSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:search-bench-" + products + ";MODE=MySQL", "sa", "");
+        index = new ProductSearchIndex();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE product (product_id BIGINT PRIMARY KEY, product_name VARCHAR(255), "
+                    + "description VARCHAR(255))");
+        }
+
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO product VALUES (?, ?, ?)")) {
+            for (long id = 1; id <= products; id++) {
+                String name = randomText(random, 3);
+                String description = randomText(random, 8);
+
+                insert.setLong(1, id);
+                insert.setString(2, name);
+                insert.setString(3, description);
+                insert.addBatch();
+                index.index(new ProductDTO(id, name, null, description, 10, 20.0, 0.0, 20.0));
+
+                if (id % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+
+        connection.commit();
+
+        pageQuery = connection.prepareStatement("SELECT product_id, product_name, description FROM product "
+                + "WHERE LOWER(product_name) LIKE LOWER(CONCAT('%', ?, '%')) ORDER BY product_id LIMIT ?");
+        countQuery = connection.prepareStatement("SELECT COUNT(*) FROM product "
+                + "WHERE LOWER(product_name) LIKE LOWER(CONCAT('%', ?, '%'))");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void likeQuery(Blackhole blackhole) throws SQLException {
+        pageQuery.setString(1, keyword);
+        pageQuery.setInt(2, PAGE_SIZE);
+
+        try (ResultSet rows = pageQuery.executeQuery()) {
+            while (rows.next()) {
+                blackhole.consume(rows.getLong(1));
+            }
+        }
+
+        countQuery.setString(1, keyword);
+
+        try (ResultSet count = countQuery.executeQuery()) {
+            count.next();
+            blackhole.consume(count.getLong(1));
+        }
+    }
+
+    @Benchmark
+    public void invertedIndex(Blackhole blackhole) {
+        List<ProductSearchIndex.Hit> hits = index.search(keyword);
+        hits.sort(Comparator.comparing(ProductSearchIndex.Hit::getProductId));
+
+        blackhole.consume(new ArrayList<>(hits.subList(0, Math.min(PAGE_SIZE, hits.size()))));
+        blackhole.consume(hits.size());
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return text.toString();
+    }
+}
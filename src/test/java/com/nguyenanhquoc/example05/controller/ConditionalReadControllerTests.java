@@ -0,0 +1,108 @@
+package com.nguyenanhquoc.example05.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.service.ProductService;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConditionalReadControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void unchangedCartIsAnsweredWithNotModifiedFromOneQuery() throws Exception {
+		String email = testData.newUser("etag.cart@example.com");
+		Long productId = testData.newProduct("ETag teapot");
+		Long cartId = cartService.addProductToCart(email, productId, 1).getCartId();
+		String url = "/api/public/users/" + email + "/carts/" + cartId;
+
+		String eTag = mockMvc.perform(get(url)).andExpect(status().isFound())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).startsWith("W/\"");
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isNotModified());
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+		cartService.updateProductQuantityInCart(cartId, productId, 2);
+
+		String changed = mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isFound())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(changed).isNotEqualTo(eTag);
+	}
+
+	@Test
+	void cartETagChangesWithTheImageOfAProductInIt() throws Exception {
+		String email = testData.newUser("etag.image@example.com");
+		Long productId = testData.newProduct("ETag vase");
+		Long cartId = cartService.addProductToCart(email, productId, 1).getCartId();
+		String url = "/api/public/users/" + email + "/carts/" + cartId;
+
+		String eTag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		productService.updateProductImage(productId,
+				new MockMultipartFile("image", "vase.png", "image/png", "etag vase image".getBytes(StandardCharsets.UTF_8)));
+
+		String changed = mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isFound())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(changed).isNotEqualTo(eTag);
+	}
+
+	@Test
+	void orderETagsChangeWithTheOrderStatus() throws Exception {
+		String email = testData.newUser("etag.order@example.com");
+		Long cartId = cartService.addProductToCart(email, testData.newProduct("ETag kettle"), 1).getCartId();
+		Long orderId = orderService.placeOrder(email, cartId, "card").getOrderId();
+		String orderUrl = "/api/public/users/" + email + "/orders/" + orderId;
+		String ordersUrl = "/api/public/users/" + email + "/orders";
+
+		String orderETag = mockMvc.perform(get(orderUrl)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		String ordersETag = mockMvc.perform(get(ordersUrl)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get(orderUrl).header(HttpHeaders.IF_NONE_MATCH, orderETag)).andExpect(status().isNotModified());
+		mockMvc.perform(get(ordersUrl).header(HttpHeaders.IF_NONE_MATCH, ordersETag)).andExpect(status().isNotModified());
+
+		orderService.updateOrder(email, orderId, "Shipped");
+
+		mockMvc.perform(get(orderUrl).header(HttpHeaders.IF_NONE_MATCH, orderETag)).andExpect(status().isFound());
+		mockMvc.perform(get(ordersUrl).header(HttpHeaders.IF_NONE_MATCH, ordersETag)).andExpect(status().isFound());
+	}
+}
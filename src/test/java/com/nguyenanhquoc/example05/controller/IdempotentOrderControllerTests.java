@@ -0,0 +1,131 @@
+package com.nguyenanhquoc.example05.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.jayway.jsonpath.JsonPath;
+import com.nguyenanhquoc.example05.entity.IdempotencyKey;
+import com.nguyenanhquoc.example05.repository.IdempotencyKeyRepo;
+import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.order.OrderIdempotency;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class IdempotentOrderControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderIdempotency orderIdempotency;
+
+	@Autowired
+	private IdempotencyKeyRepo idempotencyKeyRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void retriedOrderIsPlacedOnce() throws Exception {
+		String email = testData.newUser("idempotent.order@example.com");
+		Long productId = testData.newProduct("Idempotent kettle");
+		Long cartId = cartService.addProductToCart(email, productId, 2).getCartId();
+		String url = "/api/public/users/" + email + "/carts/" + cartId + "/payments/card/order";
+
+		String first = mockMvc.perform(post(url).header("Idempotency-Key", "checkout-1"))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+		Integer orderId = JsonPath.read(first, "$.orderId");
+
+		// The retry is answered from the recent responses, without a second order
+		mockMvc.perform(post(url).header("Idempotency-Key", "checkout-1"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.orderId").value(orderId));
+		assertThat(orderIdempotency.getReplayedFromCache()).isEqualTo(1);
+
+		assertThat(orderRepo.findAllByEmail(email)).hasSize(1);
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(8);
+
+		mockMvc.perform(post("/api/public/users/" + email + "/carts/" + cartId + "/payments/cash/order")
+				.header("Idempotency-Key", "checkout-1"))
+				.andExpect(status().isBadRequest());
+
+		// Once the key has expired the request runs again, and finds the cart already ordered
+		assertThat(orderIdempotency.purge(Instant.now().plus(Duration.ofDays(2)))).isPositive();
+		mockMvc.perform(post(url).header("Idempotency-Key", "checkout-1"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.message").value("Cart is empty"));
+		assertThat(idempotencyKeyRepo.findByEmailAndIdempotencyKey(email, "checkout-1")).isEmpty();
+	}
+
+	@Test
+	void keyStillInProgressIsRejected() throws Exception {
+		String email = testData.newUser("idempotent.busy@example.com");
+		Long productId = testData.newProduct("Idempotent toaster");
+		Long cartId = cartService.addProductToCart(email, productId, 1).getCartId();
+
+		IdempotencyKey claim = new IdempotencyKey();
+		claim.setEmail(email);
+		claim.setIdempotencyKey("checkout-2");
+		claim.setRequest(cartId + "/card");
+		claim.setCreatedAt(Instant.now());
+		claim.setExpiresAt(Instant.now().plus(Duration.ofHours(1)));
+		idempotencyKeyRepo.save(claim);
+
+		mockMvc.perform(post("/api/public/users/" + email + "/carts/" + cartId + "/payments/card/order")
+				.header("Idempotency-Key", "checkout-2"))
+				.andExpect(status().isConflict());
+
+		assertThat(orderRepo.findAllByEmail(email)).isEmpty();
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(10);
+	}
+
+	@Test
+	void expiredClaimIsTakenOverByTheRetry() throws Exception {
+		String email = testData.newUser("idempotent.stuck@example.com");
+		Long productId = testData.newProduct("Idempotent blender");
+		Long cartId = cartService.addProductToCart(email, productId, 1).getCartId();
+
+		// Left behind by a request that never finished
+		Instant claimedAt = Instant.now().minus(Duration.ofMinutes(5));
+		IdempotencyKey claim = new IdempotencyKey();
+		claim.setEmail(email);
+		claim.setIdempotencyKey("checkout-3");
+		claim.setRequest(cartId + "/card");
+		claim.setCreatedAt(claimedAt);
+		claim.setClaimedAt(claimedAt);
+		claim.setExpiresAt(claimedAt.plus(Duration.ofHours(1)));
+		idempotencyKeyRepo.save(claim);
+
+		mockMvc.perform(post("/api/public/users/" + email + "/carts/" + cartId + "/payments/card/order")
+				.header("Idempotency-Key", "checkout-3"))
+				.andExpect(status().isCreated());
+
+		assertThat(orderIdempotency.getTakenOver()).isEqualTo(1);
+		assertThat(orderRepo.findAllByEmail(email)).hasSize(1);
+		assertThat(idempotencyKeyRepo.findByEmailAndIdempotencyKey(email, "checkout-3").get().getResponse()).isNotNull();
+	}
+}
@@ -0,0 +1,39 @@
+package com.nguyenanhquoc.example05.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetricsControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	@WithMockUser(authorities = "ADMIN")
+	void backgroundComponentCountersAreListed() throws Exception {
+		mockMvc.perform(get("/api/admin/metrics"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartLocks.contended").isNumber())
+				.andExpect(jsonPath("$.cartLocks.timedOut").isNumber())
+				.andExpect(jsonPath("$.abandonedCarts.cartsSwept").isNumber())
+				.andExpect(jsonPath("$.orderIdempotency.replayedFromCache").isNumber())
+				// Orders are placed synchronously here, so there is no outbox to report on
+				.andExpect(jsonPath("$.orderOutbox").doesNotExist());
+	}
+
+	@Test
+	@WithMockUser(authorities = "USER")
+	void onlyAdminsCanReadThem() throws Exception {
+		mockMvc.perform(get("/api/admin/metrics")).andExpect(status().isForbidden());
+	}
+}
@@ -0,0 +1,110 @@
+package com.nguyenanhquoc.example05.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.jayway.jsonpath.JsonPath;
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.service.CartService;
+import com.nguyenanhquoc.example05.service.OrderService;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser(authorities = "ADMIN")
+class OrderExportControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void ordersAreExportedLineByLineWithFilters() throws Exception {
+		String email = testData.newUser("order.export@example.com");
+		Long shippedId = placeOrder(email, "Export kettle", "Export mug");
+		Long openId = placeOrder(email, "Export toaster");
+
+		orderService.updateOrder(email, shippedId, "Export Shipped");
+
+		// Only the shipped order, one line per item
+		String ndjson = mockMvc.perform(get("/api/admin/orders/export").param("status", "Export Shipped"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"))
+				.andReturn().getResponse().getContentAsString();
+		List<String> lines = ndjson.lines().toList();
+
+		assertThat(lines).hasSize(2);
+		assertThat(lines).allSatisfy(line -> assertThat((Integer) JsonPath.read(line, "$.orderId")).isEqualTo(shippedId.intValue()));
+		assertThat(lines).extracting(line -> (String) JsonPath.read(line, "$.productName")).containsExactly("Export kettle", "Export mug");
+		assertThat((String) JsonPath.read(lines.get(0), "$.paymentMethod")).isEqualTo("card");
+
+		// Moved out of the date range
+		Order open = orderRepo.findById(openId).get();
+		open.setOrderDate(LocalDate.now().minusYears(2));
+		orderRepo.save(open);
+
+		String csv = mockMvc.perform(get("/api/admin/orders/export").param("format", "csv")
+				.param("from", LocalDate.now().minusMonths(18).toString()))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		assertThat(csv.lines().findFirst()).hasValue("orderId,email,orderDate,orderStatus,paymentMethod,totalAmount,orderItemId,"
+				+ "productId,productName,quantity,discount,orderedProductPrice");
+		assertThat(csv).contains("Export kettle").doesNotContain("Export toaster");
+
+		mockMvc.perform(get("/api/admin/orders/export").param("format", "xml")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void failedStatusMatchesEveryReason() throws Exception {
+		String email = testData.newUser("order.export.failed@example.com");
+		Long failedId = placeOrder(email, "Export blender");
+
+		orderService.updateOrder(email, failedId, AppConstants.ORDER_STATUS_FAILED + "Payment declined");
+
+		String ndjson = mockMvc.perform(get("/api/admin/orders/export").param("status", "Order Failed"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		List<String> lines = ndjson.lines().toList();
+
+		assertThat(lines).extracting(line -> ((Number) JsonPath.read(line, "$.orderId")).longValue()).contains(failedId);
+		assertThat(lines).allSatisfy(line -> assertThat((String) JsonPath.read(line, "$.orderStatus"))
+				.startsWith(AppConstants.ORDER_STATUS_FAILED));
+	}
+
+	private Long placeOrder(String email, String... productNames) {
+		List<CartItemChange> basket = Arrays.stream(productNames)
+				.map(name -> new CartItemChange(testData.newProduct(name), 1))
+				.toList();
+		Long cartId = cartService.addProductsToCart(email, basket).getCartId();
+
+		return orderService.placeOrder(email, cartId, "card").getOrderId();
+	}
+}
@@ -0,0 +1,154 @@
+package com.nguyenanhquoc.example05.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.nguyenanhquoc.example05.service.ImageVariantService;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ProductImageControllerTests {
+
+	private static final String FILE_NAME = "image-controller-test.png";
+	private static final String BYTES = "0123456789abcdefghij";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ImageVariantService imageVariantService;
+
+	@Value("${project.image}")
+	private String path;
+
+	@BeforeEach
+	void storeImage() throws IOException {
+		Path folder = Paths.get(path);
+		Files.createDirectories(folder);
+		Files.writeString(folder.resolve(FILE_NAME), BYTES, StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	void servesWholeImageWithValidators() throws Exception {
+		mockMvc.perform(get("/api/public/products/image/" + FILE_NAME))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, BYTES.length()))
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+				.andExpect(header().exists(HttpHeaders.ETAG))
+				.andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+				.andExpect(content().string(BYTES));
+	}
+
+	@Test
+	void answersMatchingETagWithNotModified() throws Exception {
+		String eTag = mockMvc.perform(get("/api/public/products/image/" + FILE_NAME))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/api/public/products/image/" + FILE_NAME).header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+	}
+
+	@Test
+	void servesByteRanges() throws Exception {
+		mockMvc.perform(get("/api/public/products/image/" + FILE_NAME).header(HttpHeaders.RANGE, "bytes=10-14"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-14/20"))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 5))
+				.andExpect(content().string("abcde"));
+
+		mockMvc.perform(get("/api/public/products/image/" + FILE_NAME).header(HttpHeaders.RANGE, "bytes=50-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+
+		mockMvc.perform(get("/api/public/products/image/" + FILE_NAME).header(HttpHeaders.RANGE, "bytes=abc"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 20));
+	}
+
+	@Test
+	void servesNearestPrecomputedVariant() throws Exception {
+		Path original = Paths.get(path).resolve("variant-controller-test.png");
+		ImageIO.write(new BufferedImage(600, 300, BufferedImage.TYPE_INT_ARGB), "png", original.toFile());
+		imageVariantService.createVariants(original);
+
+		byte[] thumbnail = mockMvc.perform(get("/api/public/products/image/variant-controller-test.png").param("size", "100"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public"))
+				.andReturn().getResponse().getContentAsByteArray();
+		BufferedImage served = ImageIO.read(new ByteArrayInputStream(thumbnail));
+
+		assertThat(served.getWidth()).isEqualTo(128);
+		assertThat(served.getHeight()).isEqualTo(64);
+
+		// Larger than every variant the original can have, so the original is the final answer
+		mockMvc.perform(get("/api/public/products/image/variant-controller-test.png").param("size", "800"))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, Files.size(original)))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public"));
+	}
+
+	@Test
+	void servesOriginalWhenNoWriterTakesTheScaledImage() throws Exception {
+		// The wbmp writer only takes bilevel images, the scaled RGB copy is refused
+		Path original = Paths.get(path).resolve("variant-controller-test.wbmp");
+		ImageIO.write(new BufferedImage(600, 300, BufferedImage.TYPE_BYTE_BINARY), "wbmp", original.toFile());
+		imageVariantService.deleteVariants(original);
+		imageVariantService.createVariants(original);
+
+		assertThat(imageVariantService.hasVariants(original)).isTrue();
+		assertThat(imageVariantService.nearestVariant(original, 100)).isEqualTo(original);
+
+		mockMvc.perform(get("/api/public/products/image/variant-controller-test.wbmp").param("size", "100"))
+				.andExpect(status().isOk())
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, Files.size(original)));
+	}
+
+	@Test
+	void originalStandsInBrieflyWhileVariantsArePending() throws Exception {
+		Path original = Paths.get(path).resolve("pending-controller-test.png");
+		ImageIO.write(new BufferedImage(600, 300, BufferedImage.TYPE_INT_ARGB), "png", original.toFile());
+		imageVariantService.deleteVariants(original);
+
+		mockMvc.perform(get("/api/public/products/image/pending-controller-test.png").param("size", "100"))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, Files.size(original)))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, public"));
+
+		// The request queued the variants, so the stand-in is not served for long
+		for (int i = 0; i < 300 && !imageVariantService.hasVariants(original); i++) {
+			Thread.sleep(100);
+		}
+
+		mockMvc.perform(get("/api/public/products/image/pending-controller-test.png").param("size", "100"))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public"));
+	}
+
+	@Test
+	void answersMissingImageWithNotFound() throws Exception {
+		mockMvc.perform(get("/api/public/products/image/missing.png"))
+				.andExpect(status().isNotFound());
+	}
+}
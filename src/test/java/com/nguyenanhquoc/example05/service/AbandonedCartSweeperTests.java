@@ -0,0 +1,64 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.service.cart.AbandonedCartSweeper;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+class AbandonedCartSweeperTests {
+
+	@Autowired
+	private AbandonedCartSweeper abandonedCartSweeper;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void cartsUntouchedSinceTheCutoffAreEmptiedAndTheirStockReleased() {
+		Long productId = testData.newProduct("Sweeper lamp", 10);
+		Long abandonedCartId = cartService.addProductToCart(testData.newUser("abandoned.cart@example.com"), productId, 3).getCartId();
+		Long activeCartId = cartService.addProductToCart(testData.newUser("active.cart@example.com"), productId, 2).getCartId();
+
+		Cart abandoned = cartRepo.findById(abandonedCartId).get();
+		abandoned.setLastModified(Instant.now().minus(Duration.ofDays(10)));
+		cartRepo.save(abandoned);
+
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(5);
+		long releasedBefore = abandonedCartSweeper.getUnitsReleased();
+
+		int[] swept = abandonedCartSweeper.sweep(Instant.now().minus(Duration.ofDays(7)));
+
+		assertThat(swept).containsExactly(1, 3);
+		assertThat(abandonedCartSweeper.getUnitsReleased() - releasedBefore).isEqualTo(3);
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(8);
+		assertThat(cartRepo.findById(abandonedCartId).get().getTotalPrice()).isZero();
+		assertThat(cartItemRepo.countByProductProductId(productId)).isEqualTo(1);
+		assertThat(cartItemRepo.findCartItemByProductIdAndCartId(activeCartId, productId).getQuantity()).isEqualTo(2);
+
+		// Empty carts are not listed again
+		assertThat(abandonedCartSweeper.sweep(Instant.now().minus(Duration.ofDays(7)))).containsExactly(0, 0);
+	}
+}
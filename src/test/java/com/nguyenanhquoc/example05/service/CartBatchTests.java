@@ -0,0 +1,87 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class CartBatchTests {
+
+	private static final int BASKET_SIZE = 30;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void savedBasketIsRestoredInOneCall() {
+		String email = testData.newUser("basket.restore@example.com");
+		List<Product> products = testData.newProducts("Basket item", BASKET_SIZE, 10);
+
+		List<CartItemChange> basket = new ArrayList<>();
+		products.forEach(product -> basket.add(new CartItemChange(product.getProductId(), 2)));
+		basket.add(new CartItemChange(products.get(0).getProductId(), 1));
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		CartDTO cartDTO = cartService.addProductsToCart(email, basket);
+
+		// Products, cart items, reservations and stock counters are each read with one IN query, not one per line
+		assertThat(statistics.getPrepareStatementCount()).isLessThan(BASKET_SIZE * 2 + 15);
+		assertThat(cartDTO.getProducts()).hasSize(BASKET_SIZE);
+		assertThat(cartDTO.getTotalPrice()).isEqualTo((BASKET_SIZE * 2 + 1) * 20.0);
+		assertThat(inventoryService.getAvailableStock(products.get(0).getProductId())).isEqualTo(7);
+
+		cartDTO = cartService.addProductsToCart(email, List.of(new CartItemChange(products.get(1).getProductId(), 3)));
+
+		assertThat(cartDTO.getProducts()).hasSize(BASKET_SIZE);
+		assertThat(cartDTO.getTotalPrice()).isEqualTo((BASKET_SIZE * 2 + 4) * 20.0);
+		assertThat(inventoryService.getAvailableStock(products.get(1).getProductId())).isEqualTo(5);
+	}
+
+	@Test
+	void batchIsRejectedAsAWholeWhenOneProductIsShort() {
+		String email = testData.newUser("basket.short@example.com");
+		List<Product> products = testData.newProducts("Short basket item", 2, 3);
+		Long plenty = products.get(0).getProductId();
+		Long scarce = products.get(1).getProductId();
+
+		assertThatThrownBy(() -> cartService.addProductsToCart(email,
+				List.of(new CartItemChange(plenty, 2), new CartItemChange(scarce, 4))))
+				.isInstanceOf(APIException.class)
+				.hasMessage("Not enough stock for Short basket item 1");
+
+		assertThat(inventoryService.getAvailableStock(plenty)).isEqualTo(3);
+		assertThat(inventoryService.getAvailableStock(scarce)).isEqualTo(3);
+		assertThat(cartItemRepo.countByProductProductId(plenty)).isZero();
+	}
+}
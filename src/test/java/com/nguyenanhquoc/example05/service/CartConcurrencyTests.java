@@ -0,0 +1,106 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.UserRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest(properties = {
+		"project.cart-lock-timeout=PT30S",
+		"spring.datasource.url=jdbc:h2:mem:example05-cart-locks;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1" })
+class CartConcurrencyTests {
+
+	private static final int THREADS = 32;
+	private static final int REQUESTS = 300;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private UserRepo userRepo;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void parallelAddsForOneUserNeverDuplicateTheCartOrItsLines() throws Exception {
+		String first = testData.newUser("parallel.first@example.com");
+		String second = testData.newUser("parallel.second@example.com");
+		Long productId = testData.newProduct("Parallel mug", 1000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<>();
+
+		for (int i = 0; i < REQUESTS; i++) {
+			String email = i % 3 == 0 ? second : first;
+			results.add(executor.submit(() -> {
+				start.await();
+				return cartService.addProductToCart(email, productId, 1);
+			}));
+		}
+
+		start.countDown();
+		for (Future<?> result : results) {
+			result.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		assertLines(first, productId, REQUESTS - REQUESTS / 3);
+		assertLines(second, productId, REQUESTS / 3);
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(1000 - REQUESTS);
+	}
+
+	@Test
+	void staleCartFromAnotherNodeIsRejected() {
+		String email = testData.newUser("stale.cart@example.com");
+		Long productId = testData.newProduct("Stale kettle", 10);
+		Long cartId = cartService.addProductToCart(email, productId, 1).getCartId();
+
+		Cart stale = cartRepo.findById(cartId).get();
+
+		cartService.updateProductQuantityInCart(cartId, productId, 2);
+
+		stale.setTotalPrice(0.0);
+		assertThatThrownBy(() -> cartRepo.save(stale)).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+	}
+
+	private void assertLines(String email, Long productId, int quantity) {
+		transactionTemplate.executeWithoutResult(status -> {
+			Cart cart = cartRepo.findByUser(userRepo.findByEmail(email).get()).get();
+			List<CartItem> lines = cart.getCartItems();
+
+			assertThat(lines).hasSize(1);
+			assertThat(lines.get(0).getProduct().getProductId()).isEqualTo(productId);
+			assertThat(lines.get(0).getQuantity()).isEqualTo(quantity);
+			assertThat(cart.getTotalPrice()).isEqualTo(quantity * 20.0);
+		});
+	}
+}
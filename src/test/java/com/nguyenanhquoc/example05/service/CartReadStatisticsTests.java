@@ -0,0 +1,63 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class CartReadStatisticsTests {
+
+	private static final int LINES = 8;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void cartViewLoadsCartItemsAndProductsWithoutBackReferences() {
+		String email = testData.newUser("cart.view@example.com");
+		List<CartItemChange> basket = new ArrayList<>();
+
+		for (Product product : testData.newProducts("Cart view item", LINES, 10)) {
+			basket.add(new CartItemChange(product.getProductId(), 1));
+		}
+
+		Long cartId = cartService.addProductsToCart(email, basket).getCartId();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		CartDTO cartDTO = cartService.getCart(email, cartId);
+
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+		assertThat(cartDTO.getProducts()).hasSize(LINES);
+		assertThat(cartDTO.getTotalPrice()).isEqualTo(LINES * 20.0);
+
+		statistics.clear();
+
+		List<CartDTO> carts = cartService.getAllCarts();
+
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+		assertThat(carts).filteredOn(cart -> cart.getCartId().equals(cartId))
+				.singleElement().satisfies(cart -> assertThat(cart.getProducts()).hasSize(LINES));
+	}
+}
@@ -0,0 +1,114 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class CartRepricingTests {
+
+	private static final int CARTS = 30;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private CartRepricingService cartRepricingService;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void priceChangeRepricesEveryCartWithTwoStatements() {
+		Product product = newProduct("Repriced blender", 100.0);
+		Product other = newProduct("Untouched mixer", 10.0);
+		List<Long> cartIds = newCarts(product, other);
+
+		Product update = new Product();
+		update.setProductName(product.getProductName());
+		update.setDescription(product.getDescription());
+		update.setPrice(80.0);
+		update.setDiscount(0);
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		productService.updateProduct(product.getProductId(), update);
+
+		// Before: a load and two saves per cart. Now: count, one update of cart_items and one of carts
+		assertThat(statistics.getPrepareStatementCount()).isLessThan(15);
+		assertCarts(cartIds, 80.0);
+	}
+
+	@Test
+	void chunkedRepricingReadsTheCurrentPrice() {
+		Product product = newProduct("Chunk repriced grill", 50.0);
+		Product other = newProduct("Chunk untouched pan", 10.0);
+		List<Long> cartIds = newCarts(product, other);
+
+		Product current = productRepo.findById(product.getProductId()).get();
+		current.setSpecialPrice(45.0);
+		productRepo.save(current);
+
+		assertThat(cartRepricingService.repriceCartsInChunks(product.getProductId())).isEqualTo(CARTS);
+		assertCarts(cartIds, 45.0);
+	}
+
+	private void assertCarts(List<Long> cartIds, double newPrice) {
+		for (Long cartId : cartIds) {
+			assertThat(cartRepo.findById(cartId).get().getTotalPrice()).isEqualTo(newPrice * 2 + 10.0);
+		}
+
+		assertThat(cartItemRepo.findAll()).filteredOn(ci -> cartIds.contains(ci.getCart().getCartId()))
+				.extracting(CartItem::getProductPrice).containsOnly(newPrice, 10.0);
+	}
+
+	private List<Long> newCarts(Product product, Product other) {
+		List<Long> cartIds = new ArrayList<>();
+
+		for (int i = 0; i < CARTS; i++) {
+			cartIds.add(testData.newCart(List.of(product, other), List.of(2, 1)).getCartId());
+		}
+
+		return cartIds;
+	}
+
+	private Product newProduct(String name, double price) {
+		Product product = new Product();
+		product.setProductName(name);
+		product.setDescription(name + " description");
+		product.setQuantity(100);
+		product.setPrice(price);
+		product.setSpecialPrice(price);
+		product.setCategory(testData.newCategory(name + " category"));
+		return productRepo.save(product);
+	}
+}
@@ -0,0 +1,126 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.repository.StoredImageRepo;
+
+@SpringBootTest
+class ImageStoreTests {
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private StoredImageRepo storedImageRepo;
+
+	@Autowired
+	private ImageVariantService imageVariantService;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${project.image}")
+	private String path;
+
+	@Test
+	void identicalUploadsShareOneReferenceCountedFile() throws Exception {
+		byte[] bytes = "same vendor image".getBytes(StandardCharsets.UTF_8);
+
+		String first = transactionTemplate.execute(status -> upload(new MockMultipartFile("image", "a.JPG", "image/jpeg", bytes)));
+		String second = transactionTemplate.execute(status -> upload(new MockMultipartFile("image", "b.jpg", "image/jpeg", bytes)));
+
+		assertThat(first).isEqualTo(second).matches("[0-9a-f]{64}\\.jpg");
+		assertThat(storedImageRepo.findById(first)).get().extracting("refCount").isEqualTo(2);
+
+		Path stored = fileService.getImage(path, first, null).getPath();
+		assertThat(stored.getParent().getFileName().toString()).isEqualTo(first.substring(2, 4));
+		assertThat(stored.getParent().getParent().getFileName().toString()).isEqualTo(first.substring(0, 2));
+
+		transactionTemplate.executeWithoutResult(status -> fileService.releaseImage(path, first));
+		assertThat(Files.exists(stored)).isTrue();
+
+		transactionTemplate.executeWithoutResult(status -> fileService.releaseImage(path, first));
+		assertThat(Files.exists(stored)).isFalse();
+		assertThat(storedImageRepo.existsById(first)).isFalse();
+	}
+
+	@Test
+	void rolledBackUploadGivesItsReferenceBack() throws Exception {
+		byte[] bytes = "rolled back vendor image".getBytes(StandardCharsets.UTF_8);
+		String[] uploaded = new String[1];
+
+		assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+			uploaded[0] = upload(new MockMultipartFile("image", "c.jpg", "image/jpeg", bytes));
+			throw new IllegalStateException("product update failed");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(storedImageRepo.existsById(uploaded[0])).isFalse();
+		assertThatThrownBy(() -> fileService.getImage(path, uploaded[0], null)).isInstanceOf(ResourceNotFoundException.class);
+	}
+
+	@Test
+	void duplicateUploadRecreatesMissingVariants() throws Exception {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(600, 300, BufferedImage.TYPE_INT_RGB), "png", png);
+		MockMultipartFile image = new MockMultipartFile("image", "d.png", "image/png", png.toByteArray());
+
+		String fileName = transactionTemplate.execute(status -> upload(image));
+		Path stored = fileService.getImage(path, fileName, null).getPath();
+		awaitVariants(stored);
+
+		// Lost, e.g. the image queue was full when the first upload was made
+		imageVariantService.deleteVariants(stored);
+
+		transactionTemplate.execute(status -> upload(image));
+		awaitVariants(stored);
+
+		assertThat(imageVariantService.nearestVariant(stored, 100)).isNotEqualTo(stored);
+	}
+
+	@Test
+	void legacyNamesResolveFromTheFlatFolder() throws Exception {
+		Path legacy = Paths.get(path).resolve("0b8e7f3c-legacy.png");
+		Files.createDirectories(legacy.getParent());
+		Files.writeString(legacy, "legacy");
+
+		assertThat(fileService.getImage(path, "0b8e7f3c-legacy.png", null).getLength()).isEqualTo(6);
+
+		// Not reference counted, so releasing it leaves the file alone
+		transactionTemplate.executeWithoutResult(status -> fileService.releaseImage(path, "0b8e7f3c-legacy.png"));
+		assertThat(Files.exists(legacy)).isTrue();
+	}
+
+	private void awaitVariants(Path original) throws InterruptedException {
+		for (int i = 0; i < 300 && !imageVariantService.hasVariants(original); i++) {
+			Thread.sleep(100);
+		}
+
+		assertThat(imageVariantService.hasVariants(original)).isTrue();
+	}
+
+	private String upload(MockMultipartFile file) {
+		try {
+			return fileService.uploadImage(path, file);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+
+@SpringBootTest
+class InventoryContentionTests {
+
+	private static final int STOCK = 50;
+	private static final int THREADS = 16;
+	private static final int ATTEMPTS = 10;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Test
+	void concurrentBuyersNeverOversell() throws Exception {
+		Product product = new Product();
+		product.setProductName("Flash sale item");
+		product.setDescription("Only fifty of these");
+		product.setQuantity(STOCK);
+		Long productId = productRepo.save(product).getProductId();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+
+		for (int i = 0; i < THREADS; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				int taken = 0;
+				for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+					if (inventoryService.takeStock(productId, 1)) {
+						taken++;
+					}
+				}
+				return taken;
+			}));
+		}
+
+		start.countDown();
+		int sold = 0;
+		for (Future<Integer> result : results) {
+			sold += result.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		assertThat(sold).isEqualTo(STOCK);
+		assertThat(productRepo.findById(productId).get().getQuantity()).isZero();
+
+		inventoryService.returnStock(productId, 3);
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(3);
+		assertThat(inventoryService.takeStock(productId, 4)).isFalse();
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(3);
+	}
+
+	@Test
+	void staleCounterIsDroppedWhenTheFailedSaleRollsBack() {
+		Product product = new Product();
+		product.setProductName("Sold elsewhere");
+		product.setDescription("Another instance sold these");
+		product.setQuantity(5);
+		Long productId = productRepo.save(product).getProductId();
+
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(5);
+
+		// Sold behind this instance's counter
+		transactionTemplate.executeWithoutResult(status -> productRepo.setStock(productId, 0));
+
+		assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+			assertThat(inventoryService.takeStock(productId, 2)).isFalse();
+			throw new IllegalStateException("checkout failed");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(inventoryService.getAvailableStock(productId)).isZero();
+	}
+}
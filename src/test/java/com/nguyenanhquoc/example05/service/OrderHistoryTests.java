@@ -0,0 +1,111 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.payloads.dto.OrderSummaryDTO;
+import com.nguyenanhquoc.example05.payloads.response.OrderSummaryResponse;
+import com.nguyenanhquoc.example05.repository.OrderSummaryRepo;
+import com.nguyenanhquoc.example05.service.order.OrderSummaryBackfill;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class OrderHistoryTests {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderSummaryRepo orderSummaryRepo;
+
+	@Autowired
+	private OrderSummaryBackfill orderSummaryBackfill;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void historyIsPagedNewestFirstFromSummaries() {
+		String email = testData.newUser("order.history@example.com");
+		List<Long> orderIds = placeOrders(email, 3);
+
+		orderService.updateOrder(email, orderIds.get(0), "Shipped");
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		OrderSummaryResponse first = orderService.getOrdersByUser(email, null, 2);
+
+		// One query for the page, no order, item or payment rows
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(first.getContent()).extracting(OrderSummaryDTO::getOrderId).containsExactly(orderIds.get(2), orderIds.get(1));
+		assertThat(first.getContent().get(0).getItemCount()).isEqualTo(3);
+		assertThat(first.getContent().get(0).getPaymentMethod()).isEqualTo("card");
+		assertThat(first.isLastPage()).isFalse();
+
+		OrderSummaryResponse second = orderService.getOrdersByUser(email, first.getNextCursor(), 2);
+
+		assertThat(second.getContent()).extracting(OrderSummaryDTO::getOrderId).containsExactly(orderIds.get(0));
+		assertThat(second.getContent().get(0).getOrderStatus()).isEqualTo("Shipped");
+		assertThat(second.isLastPage()).isTrue();
+		assertThat(second.getNextCursor()).isNull();
+	}
+
+	@Test
+	void ordersWithoutSummaryAreBackfilled() {
+		String email = testData.newUser("order.backfill@example.com");
+		List<Long> orderIds = placeOrders(email, 2);
+
+		orderSummaryRepo.deleteAllById(orderIds);
+
+		assertThat(orderSummaryBackfill.backfill()).isEqualTo(2);
+		assertThat(orderSummaryRepo.findById(orderIds.get(1)).get())
+				.satisfies(summary -> {
+					assertThat(summary.getEmail()).isEqualTo(email);
+					assertThat(summary.getItemCount()).isEqualTo(3);
+					assertThat(summary.getPaymentMethod()).isEqualTo("card");
+					assertThat(summary.getOrderStatus()).isEqualTo("Order Accepted!");
+				});
+		assertThat(orderSummaryBackfill.backfill()).isZero();
+
+		// A batch found just before another instance wrote the summaries inserts nothing
+		assertThat(transactionTemplate.<Integer>execute(status -> orderSummaryRepo.insertSummaries(orderIds))).isZero();
+	}
+
+	private List<Long> placeOrders(String email, int count) {
+		List<Long> orderIds = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			List<CartItemChange> basket = new ArrayList<>();
+			for (int line = 0; line < 3; line++) {
+				basket.add(new CartItemChange(testData.newProduct(email + " item " + i + "." + line), 1));
+			}
+
+			Long cartId = cartService.addProductsToCart(email, basket).getCartId();
+			orderIds.add(orderService.placeOrder(email, cartId, "card").getOrderId());
+		}
+
+		return orderIds;
+	}
+}
@@ -0,0 +1,164 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.config.AppConstants;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.cart.CartLocks;
+import com.nguyenanhquoc.example05.service.order.OrderOutboxProcessor;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest(properties = {
+		"project.order-processing=async",
+		"project.order-workers=2",
+		"project.order-poll-interval=PT0.2S",
+		"spring.datasource.url=jdbc:h2:mem:example05-outbox;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1" })
+class OrderOutboxTests {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private OrderOutboxProcessor orderOutbox;
+
+	@Autowired
+	private CartLocks cartLocks;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void acceptedOrderIsFulfilledByAWorker() {
+		String email = testData.newUser("outbox.order@example.com");
+		Long kettle = testData.newProduct("Outbox kettle", 5);
+		Long cartId = cartService.addProductsToCart(email, List.of(new CartItemChange(kettle, 2))).getCartId();
+
+		OrderDTO orderDTO = orderService.placeOrder(email, cartId, "card");
+
+		assertThat(orderDTO.getOrderStatus()).isEqualTo(AppConstants.ORDER_STATUS_PENDING);
+		await(() -> !AppConstants.ORDER_STATUS_PENDING.equals(status(orderDTO.getOrderId())));
+
+		assertThat(status(orderDTO.getOrderId())).isEqualTo(AppConstants.ORDER_STATUS_ACCEPTED);
+		assertThat(productRepo.findById(kettle).get().getQuantity()).isEqualTo(3);
+		assertThat(inventoryService.getAvailableStock(kettle)).isEqualTo(3);
+		assertThat(cartItemRepo.countByProductProductId(kettle)).isZero();
+		assertThat(orderOutbox.getQueueDepth()).isZero();
+		assertThat(orderOutbox.getProcessed()).isPositive();
+	}
+
+	@Test
+	void orderThatCannotBeFulfilledIsMarkedFailed() {
+		String email = testData.newUser("outbox.short@example.com");
+		Long toaster = testData.newProduct("Outbox toaster", 3);
+		Long cartId = cartService.addProductsToCart(email, List.of(new CartItemChange(toaster, 3))).getCartId();
+
+		// The hold is gone and the stock sold elsewhere before a worker gets to the order
+		inventoryService.releaseReservation(cartId, toaster);
+		assertThat(inventoryService.takeStock(toaster, 2)).isTrue();
+
+		OrderDTO orderDTO = orderService.placeOrder(email, cartId, "card");
+		await(() -> !AppConstants.ORDER_STATUS_PENDING.equals(status(orderDTO.getOrderId())));
+
+		assertThat(status(orderDTO.getOrderId())).isEqualTo(AppConstants.ORDER_STATUS_FAILED + "Not enough stock for Outbox toaster");
+		assertThat(productRepo.findById(toaster).get().getQuantity()).isEqualTo(1);
+		assertThat(cartItemRepo.countByProductProductId(toaster)).isEqualTo(1);
+		assertThat(orderOutbox.getFailed()).isPositive();
+	}
+
+	@Test
+	void workerFulfilsTheLinesAcceptedNotTheCartItFindsLater() {
+		String email = testData.newUser("outbox.snapshot@example.com");
+		Long kettle = testData.newProduct("Snapshot kettle", 5);
+		Long mug = testData.newProduct("Snapshot mug", 5);
+		Long cartId = cartService.addProductsToCart(email, List.of(new CartItemChange(kettle, 2))).getCartId();
+
+		// Holding the owner's cart lock keeps the worker out until the cart has changed
+		OrderDTO orderDTO = cartLocks.withLock(email, () -> {
+			OrderDTO accepted = orderService.placeOrder(email, cartId, "card");
+			cartService.addProductsToCart(email, List.of(new CartItemChange(mug, 1)));
+			return accepted;
+		});
+
+		assertThat(orderDTO.getOrderItems()).hasSize(1);
+		await(() -> !AppConstants.ORDER_STATUS_PENDING.equals(status(orderDTO.getOrderId())));
+
+		assertThat(status(orderDTO.getOrderId())).isEqualTo(AppConstants.ORDER_STATUS_ACCEPTED);
+		assertThat(orderRepo.findById(orderDTO.getOrderId()).get().getTotalAmount()).isEqualTo(40.0);
+		assertThat(productRepo.findById(kettle).get().getQuantity()).isEqualTo(3);
+		assertThat(productRepo.findById(mug).get().getQuantity()).isEqualTo(5);
+		assertThat(cartItemRepo.countByProductProductId(kettle)).isZero();
+		assertThat(cartItemRepo.countByProductProductId(mug)).isEqualTo(1);
+	}
+
+	@Test
+	void unitsAddedAfterAcceptanceStayInTheCart() {
+		String email = testData.newUser("outbox.more@example.com");
+		Long kettle = testData.newProduct("More kettle", 5);
+		Long cartId = cartService.addProductsToCart(email, List.of(new CartItemChange(kettle, 2))).getCartId();
+
+		// One more of the ordered product goes into the cart before the worker gets to the order
+		OrderDTO orderDTO = cartLocks.withLock(email, () -> {
+			OrderDTO accepted = orderService.placeOrder(email, cartId, "card");
+			cartService.addProductsToCart(email, List.of(new CartItemChange(kettle, 1)));
+			return accepted;
+		});
+
+		await(() -> !AppConstants.ORDER_STATUS_PENDING.equals(status(orderDTO.getOrderId())));
+
+		assertThat(status(orderDTO.getOrderId())).isEqualTo(AppConstants.ORDER_STATUS_ACCEPTED);
+		assertThat(orderRepo.findById(orderDTO.getOrderId()).get().getTotalAmount()).isEqualTo(40.0);
+		assertThat(productRepo.findById(kettle).get().getQuantity()).isEqualTo(3);
+		assertThat(cartItemRepo.findCartItemsByProductIdsAndCartId(cartId, List.of(kettle)))
+				.singleElement().extracting(CartItem::getQuantity).isEqualTo(1);
+
+		// The added unit is still held for the cart
+		assertThat(inventoryService.getAvailableStock(kettle)).isEqualTo(2);
+	}
+
+	private String status(Long orderId) {
+		return orderRepo.findById(orderId).get().getOrderStatus();
+	}
+
+	private void await(BooleanSupplier condition) {
+		Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+
+		while (!condition.getAsBoolean()) {
+			assertThat(Instant.now()).as("order still pending").isBefore(deadline);
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
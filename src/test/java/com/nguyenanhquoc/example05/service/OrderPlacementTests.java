@@ -0,0 +1,117 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.payloads.dto.CartItemChange;
+import com.nguyenanhquoc.example05.payloads.dto.OrderDTO;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class OrderPlacementTests {
+
+	private static final int LINES = 40;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void largeOrderIsWrittenInBatchesAndClearsTheCartAtOnce() {
+		String email = testData.newUser("large.order@example.com");
+		List<Product> products = testData.newProducts("Order line", LINES, 5);
+		List<CartItemChange> basket = new ArrayList<>();
+		products.forEach(product -> basket.add(new CartItemChange(product.getProductId(), 2)));
+		Long cartId = cartService.addProductsToCart(email, basket).getCartId();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		OrderDTO orderDTO = orderService.placeOrder(email, cartId, "card");
+
+		// One conditional stock UPDATE per product is left; order items, holds and cart lines go out as sets
+		assertThat(statistics.getPrepareStatementCount()).isLessThan(LINES + 25);
+		assertThat(orderDTO.getOrderItems()).hasSize(LINES);
+		assertThat(cartItemRepo.countByProductProductId(products.get(0).getProductId())).isZero();
+		assertThat(cartRepo.findById(cartId).get().getTotalPrice()).isZero();
+		assertThat(productRepo.findById(products.get(0).getProductId()).get().getQuantity()).isEqualTo(3);
+		assertThat(inventoryService.getAvailableStock(products.get(0).getProductId())).isEqualTo(3);
+	}
+
+	@Test
+	void orderIsRolledBackWhenOneLineCannotBeSold() {
+		String email = testData.newUser("short.order@example.com");
+		List<Product> products = testData.newProducts("Short order line", 2, 5);
+		Long plenty = products.get(0).getProductId();
+		Long scarce = products.get(1).getProductId();
+
+		Long cartId = cartService.addProductsToCart(email,
+				List.of(new CartItemChange(plenty, 2), new CartItemChange(scarce, 5))).getCartId();
+
+		// Another sale takes the stock the cart was holding after its hold was dropped
+		inventoryService.releaseReservation(cartId, scarce);
+		assertThat(inventoryService.takeStock(scarce, 4)).isTrue();
+
+		assertThatThrownBy(() -> orderService.placeOrder(email, cartId, "card"))
+				.isInstanceOf(APIException.class)
+				.hasMessage("Not enough stock for Short order line 1");
+
+		assertThat(productRepo.findById(plenty).get().getQuantity()).isEqualTo(5);
+		assertThat(inventoryService.getAvailableStock(plenty)).isEqualTo(3);
+		assertThat(cartItemRepo.countByProductProductId(plenty)).isEqualTo(1);
+	}
+
+	@Test
+	void checkoutRemovesOnlyTheLinesThatWereOrdered() {
+		String email = testData.newUser("partial.clear@example.com");
+		List<Product> products = testData.newProducts("Partial clear line", 2, 5);
+		Long ordered = products.get(0).getProductId();
+		Long added = products.get(1).getProductId();
+
+		Long cartId = cartService.addProductsToCart(email,
+				List.of(new CartItemChange(ordered, 1), new CartItemChange(added, 2))).getCartId();
+
+		// As if the second line was added after the order read the cart
+		cartService.removeOrderedItems(cartId, List.of(cartItemRepo.findCartItemByProductIdAndCartId(cartId, ordered)));
+
+		assertThat(cartItemRepo.findCartItemByProductIdAndCartId(cartId, ordered)).isNull();
+		assertThat(cartItemRepo.findCartItemByProductIdAndCartId(cartId, added).getQuantity()).isEqualTo(2);
+		assertThat(cartRepo.findById(cartId).get().getTotalPrice()).isEqualTo(40.0);
+	}
+}
@@ -0,0 +1,132 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.catalog.ProductDedupBackfill;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+class ProductDedupConcurrencyTests {
+
+	private static final int THREADS = 8;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private TestData testData;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private ProductDedupBackfill productDedupBackfill;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Test
+	void concurrentInsertsOfTheSameProductKeepExactlyOne() throws Exception {
+		Long categoryId = testData.newCategory("Dedup concurrent").getCategoryId();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+
+		for (int i = 0; i < THREADS; i++) {
+			// Same product once case and whitespace are normalized
+			String name = i % 2 == 0 ? "Vendor phone" : "  vendor   PHONE ";
+			results.add(executor.submit(() -> {
+				start.await();
+				try {
+					productService.addProduct(categoryId, TestData.product(name, "Same vendor description"));
+					return true;
+				} catch (APIException e) {
+					return false;
+				}
+			}));
+		}
+
+		start.countDown();
+		int inserted = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get(30, TimeUnit.SECONDS)) {
+				inserted++;
+			}
+		}
+		executor.shutdown();
+
+		assertThat(inserted).isEqualTo(1);
+		assertThat(productRepo.countByCategoryCategoryId(categoryId)).isEqualTo(1);
+	}
+
+	@Test
+	void duplicateIsReportedAsApiExceptionAndOtherCategoriesAreIndependent() {
+		Long categoryId = testData.newCategory("Dedup sequential").getCategoryId();
+		Long otherCategoryId = testData.newCategory("Dedup other").getCategoryId();
+
+		productService.addProduct(categoryId, TestData.product("Desk lamp", "Warm white lamp"));
+
+		assertThatThrownBy(() -> productService.addProduct(categoryId, TestData.product("DESK LAMP", "warm  white lamp")))
+				.isInstanceOf(APIException.class)
+				.hasMessage("Product already exists !!!");
+
+		productService.addProduct(otherCategoryId, TestData.product("Desk lamp", "Warm white lamp"));
+		assertThat(productRepo.countByCategoryCategoryId(otherCategoryId)).isEqualTo(1);
+	}
+
+	@Test
+	void backfillHashesEarlierProductsAndLeavesDuplicatesWithout() {
+		Long categoryId = testData.newCategory("Dedup backfill").getCategoryId();
+
+		// As if they were created before the column existed, so the second lamp got in
+		Long lampId = productService.addProduct(categoryId, TestData.product("Backfill lamp", "Warm white lamp")).getProductId();
+		transactionTemplate.executeWithoutResult(status -> productRepo.setDedupHash(lampId, null));
+		Long copyId = productService.addProduct(categoryId, TestData.product("BACKFILL LAMP", "warm white lamp")).getProductId();
+		Long chairId = productService.addProduct(categoryId, TestData.product("Backfill chair", "Oak chair")).getProductId();
+		transactionTemplate.executeWithoutResult(status -> {
+			productRepo.setDedupHash(copyId, null);
+			productRepo.setDedupHash(chairId, null);
+		});
+
+		assertThat(productDedupBackfill.backfill()).isEqualTo(2);
+
+		assertThat(productRepo.findById(lampId).get().getDedupHash())
+				.isEqualTo(Product.dedupHash("Backfill lamp", "Warm white lamp"));
+		assertThat(productRepo.findById(chairId).get().getDedupHash()).isNotNull();
+		assertThat(productRepo.findById(copyId).get().getDedupHash()).isNull();
+	}
+
+	@Test
+	void backfillSkipsRetiredProductsWithoutCategory() {
+		Long categoryId = testData.newCategory("Dedup retired").getCategoryId();
+
+		Long retiredId = productService.addProduct(categoryId, TestData.product("Retired lamp", "Old lamp")).getProductId();
+		transactionTemplate.executeWithoutResult(status -> {
+			productRepo.setDedupHash(retiredId, null);
+			productRepo.retireByProductIds(List.of(retiredId));
+		});
+
+		productDedupBackfill.backfill();
+
+		Product retired = productRepo.findById(retiredId).get();
+		assertThat(retired.isRetired()).isTrue();
+		assertThat(retired.getDedupHash()).isNull();
+	}
+}
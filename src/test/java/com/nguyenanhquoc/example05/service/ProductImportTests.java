@@ -0,0 +1,114 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse;
+import com.nguyenanhquoc.example05.payloads.response.ProductImportResponse.RowError;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class ProductImportTests {
+
+	private static final int ROWS = 120;
+
+	@Autowired
+	private ProductImportService productImportService;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void importsCsvInBatchesAndReportsBadRows() {
+		Category category = new Category();
+		category.setCategoryName("Import csv");
+		Long categoryId = categoryRepo.save(category).getCategoryId();
+
+		StringBuilder csv = new StringBuilder("categoryId,productName,description,quantity,price,discount\n");
+		for (int i = 0; i < ROWS; i++) {
+			csv.append(categoryId).append(",Imported ").append(i).append(",\"Bulk, imported row\",5,100,10\n");
+		}
+		csv.append(categoryId).append(",Imported 0,\"Bulk, imported row\",5,100,10\n");
+		csv.append(categoryId).append(",Bad price,Bulk imported row,5,abc,10\n");
+		csv.append("999999,No category,Bulk imported row,5,100,10\n");
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		ProductImportResponse report = productImportService.importProducts(stream(csv.toString()), true);
+
+		assertThat(report.getTotalRows()).isEqualTo(ROWS + 3);
+		assertThat(report.getImported()).isEqualTo(ROWS);
+		assertThat(report.getDuplicates()).isEqualTo(1);
+		assertThat(report.getFailed()).isEqualTo(2);
+		assertThat(report.getErrors()).extracting(RowError::getRow).containsExactlyInAnyOrder(122L, 123L, 121L);
+		assertThat(productRepo.countByCategoryCategoryId(categoryId)).isEqualTo(ROWS);
+		assertThat(productRepo.findProductDTOsByCategory(categoryId, PageRequest.of(0, 1))
+				.get(0).getSpecialPrice()).isEqualTo(90.0);
+
+		// Batched inserts and pooled ids: a handful of statements instead of one or two per row
+		assertThat(statistics.getPrepareStatementCount()).isLessThan(20);
+	}
+
+	@Test
+	void importsNdjsonAndSkipsProductsAlreadyInTheCatalog() {
+		Category category = new Category();
+		category.setCategoryName("Import ndjson");
+		Long categoryId = categoryRepo.save(category).getCategoryId();
+
+		String first = "{\"categoryId\":" + categoryId + ",\"productName\":\"Json product\",\"description\":\"From ndjson\","
+				+ "\"quantity\":3,\"price\":50,\"discount\":0}\n";
+
+		assertThat(productImportService.importProducts(stream(first), false).getImported()).isEqualTo(1);
+
+		ProductImportResponse again = productImportService.importProducts(stream(first + first.replace("Json product", "Json other")), false);
+
+		assertThat(again.getImported()).isEqualTo(1);
+		assertThat(again.getDuplicates()).isEqualTo(1);
+		assertThat(productRepo.countByCategoryCategoryId(categoryId)).isEqualTo(2);
+	}
+
+	@Test
+	void retriesAFailedChunkRowByRowAndRejectsOversizedQuantities() {
+		Category category = new Category();
+		category.setCategoryName("Import retry");
+		Long categoryId = categoryRepo.save(category).getCategoryId();
+
+		String csv = "categoryId,productName,description,quantity,price,discount\n"
+				+ categoryId + ",Retried one,Imported row,5,100,0\n"
+				+ categoryId + "," + "Too long ".repeat(40) + ",Imported row,5,100,0\n"
+				+ categoryId + ",Retried two,Imported row,5,100,0\n"
+				+ categoryId + ",Huge stock,Imported row,4294967297,100,0\n";
+
+		ProductImportResponse report = productImportService.importProducts(stream(csv), true);
+
+		// The name does not fit its column, which fails the chunk's insert
+		assertThat(report.getImported()).isEqualTo(2);
+		assertThat(report.getFailed()).isEqualTo(2);
+		assertThat(report.getErrors()).extracting(RowError::getRow).containsExactlyInAnyOrder(2L, 4L);
+		assertThat(productRepo.countByCategoryCategoryId(categoryId)).isEqualTo(2);
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,260 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.response.ProductResponse;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.KeysetPager;
+import com.nguyenanhquoc.example05.repository.KeysetPager.KeysetPage;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.catalog.CategoryProductCounts;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+class ProductReadModelStatisticsTests {
+
+	private static final int PRODUCTS = 10;
+	private static final int CARTS = 20;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private ModelMapper modelMapper;
+
+	@Autowired
+	private KeysetPager keysetPager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private CategoryProductCounts categoryProductCounts;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void seedCatalog() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		if (categoryRepo.findByCategoryName("Statistics") != null) {
+			return;
+		}
+
+		transactionTemplate.executeWithoutResult(status -> {
+			Category category = new Category();
+			category.setCategoryName("Statistics");
+			category = categoryRepo.save(category);
+
+			for (int i = 0; i < PRODUCTS; i++) {
+				Product product = new Product();
+				product.setProductName("Product " + i);
+				product.setDescription("Description " + i);
+				product.setQuantity(1000);
+				product.setPrice(10.0);
+				product.setCategory(category);
+				product = productRepo.save(product);
+
+				// Every product sits in many carts, which is what made the EAGER collection expensive
+				for (int j = 0; j < CARTS; j++) {
+					Cart cart = cartRepo.save(new Cart());
+					CartItem cartItem = new CartItem();
+					cartItem.setCart(cart);
+					cartItem.setProduct(product);
+					cartItem.setQuantity(1);
+					cartItem.setProductPrice(10.0);
+					cartItemRepo.save(cartItem);
+				}
+			}
+		});
+	}
+
+	@Test
+	void catalogPageUsesProjectionInsteadOfEntityGraph() {
+		PageRequest pageDetails = PageRequest.of(0, PRODUCTS, Sort.by("productId").ascending());
+
+		statistics.clear();
+		List<ProductDTO> before = transactionTemplate.execute(status -> productRepo.findAll(pageDetails).getContent()
+				.stream().map(product -> modelMapper.map(product, ProductDTO.class)).collect(Collectors.toList()));
+		long beforeStatements = statistics.getPrepareStatementCount();
+		long beforeEntities = statistics.getEntityLoadCount();
+
+		statistics.clear();
+		ProductResponse after = productService.getAllProducts(0, PRODUCTS, "productId", "asc");
+		long afterStatements = statistics.getPrepareStatementCount();
+		long afterEntities = statistics.getEntityLoadCount();
+
+		assertThat(after.getContent()).hasSameSizeAs(before);
+		assertThat(after.getContent()).extracting(ProductDTO::getProductId)
+				.containsExactlyElementsOf(before.stream().map(ProductDTO::getProductId).collect(Collectors.toList()));
+		assertThat(afterStatements).isLessThanOrEqualTo(2);
+		assertThat(afterEntities).isZero();
+		assertThat(beforeEntities).isGreaterThan(afterEntities);
+		assertThat(beforeStatements).isGreaterThanOrEqualTo(afterStatements);
+	}
+
+	@Test
+	void cursorPagesWalkTheCatalogWithoutCountQueries() {
+		// Other tests in the same context retire products, and listings leave those out
+		List<Long> expected = productRepo.findAll(Sort.by("price").descending().and(Sort.by("productId").descending()))
+				.stream().filter(product -> !product.isRetired()).map(Product::getProductId).collect(Collectors.toList());
+		List<Long> walked = new ArrayList<>();
+
+		String cursor = "";
+		do {
+			statistics.clear();
+			ProductResponse page = productService.getAllProducts(cursor, 3, "price", "desc", false);
+
+			assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+			assertThat(page.getTotalElements()).isNull();
+			page.getContent().forEach(product -> walked.add(product.getProductId()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(walked).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void cursorPagesKeepProductsWithoutAQuantity() {
+		Category category = new Category();
+		category.setCategoryName("Keyset nulls");
+		category = categoryRepo.save(category);
+
+		List<Product> products = new ArrayList<>();
+		for (Integer quantity : new Integer[] { 30, null, 10, null, 30 }) {
+			Product product = new Product();
+			product.setProductName("Keyset null " + products.size());
+			product.setDescription("Keyset null quantity");
+			product.setQuantity(quantity);
+			product.setCategory(category);
+			products.add(product);
+		}
+		productRepo.saveAll(products);
+
+		// NULL ranks lowest: first ascending, last descending
+		Comparator<Product> byQuantity = Comparator.comparing(Product::getQuantity, Comparator.nullsFirst(Comparator.<Integer>naturalOrder()))
+				.thenComparing(Product::getProductId);
+		Long categoryId = category.getCategoryId();
+		Specification<Product> inCategory = (root, query, cb) -> cb.equal(root.get("category").get("categoryId"), categoryId);
+
+		for (String sortOrder : List.of("asc", "desc")) {
+			List<Long> expected = products.stream()
+					.sorted(sortOrder.equals("asc") ? byQuantity : byQuantity.reversed())
+					.map(Product::getProductId).collect(Collectors.toList());
+			List<Long> walked = new ArrayList<>();
+
+			String cursor = null;
+			do {
+				KeysetPage<Product> page = keysetPager.seek(Product.class, "productId", inCategory, cursor, 2, "quantity", sortOrder);
+				page.getContent().forEach(product -> walked.add(product.getProductId()));
+				cursor = page.getNextCursor();
+			} while (cursor != null);
+
+			assertThat(walked).as(sortOrder).containsExactlyElementsOf(expected);
+		}
+	}
+
+	@Test
+	void cursorPagesRejectSortsTheCursorCannotCarry() {
+		// An entity attribute that ProductDTO does not have
+		assertThatThrownBy(() -> productService.getAllProducts(null, 3, "dedupHash", "asc", false))
+				.isInstanceOf(APIException.class)
+				.hasMessage("Invalid sort property: dedupHash");
+
+		String cursor = productService.getAllProducts(null, 3, "price", "asc", false).getNextCursor();
+
+		assertThat(cursor).isNotNull();
+		assertThatThrownBy(() -> productService.getAllProducts(cursor, 3, "price", "desc", false))
+				.isInstanceOf(APIException.class)
+				.hasMessage("Cursor does not belong to a listing sorted by price desc");
+	}
+
+	@Test
+	void categoryListingIsFilteredAndSkipsCountQuery() {
+		Long categoryId = categoryRepo.findByCategoryName("Statistics").getCategoryId();
+		productService.searchByCategory(categoryId, 0, 3, "productId", "asc", false);
+
+		statistics.clear();
+		ProductResponse page = productService.searchByCategory(categoryId, 0, 3, "productId", "asc", false);
+
+		// Category lookup plus the indexed page query, the total comes from memory
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+		assertThat(page.getTotalElements()).isEqualTo(PRODUCTS);
+		assertThat(page.getContent()).hasSize(3);
+	}
+
+	@Test
+	void countLoadedWhileAProductIsAddedIsNotDoubled() {
+		Category category = new Category();
+		category.setCategoryName("Counted while adding");
+		Long categoryId = categoryRepo.save(category).getCategoryId();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			Product product = new Product();
+			product.setProductName("Counted product");
+			product.setDescription("Counted description");
+			product.setCategory(categoryRepo.getReferenceById(categoryId));
+			productRepo.save(product);
+			categoryProductCounts.add(categoryId, 1);
+
+			// The COUNT(*) already sees the new row that add() will apply once this commits
+			assertThat(categoryProductCounts.get(categoryId)).isEqualTo(1);
+		});
+
+		assertThat(categoryProductCounts.get(categoryId)).isEqualTo(1);
+	}
+
+	@Test
+	void keywordSearchUsesProjection() {
+		productService.rebuildSearchIndex();
+
+		statistics.clear();
+		ProductResponse response = productService.searchProductByKeyword("product", 0, PRODUCTS, "productId", "asc");
+
+		assertThat(response.getContent()).isNotEmpty();
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+		assertThat(statistics.getEntityLoadCount()).isZero();
+	}
+}
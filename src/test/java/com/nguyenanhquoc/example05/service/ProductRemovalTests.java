@@ -0,0 +1,199 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.entity.OrderItem;
+import com.nguyenanhquoc.example05.entity.OrderSummary;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.ResourceNotFoundException;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse;
+import com.nguyenanhquoc.example05.payloads.response.CategoryRemovalResponse.Status;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.OrderItemRepo;
+import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.repository.OrderSummaryRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+class ProductRemovalTests {
+
+	private static final int PRODUCTS = 450;
+
+	@Autowired
+	private CategoryService categoryService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private OrderItemRepo orderItemRepo;
+
+	@Autowired
+	private OrderSummaryRepo orderSummaryRepo;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void backgroundCategoryRemovalClearsCartsInChunks() throws Exception {
+		Category category = testData.newCategory("Removed category");
+		Product kept = newProducts(testData.newCategory("Kept category"), 1).get(0);
+		List<Product> removed = newProducts(category, PRODUCTS);
+
+		Cart cart = testData.newCart(kept, removed.get(0), removed.get(PRODUCTS - 1));
+		inventoryService.reserve(cart.getCartId(), removed.get(0).getProductId(), 1);
+
+		CategoryRemovalResponse job = categoryService.startCategoryRemoval(category.getCategoryId());
+		assertThat(job.getTotalProducts()).isEqualTo(PRODUCTS);
+
+		for (int i = 0; i < 300 && job.getStatus() == Status.RUNNING; i++) {
+			Thread.sleep(100);
+		}
+
+		job = categoryService.getCategoryRemoval(job.getJobId());
+		assertThat(job.getStatus()).isEqualTo(Status.COMPLETED);
+		assertThat(job.getRemovedProducts()).isEqualTo(PRODUCTS);
+		assertThat(categoryRepo.existsById(category.getCategoryId())).isFalse();
+		assertThat(productRepo.countByCategoryCategoryId(category.getCategoryId())).isZero();
+
+		assertThat(cartRepo.findById(cart.getCartId()).get().getTotalPrice()).isEqualTo(20.0);
+		assertThat(cartItemRepo.countByProductProductId(kept.getProductId())).isEqualTo(1);
+		assertThat(productRepo.existsById(kept.getProductId())).isTrue();
+	}
+
+	@Test
+	void deletingOneProductTakesItOffEveryCart() {
+		List<Product> products = newProducts(testData.newCategory("Single removal"), 2);
+		Cart first = testData.newCart(products.get(0), products.get(1));
+		Cart second = testData.newCart(products.get(1));
+
+		productService.deleteProduct(products.get(1).getProductId());
+
+		assertThat(productRepo.existsById(products.get(1).getProductId())).isFalse();
+		assertThat(cartItemRepo.countByProductProductId(products.get(1).getProductId())).isZero();
+		assertThat(cartRepo.findById(first.getCartId()).get().getTotalPrice()).isEqualTo(20.0);
+		assertThat(cartRepo.findById(second.getCartId()).get().getTotalPrice()).isZero();
+	}
+
+	@Test
+	void productsWithOrdersAreRetiredInsteadOfDeleted() throws Exception {
+		Category category = testData.newCategory("Ordered category");
+		List<Product> products = newProducts(category, 3);
+		Product ordered = products.get(1);
+		newOrder(ordered);
+		Cart cart = testData.newCart(ordered, products.get(2));
+
+		CategoryRemovalResponse job = categoryService.startCategoryRemoval(category.getCategoryId());
+
+		for (int i = 0; i < 300 && job.getStatus() == Status.RUNNING; i++) {
+			Thread.sleep(100);
+		}
+
+		// The rest of the chunk is still deleted
+		assertThat(job.getStatus()).isEqualTo(Status.COMPLETED);
+		assertThat(job.getRemovedProducts()).isEqualTo(2);
+		assertThat(job.getRetiredProducts()).isEqualTo(1);
+		assertThat(job.getRetiredProductIds()).containsExactly(ordered.getProductId());
+		assertThat(categoryRepo.existsById(category.getCategoryId())).isFalse();
+
+		Product retired = productRepo.findById(ordered.getProductId()).get();
+		assertThat(retired.getQuantity()).isZero();
+		assertThat(productRepo.findCategoriesAndImages(List.of(ordered.getProductId())).get(0)[1]).isNull();
+		assertThat(cartItemRepo.countByProductProductId(ordered.getProductId())).isZero();
+		assertThat(cartRepo.findById(cart.getCartId()).get().getTotalPrice()).isZero();
+
+		assertThat(productService.deleteProduct(ordered.getProductId())).contains("has orders");
+		assertThat(productRepo.existsById(ordered.getProductId())).isTrue();
+
+		// Off every listing and out of a rebuilt search index
+		assertThat(retired.isRetired()).isTrue();
+		assertThat(productRepo.findProductDTOsAfter(ordered.getProductId() - 1, PageRequest.of(0, 1)))
+				.extracting(ProductDTO::getProductId).doesNotContain(ordered.getProductId());
+		assertThat(productService.getAllProducts(null, 1000, "productId", "asc", false).getContent())
+				.extracting(ProductDTO::getProductId).doesNotContain(ordered.getProductId());
+	}
+
+	@Test
+	void retiredProductsCannotBeUpdated() {
+		Product ordered = newProducts(testData.newCategory("Retired update"), 1).get(0);
+		newOrder(ordered);
+		productService.deleteProduct(ordered.getProductId());
+
+		Product update = new Product();
+		update.setProductName("Back on sale");
+		update.setDescription("Retired product edited again");
+		update.setQuantity(50);
+		update.setPrice(20.0);
+		update.setDiscount(0.0);
+
+		assertThatThrownBy(() -> productService.updateProduct(ordered.getProductId(), update))
+				.isInstanceOf(ResourceNotFoundException.class);
+		assertThatThrownBy(() -> productService.updateProductImage(ordered.getProductId(),
+				new MockMultipartFile("image", "retired.png", "image/png", new byte[] { 1 })))
+				.isInstanceOf(ResourceNotFoundException.class);
+
+		// No stock to add to a cart again and nothing for the search index
+		Product retired = productRepo.findById(ordered.getProductId()).get();
+		assertThat(retired.getQuantity()).isZero();
+		assertThat(retired.getProductName()).isEqualTo(ordered.getProductName());
+		assertThat(retired.getImage()).isEqualTo(ordered.getImage());
+	}
+
+	private void newOrder(Product product) {
+		Order order = new Order();
+		order.setEmail("retired.product@example.com");
+		order.setOrderDate(LocalDate.now());
+		order.setTotalAmount(product.getSpecialPrice());
+		order = orderRepo.save(order);
+
+		OrderItem orderItem = new OrderItem();
+		orderItem.setOrder(order);
+		orderItem.setProduct(product);
+		orderItem.setQuantity(1);
+		orderItem.setOrderedProductPrice(product.getSpecialPrice());
+		orderItemRepo.save(orderItem);
+
+		// Written with every order, otherwise the order history backfill would pick it up
+		orderSummaryRepo.save(new OrderSummary(order.getOrderId(), order.getEmail(), order.getOrderDate(),
+				order.getTotalAmount(), order.getOrderStatus(), 1, null));
+	}
+
+	private List<Product> newProducts(Category category, int count) {
+		return testData.newProducts(category.getCategoryName() + " product", count, 5, category);
+	}
+}
@@ -0,0 +1,151 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.exceptions.APIException;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex;
+import com.nguyenanhquoc.example05.service.search.ProductSearchIndex.Hit;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+class ProductSearchTests {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void termsAreTokenizedAndAllMustMatchByPrefix() {
+		assertThat(ProductSearchIndex.tokenize("Wi-Fi  Router, 5GHz!")).containsExactly("wi", "fi", "router", "5ghz");
+
+		ProductSearchIndex index = new ProductSearchIndex();
+		index.index(dto(1L, "Wireless router", "Dual band", 20.0));
+		index.index(dto(2L, "Wired mouse", "Router shaped", 20.0));
+		index.index(dto(3L, "Keyboard", "Wireless", 20.0));
+
+		assertThat(index.search("wire")).extracting(Hit::getProductId).containsExactlyInAnyOrder(1L, 2L, 3L);
+		assertThat(index.search("WIRE router")).extracting(Hit::getProductId).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(index.search("wireless router band")).extracting(Hit::getProductId).containsExactly(1L);
+		assertThat(index.search("router tablet")).isEmpty();
+		assertThat(index.search(" ,; ")).isEmpty();
+
+		// A name hit ranks above a description hit
+		List<Hit> hits = index.search("wireless");
+		hits.sort(ProductSearchIndex.BY_RELEVANCE);
+		assertThat(hits).extracting(Hit::getProductId).containsExactly(1L, 3L);
+	}
+
+	@Test
+	void hitsAreSortedByTheKeysKeptInTheIndex() {
+		ProductSearchIndex index = new ProductSearchIndex();
+		index.index(dto(1L, "charlie lamp", "", 30.0));
+		index.index(dto(2L, "Alpha lamp", "", 10.0));
+		index.index(dto(3L, "bravo lamp", "", 20.0));
+
+		List<Hit> hits = index.search("lamp");
+
+		hits.sort(ProductSearchIndex.sortedBy("price", false));
+		assertThat(hits).extracting(Hit::getProductId).containsExactly(1L, 3L, 2L);
+
+		hits.sort(ProductSearchIndex.sortedBy("productName", true));
+		assertThat(hits).extracting(Hit::getProductId).containsExactly(2L, 3L, 1L);
+
+		assertThat(ProductSearchIndex.sortedBy("quantity", true)).isNull();
+	}
+
+	@Test
+	void changesMadeDuringARebuildAreKept() {
+		ProductSearchIndex index = new ProductSearchIndex();
+		index.index(dto(1L, "Old lamp", "", 10.0));
+		index.index(dto(2L, "Desk lamp", "", 10.0));
+
+		// The loader reads the rows before the product changes commit
+		index.rebuild(rebuilt -> {
+			rebuilt.index(dto(1L, "Old lamp", "", 10.0));
+			rebuilt.index(dto(2L, "Desk lamp", "", 10.0));
+
+			index.index(dto(1L, "New kettle", "", 10.0));
+			index.remove(2L);
+			index.index(dto(3L, "Floor lamp", "", 10.0));
+		});
+
+		assertThat(index.search("kettle")).extracting(Hit::getProductId).containsExactly(1L);
+		assertThat(index.search("lamp")).extracting(Hit::getProductId).containsExactly(3L);
+		assertThat(index.size()).isEqualTo(2);
+	}
+
+	@Test
+	void searchPagesByPrice() {
+		Long categoryId = testData.newCategory("Search sort").getCategoryId();
+
+		Product cheap = TestData.product("Quillomere vase small", "Glazed clay");
+		cheap.setPrice(5.0);
+		Product dear = TestData.product("Quillomere vase large", "Glazed clay");
+		dear.setPrice(50.0);
+		Product middle = TestData.product("Quillomere vase medium", "Glazed clay");
+		middle.setPrice(15.0);
+
+		Long cheapId = productService.addProduct(categoryId, cheap).getProductId();
+		Long dearId = productService.addProduct(categoryId, dear).getProductId();
+		Long middleId = productService.addProduct(categoryId, middle).getProductId();
+
+		try {
+			assertThat(page("quillomere", 0, "price", "desc")).containsExactly(dearId, middleId);
+			assertThat(page("quillomere", 1, "price", "desc")).containsExactly(cheapId);
+			assertThat(page("quillomere", 0, "productName", "asc")).containsExactly(dearId, middleId);
+		} finally {
+			productService.deleteProduct(cheapId);
+			productService.deleteProduct(dearId);
+			productService.deleteProduct(middleId);
+		}
+	}
+
+	@Test
+	void indexFollowsProductAddUpdateAndDelete() {
+		Long categoryId = testData.newCategory("Search index").getCategoryId();
+
+		Long productId = productService.addProduct(categoryId, TestData.product("Zephyrine quartz lamp", "Brass base")).getProductId();
+
+		assertThat(search("zephyr lamp")).containsExactly(productId);
+		assertThat(search("brass zephyrine")).containsExactly(productId);
+
+		productService.updateProduct(productId, TestData.product("Zephyrine quartz kettle", "Steel base"));
+
+		assertThat(search("zephyrine kettle")).containsExactly(productId);
+		assertNotFound("zephyrine lamp");
+		assertNotFound("zephyrine brass");
+
+		productService.deleteProduct(productId);
+
+		assertNotFound("zephyrine");
+	}
+
+	private List<Long> search(String keyword) {
+		return productService.searchProductByKeyword(keyword, 0, 10, "relevance", "desc").getContent().stream()
+				.map(ProductDTO::getProductId).toList();
+	}
+
+	private List<Long> page(String keyword, int pageNumber, String sortBy, String sortOrder) {
+		return productService.searchProductByKeyword(keyword, pageNumber, 2, sortBy, sortOrder).getContent().stream()
+				.map(ProductDTO::getProductId).toList();
+	}
+
+	private void assertNotFound(String keyword) {
+		assertThatThrownBy(() -> search(keyword)).isInstanceOf(APIException.class);
+	}
+
+	private static ProductDTO dto(Long productId, String name, String description, double price) {
+		return new ProductDTO(productId, name, null, description, 10, price, 0.0, price);
+	}
+}
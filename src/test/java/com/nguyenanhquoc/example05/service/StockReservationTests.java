@@ -0,0 +1,86 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nguyenanhquoc.example05.entity.StockReservation;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.repository.StockReservationRepo;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest
+class StockReservationTests {
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private StockReservationRepo stockReservationRepo;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void cartsHoldStockWithoutTouchingStockOnHand() {
+		Long productId = testData.newProduct("Reserved kettle", 5);
+
+		assertThat(inventoryService.reserve(1001L, productId, 3)).isTrue();
+		assertThat(inventoryService.reserve(1002L, productId, 3)).isFalse();
+		assertThat(inventoryService.reserve(1002L, productId, 2)).isTrue();
+		assertThat(inventoryService.getAvailableStock(productId)).isZero();
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(5);
+
+		// Lowering a hold gives the difference back to other carts
+		assertThat(inventoryService.reserve(1001L, productId, 1)).isTrue();
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(2);
+
+		inventoryService.releaseReservation(1002L, productId);
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(4);
+
+		// Checkout turns the hold into a sale: on hand drops, availability does not move
+		assertThat(inventoryService.commitReservation(1001L, productId, 1)).isTrue();
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(4);
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(4);
+		assertThat(reservation(1001L, productId)).isNull();
+	}
+
+	@Test
+	void expiredReservationsAreSweptAndTakenAgainAtCheckout() {
+		Long productId = testData.newProduct("Abandoned toaster", 4);
+
+		assertThat(inventoryService.reserve(2001L, productId, 4)).isTrue();
+		assertThat(inventoryService.getAvailableStock(productId)).isZero();
+
+		StockReservation reservation = reservation(2001L, productId);
+		reservation.setExpiresAt(Instant.now().minusSeconds(60));
+		stockReservationRepo.save(reservation);
+
+		assertThat(inventoryService.expireReservations(1000)).isPositive();
+
+		assertThat(reservation(2001L, productId)).isNull();
+		assertThat(inventoryService.getAvailableStock(productId)).isEqualTo(4);
+
+		// Another cart reserved most of it in the meantime, the abandoned cart can only check out what is left
+		assertThat(inventoryService.reserve(2002L, productId, 3)).isTrue();
+		assertThat(inventoryService.commitReservation(2001L, productId, 4)).isFalse();
+		assertThat(inventoryService.commitReservation(2001L, productId, 1)).isTrue();
+		assertThat(productRepo.findById(productId).get().getQuantity()).isEqualTo(3);
+		assertThat(inventoryService.getAvailableStock(productId)).isZero();
+	}
+
+	private StockReservation reservation(Long cartId, Long productId) {
+		return transactionTemplate.execute(status -> stockReservationRepo.findByCartIdAndProductId(cartId, productId).orElse(null));
+	}
+}
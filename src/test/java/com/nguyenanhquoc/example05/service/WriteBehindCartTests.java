@@ -0,0 +1,233 @@
+package com.nguyenanhquoc.example05.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.Order;
+import com.nguyenanhquoc.example05.entity.OrderItem;
+import com.nguyenanhquoc.example05.payloads.dto.CartDTO;
+import com.nguyenanhquoc.example05.payloads.dto.ProductDTO;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.OrderItemRepo;
+import com.nguyenanhquoc.example05.repository.OrderRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.service.cart.AbandonedCartSweeper;
+import com.nguyenanhquoc.example05.service.cart.CartJournal;
+import com.nguyenanhquoc.example05.service.cart.CartWriteBehindStore;
+import com.nguyenanhquoc.example05.support.TestData;
+
+@SpringBootTest(properties = {
+		"project.cart-store=write-behind",
+		"project.cart-flush-interval=PT1H",
+		"project.cart-journal=target/test-cart-journal/",
+		"spring.datasource.url=jdbc:h2:mem:example05-write-behind;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1" })
+class WriteBehindCartTests {
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private CartWriteBehindStore cartStore;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private OrderItemRepo orderItemRepo;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private AbandonedCartSweeper abandonedCartSweeper;
+
+	@Autowired
+	private TestData testData;
+
+	@Test
+	void cartChangesReachTheDatabaseOnlyWhenFlushed() throws Exception {
+		String email = testData.newUser("write.behind@example.com");
+		Long kettle = testData.newProduct("Write-behind kettle");
+		Long mug = testData.newProduct("Write-behind mug");
+
+		cartService.addProductToCart(email, kettle, 2);
+		cartService.addProductToCart(email, kettle, 1);
+		CartDTO cartDTO = cartService.addProductToCart(email, mug, 1);
+		Long cartId = cartDTO.getCartId();
+
+		// Served from memory, while stock is held right away
+		assertThat(cartService.getCart(email, cartId).getTotalPrice()).isEqualTo(80.0);
+		assertThat(inventoryService.getAvailableStock(kettle)).isEqualTo(7);
+		assertThat(cartItemRepo.countByProductProductId(kettle)).isZero();
+
+		assertThat(cartStore.flush()).isEqualTo(1);
+		assertThat(quantities(cartId)).isEqualTo(Map.of(kettle, 3, mug, 1));
+		assertThat(cartRepo.findById(cartId).get().getTotalPrice()).isEqualTo(80.0);
+
+		cartService.updateProductQuantityInCart(cartId, kettle, 5);
+		cartService.deleteProductFromCart(cartId, mug);
+
+		assertThat(quantities(cartId)).isEqualTo(Map.of(kettle, 3, mug, 1));
+		assertThat(cartStore.flush()).isEqualTo(1);
+		assertThat(quantities(cartId)).isEqualTo(Map.of(kettle, 5));
+		assertThat(cartRepo.findById(cartId).get().getTotalPrice()).isEqualTo(100.0);
+		assertThat(cartStore.flush()).isZero();
+	}
+
+	@Test
+	void cartWithUnflushedChangesIsNotSwept() throws Exception {
+		String email = testData.newUser("write.behind.swept@example.com");
+		Long kettle = testData.newProduct("Write-behind swept kettle");
+		Long cartId = cartService.addProductToCart(email, kettle, 1).getCartId();
+		cartStore.flush();
+
+		Cart cart = cartRepo.findById(cartId).get();
+		cart.setLastModified(Instant.now().minus(Duration.ofDays(10)));
+		cartRepo.save(cart);
+
+		// Changed in memory since, the row still looks abandoned
+		cartService.addProductToCart(email, kettle, 1);
+
+		assertThat(abandonedCartSweeper.sweep(Instant.now().minus(Duration.ofDays(7)))[0]).isZero();
+		assertThat(inventoryService.getAvailableStock(kettle)).isEqualTo(8);
+
+		cartStore.flush();
+		assertThat(quantities(cartId)).isEqualTo(Map.of(kettle, 2));
+	}
+
+	@Test
+	void slowChangeOnlyHoldsUpItsOwnCart() throws Exception {
+		String email = testData.newUser("write.behind.slow@example.com");
+		Long kettle = testData.newProduct("Write-behind slow kettle");
+		Long cartId = cartService.addProductToCart(email, kettle, 1).getCartId();
+
+		CountDownLatch inChange = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		Future<CartWriteBehindStore.CartLines> slow = executor.submit(() -> cartStore.mutate(cartId, lines -> {
+			inChange.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Map.of(kettle, 2);
+		}));
+
+		// Reads, and the lock stripe the cart shares with others, are free while the change waits on its check
+		assertThat(inChange.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.submit(() -> cartStore.get(cartId).getLines()).get(5, TimeUnit.SECONDS))
+				.isEqualTo(Map.of(kettle, 1));
+
+		release.countDown();
+		assertThat(slow.get(10, TimeUnit.SECONDS).getLines()).isEqualTo(Map.of(kettle, 2));
+		executor.shutdown();
+	}
+
+	@Test
+	void retiredProductLeavesCartsInMemory() throws Exception {
+		String email = testData.newUser("write.behind.retired@example.com");
+		Long kettle = testData.newProduct("Write-behind retired kettle");
+		Long mug = testData.newProduct("Write-behind kept mug");
+
+		Long cartId = cartService.addProductToCart(email, kettle, 1).getCartId();
+		cartStore.flush();
+		cartService.addProductToCart(email, mug, 1);
+
+		// Ordered before, so removing it only retires it
+		Order order = new Order();
+		order.setEmail(email);
+		order.setOrderDate(LocalDate.now());
+		order.setTotalAmount(20.0);
+		order = orderRepo.save(order);
+
+		OrderItem orderItem = new OrderItem();
+		orderItem.setOrder(order);
+		orderItem.setProduct(productRepo.findById(kettle).get());
+		orderItem.setQuantity(1);
+		orderItem.setOrderedProductPrice(20.0);
+		orderItemRepo.save(orderItem);
+
+		assertThat(productService.deleteProduct(kettle)).contains("has orders");
+
+		assertThat(cartService.getCart(email, cartId).getProducts()).extracting(ProductDTO::getProductId).containsExactly(mug);
+		cartStore.flush();
+		assertThat(quantities(cartId)).isEqualTo(Map.of(mug, 1));
+	}
+
+	@Test
+	void journalReplaysAbsoluteQuantitiesAndSkipsATornLine() throws Exception {
+		Path folder = Files.createTempDirectory("cart-journal");
+		CartJournal journal = new CartJournal(folder, false);
+
+		journal.append(7L, Map.of(1L, 2, 2L, 1));
+		Map<Long, Integer> removal = new HashMap<>();
+		removal.put(2L, null);
+		journal.append(7L, removal);
+		journal.append(7L, Map.of(1L, 4));
+
+		List<Path> sealed = journal.rotate();
+		journal.close();
+		Files.writeString(sealed.get(0), "7\t1=2", StandardOpenOption.APPEND);
+
+		// Replaying twice lands on the same lines
+		Map<Long, Integer> lines = new HashMap<>();
+		for (int i = 0; i < 2; i++) {
+			CartJournal.replay(sealed.get(0), (cartId, changes) -> changes.forEach((productId, quantity) -> {
+				if (quantity == null) {
+					lines.remove(productId);
+				} else {
+					lines.put(productId, quantity);
+				}
+			}));
+		}
+
+		assertThat(lines).isEqualTo(Map.of(1L, 4));
+
+		// A restart keeps numbering after the files that are left
+		journal.delete(sealed);
+		try (CartJournal reopened = new CartJournal(folder, false)) {
+			assertThat(reopened.files()).extracting(file -> file.getFileName().toString())
+					.containsExactly("cart-journal.2.log", "cart-journal.3.log");
+		}
+	}
+
+	private Map<Long, Integer> quantities(Long cartId) {
+		Map<Long, Integer> quantities = new HashMap<>();
+		cartItemRepo.findLinesByCartIds(List.of(cartId)).forEach(row -> quantities.put((Long) row[2], (Integer) row[3]));
+		return quantities;
+	}
+}
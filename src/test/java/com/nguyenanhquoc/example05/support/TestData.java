@@ -0,0 +1,129 @@
+package com.nguyenanhquoc.example05.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nguyenanhquoc.example05.entity.Cart;
+import com.nguyenanhquoc.example05.entity.CartItem;
+import com.nguyenanhquoc.example05.entity.Category;
+import com.nguyenanhquoc.example05.entity.Product;
+import com.nguyenanhquoc.example05.entity.User;
+import com.nguyenanhquoc.example05.repository.CartItemRepo;
+import com.nguyenanhquoc.example05.repository.CartRepo;
+import com.nguyenanhquoc.example05.repository.CategoryRepo;
+import com.nguyenanhquoc.example05.repository.ProductRepo;
+import com.nguyenanhquoc.example05.repository.UserRepo;
+
+/**
+ * Users, categories and products saved straight through the repositories, for tests that need a
+ * cart owner or something to put in the cart. Each test passes its own email or name.
+ */
+@Component
+public class TestData {
+
+	@Autowired
+	private UserRepo userRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CartItemRepo cartItemRepo;
+
+	public String newUser(String email) {
+		User user = new User();
+		user.setFirstName("Tester");
+		user.setLastName("Customer");
+		user.setMobileNumber("0123456789");
+		user.setEmail(email);
+		user.setPassword("secret");
+		return userRepo.save(user).getEmail();
+	}
+
+	public Long newProduct(String name) {
+		return newProduct(name, 10);
+	}
+
+	public Long newProduct(String name, int quantity) {
+		Product product = new Product();
+		product.setProductName(name);
+		product.setDescription(name + " description");
+		product.setQuantity(quantity);
+		product.setPrice(20.0);
+		product.setSpecialPrice(20.0);
+		return productRepo.save(product).getProductId();
+	}
+
+	public List<Product> newProducts(String name, int count, int quantity) {
+		return newProducts(name, count, quantity, null);
+	}
+
+	// Named name 0, name 1 and so on, saved in one saveAll
+	public List<Product> newProducts(String name, int count, int quantity, Category category) {
+		List<Product> products = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Product product = new Product();
+			product.setProductName(name + " " + i);
+			product.setDescription(name + " description");
+			product.setQuantity(quantity);
+			product.setPrice(20.0);
+			product.setSpecialPrice(20.0);
+			product.setCategory(category);
+			products.add(product);
+		}
+
+		return productRepo.saveAll(products);
+	}
+
+	public Category newCategory(String name) {
+		Category category = new Category();
+		category.setCategoryName(name);
+		return categoryRepo.save(category);
+	}
+
+	public Cart newCart(Product... products) {
+		return newCart(List.of(products), Collections.nCopies(products.length, 1));
+	}
+
+	// A cart without an owner, each line priced at the product's special price and the total set to match
+	public Cart newCart(List<Product> products, List<Integer> quantities) {
+		Cart cart = cartRepo.save(new Cart());
+		double totalPrice = 0;
+
+		for (int i = 0; i < products.size(); i++) {
+			Product product = products.get(i);
+
+			CartItem cartItem = new CartItem();
+			cartItem.setCart(cart);
+			cartItem.setProduct(product);
+			cartItem.setQuantity(quantities.get(i));
+			cartItem.setProductPrice(product.getSpecialPrice());
+			cartItemRepo.save(cartItem);
+			totalPrice += product.getSpecialPrice() * quantities.get(i);
+		}
+
+		cart.setTotalPrice(totalPrice);
+		return cartRepo.save(cart);
+	}
+
+	// Not saved, for tests that add it through ProductService
+	public static Product product(String name, String description) {
+		Product product = new Product();
+		product.setProductName(name);
+		product.setDescription(description);
+		product.setQuantity(10);
+		product.setPrice(20.0);
+		return product;
+	}
+}